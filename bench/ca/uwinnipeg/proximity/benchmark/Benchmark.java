@@ -0,0 +1,351 @@
+package ca.uwinnipeg.proximity.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ca.uwinnipeg.proximity.PerceptualSystem.PerceptualSystemSubscriber;
+import ca.uwinnipeg.proximity.image.Image;
+
+/**
+ * An end to end benchmark of {@link Image} across image size, number of probe functions, number of 
+ * distinct descriptions and epsilon, on generated images.
+ * <p>
+ * Each parameter is varied on its own from a base scenario. Every operation is run a few times to 
+ * warm up and then measured for latency percentiles, throughput, bytes allocated and peak heap.
+ * The peak heap is the sum of the peak use of each heap pool, which may be reached at different 
+ * times, so it is an upper bound of the real peak.
+ * <p>
+ * The benchmark uses the management beans of a desktop virtual machine, so it is kept out of the 
+ * library sources. From the project directory:
+ * <pre>
+ * javac -d out $(find src bench -name '*.java')
+ * java -cp out ca.uwinnipeg.proximity.benchmark.Benchmark run [quick] [results.tsv]
+ * java -cp out ca.uwinnipeg.proximity.benchmark.Benchmark compare old.tsv new.tsv [tolerance]
+ * </pre>
+ * Compare flags every operation whose median latency, allocation or peak heap grew by more than 
+ * the tolerance, 0.1 by default, and exits with status 1 if there were any.
+ * @author Garrett Smith
+ *
+ */
+public class Benchmark {
+  
+  // The side of the square regions the queries are made with
+  protected static final int BLOCK_SIZE = 32;
+  
+  protected static final PerceptualSystemSubscriber SUBSCRIBER = new PerceptualSystemSubscriber() {
+    @Override
+    public void onProgressSet(float progress) {}
+    
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+  };
+  
+  /**
+   * The image an operation runs on and the regions it queries with, built before timing starts.
+   */
+  public static class Fixture {
+    
+    public final Image image;
+    
+    // Every object of the image
+    public final List<Integer> all;
+    
+    // A block in the top left of the image
+    public final List<Integer> block;
+    
+    // The object in the centre of the image
+    public final int centre;
+    
+    public Fixture(Image image) {
+      this.image = image;
+      all = image.objectsIndicesList();
+      block = block(image);
+      centre = image.getIndex(image.getWidth() / 2, image.getHeight() / 2);
+    }
+  }
+  
+  /**
+   * An operation that is measured on every scenario.
+   */
+  public static abstract class Operation {
+    
+    protected final String mName;
+    
+    public Operation(String name) {
+      mName = name;
+    }
+    
+    public String getName() {
+      return mName;
+    }
+    
+    /**
+     * Prepares what the operation runs on, by default a featurised image of the scenario.
+     * @param scenario
+     * @return
+     */
+    public Fixture prepare(Scenario scenario) {
+      Image image = scenario.createImage();
+      image.getFeatureStore();
+      return new Fixture(image);
+    }
+    
+    /**
+     * Runs the operation once.
+     * @param fixture
+     * @param scenario
+     */
+    public abstract void run(Fixture fixture, Scenario scenario);
+  }
+  
+  /**
+   * The operations measured, in the order reported.
+   */
+  public static final Operation[] OPERATIONS = {
+    new Operation("featurise") {
+      @Override
+      public Fixture prepare(Scenario scenario) {
+        return null;
+      }
+      
+      @Override
+      public void run(Fixture fixture, Scenario scenario) {
+        scenario.createImage().getFeatureStore();
+      }
+    },
+    new Operation("equivalenceClasses") {
+      @Override
+      public void run(Fixture fixture, Scenario scenario) {
+        fixture.image.equivalenceClasses(fixture.block, SUBSCRIBER);
+      }
+    },
+    new Operation("hybridNeighbourhood") {
+      @Override
+      public void run(Fixture fixture, Scenario scenario) {
+        fixture.image.hybridNeighbourhood(fixture.centre, fixture.all, scenario.getEpsilon(), 
+            SUBSCRIBER);
+      }
+    },
+    new Operation("hybridIntersection") {
+      @Override
+      public void run(Fixture fixture, Scenario scenario) {
+        fixture.image.hybridIntersection(fixture.block, fixture.all, scenario.getEpsilon(), 
+            SUBSCRIBER);
+      }
+    },
+    new Operation("hybridDifference") {
+      @Override
+      public void run(Fixture fixture, Scenario scenario) {
+        fixture.image.hybridDifference(fixture.all, fixture.block, scenario.getEpsilon(), 
+            SUBSCRIBER);
+      }
+    }
+  };
+  
+  protected final int mWarmups;
+  protected final int mIterations;
+  
+  public Benchmark(int warmups, int iterations) {
+    mWarmups = warmups;
+    mIterations = iterations;
+  }
+  
+  /**
+   * Returns the scenarios of the suite, each parameter varied from a base scenario of a noisy 
+   * 256 pixel image with 3 probe functions, 16 levels and an epsilon of 0.1.
+   * @param quick true for a smaller suite
+   * @return
+   */
+  public static List<Scenario> suite(boolean quick) {
+    ImageGenerator base = ImageGenerator.NOISY;
+    List<Scenario> scenarios = new ArrayList<Scenario>();
+    for (ImageGenerator generator : ImageGenerator.ALL) {
+      scenarios.add(new Scenario(generator, 256, 3, 16, 0.1));
+    }
+    int[] sizes = quick ? new int[] {128, 512} : new int[] {128, 512, 1024};
+    for (int size : sizes) {
+      scenarios.add(new Scenario(base, size, 3, 16, 0.1));
+    }
+    int[] funcCounts = quick ? new int[] {1, 5} : new int[] {1, 2, 4, 5, 6};
+    for (int count : funcCounts) {
+      scenarios.add(new Scenario(base, 256, count, 16, 0.1));
+    }
+    int[] levels = quick ? new int[] {4, 64} : new int[] {2, 4, 64, 256};
+    for (int level : levels) {
+      scenarios.add(new Scenario(base, 256, 3, level, 0.1));
+    }
+    double[] epsilons = quick ? new double[] {0, 0.2} : new double[] {0, 0.05, 0.2, 0.4};
+    for (double epsilon : epsilons) {
+      scenarios.add(new Scenario(base, 256, 3, 16, epsilon));
+    }
+    return scenarios;
+  }
+  
+  /**
+   * Measures every operation on every scenario.
+   * @param scenarios
+   * @return
+   */
+  public List<BenchmarkResult> run(List<Scenario> scenarios) {
+    List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+    for (Scenario scenario : scenarios) {
+      for (Operation operation : OPERATIONS) {
+        BenchmarkResult result = measure(scenario, operation);
+        System.out.println(result.toLine());
+        results.add(result);
+      }
+    }
+    return results;
+  }
+  
+  /**
+   * Measures one operation on one scenario.
+   * @param scenario
+   * @param operation
+   * @return
+   */
+  public BenchmarkResult measure(Scenario scenario, Operation operation) {
+    Fixture fixture = operation.prepare(scenario);
+    for (int i = 0; i < mWarmups; i++) {
+      operation.run(fixture, scenario);
+    }
+    
+    // start from a collected heap so the peak belongs to this operation
+    System.gc();
+    List<MemoryPoolMXBean> pools = heapPools();
+    for (MemoryPoolMXBean pool : pools) {
+      pool.resetPeakUsage();
+    }
+    long allocatedStart = allocatedBytes();
+    
+    long[] nanos = new long[mIterations];
+    for (int i = 0; i < mIterations; i++) {
+      long start = System.nanoTime();
+      operation.run(fixture, scenario);
+      nanos[i] = System.nanoTime() - start;
+    }
+    
+    long allocatedEnd = allocatedBytes();
+    long allocated = (allocatedStart < 0 || allocatedEnd < 0) ? -1 : allocatedEnd - allocatedStart;
+    // the pools may peak at different times so the sum is an upper bound
+    long peak = 0;
+    for (MemoryPoolMXBean pool : pools) {
+      peak += pool.getPeakUsage().getUsed();
+    }
+    return BenchmarkResult.of(scenario.getId(), operation.getName(), scenario.getObjectCount(), 
+        nanos, allocated, peak);
+  }
+  
+  /**
+   * Compares two runs, printing every operation of the current run against the baseline.
+   * @param baseline
+   * @param current
+   * @param tolerance the fraction a measurement may grow by before it is a regression
+   * @return the number of regressions
+   */
+  public static int compare(List<BenchmarkResult> baseline, List<BenchmarkResult> current, 
+      double tolerance) {
+    Map<String, BenchmarkResult> base = new HashMap<String, BenchmarkResult>();
+    for (BenchmarkResult result : baseline) {
+      base.put(result.getKey(), result);
+    }
+    
+    int regressions = 0;
+    for (BenchmarkResult now : current) {
+      BenchmarkResult then = base.get(now.getKey());
+      if (then == null) {
+        System.out.println("new\t" + now.getKey());
+        continue;
+      }
+      List<String> flags = new ArrayList<String>();
+      if (grew(then.p50, now.p50, tolerance)) flags.add("latency");
+      if (then.allocatedPerOp >= 0 && now.allocatedPerOp >= 0 && 
+          grew(then.allocatedPerOp, now.allocatedPerOp, tolerance)) flags.add("allocation");
+      if (grew(then.peakHeap, now.peakHeap, tolerance)) flags.add("heap");
+      if (!flags.isEmpty()) regressions++;
+      
+      System.out.println(String.format(Locale.ROOT, "%s\t%s\tp50 %.3f -> %.3f ms (%+.0f%%)\t%s", 
+          flags.isEmpty() ? "ok" : "REGRESSED", now.getKey(), then.p50, now.p50, 
+          change(then.p50, now.p50), flags.isEmpty() ? "" : flags.toString()));
+    }
+    return regressions;
+  }
+  
+  public static void main(String[] args) throws IOException {
+    if (args.length >= 3 && args[0].equals("compare")) {
+      double tolerance = (args.length > 3) ? Double.parseDouble(args[3]) : 0.1;
+      int regressions = compare(
+          BenchmarkResult.read(new File(args[1])), BenchmarkResult.read(new File(args[2])), 
+          tolerance);
+      System.out.println(regressions + " regressions");
+      System.exit(regressions == 0 ? 0 : 1);
+    }
+    else if (args.length >= 1 && args[0].equals("run")) {
+      boolean quick = args.length > 1 && args[1].equals("quick");
+      String output = (args.length > (quick ? 2 : 1)) ? args[quick ? 2 : 1] : null;
+      Benchmark benchmark = quick ? new Benchmark(1, 3) : new Benchmark(3, 10);
+      System.out.println(BenchmarkResult.HEADER);
+      List<BenchmarkResult> results = benchmark.run(suite(quick));
+      if (output != null) {
+        BenchmarkResult.write(results, new File(output));
+      }
+    }
+    else {
+      System.out.println("Benchmark run [quick] [results.tsv]");
+      System.out.println("Benchmark compare baseline.tsv current.tsv [tolerance]");
+    }
+  }
+  
+  // Returns the indices of a block in the top left of the image
+  protected static List<Integer> block(Image image) {
+    int right = Math.min(BLOCK_SIZE, image.getWidth());
+    int bottom = Math.min(BLOCK_SIZE, image.getHeight());
+    List<Integer> indices = new ArrayList<Integer>();
+    for (int index : image.getIndices(0, 0, right, bottom)) {
+      indices.add(index);
+    }
+    return indices;
+  }
+  
+  private static boolean grew(double then, double now, double tolerance) {
+    return now > then * (1 + tolerance);
+  }
+  
+  private static double change(double then, double now) {
+    return (then == 0) ? 0 : 100 * (now - then) / then;
+  }
+  
+  private static List<MemoryPoolMXBean> heapPools() {
+    List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pools.add(pool);
+      }
+    }
+    return pools;
+  }
+  
+  // The bytes allocated by this thread so far, or -1 if the virtual machine does not count them
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+      if (counting.isThreadAllocatedMemorySupported() && counting.isThreadAllocatedMemoryEnabled()) {
+        return counting.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+}
@@ -0,0 +1,156 @@
+package ca.uwinnipeg.proximity.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The measurements of one operation on one {@link Scenario}. Results are saved as tab separated 
+ * lines so two runs can be compared.
+ * @author Garrett Smith
+ *
+ */
+public class BenchmarkResult {
+  
+  protected static final String HEADER = 
+      "scenario\toperation\tobjects\titerations\tp50_ms\tp90_ms\tp99_ms\tmean_ms\t" + 
+      "objects_per_s\talloc_bytes_per_op\talloc_mb_per_s\tpeak_heap_mb";
+  
+  public final String scenario;
+  public final String operation;
+  public final int objects;
+  public final int iterations;
+  public final double p50, p90, p99, mean;
+  public final double throughput;
+  public final long allocatedPerOp;
+  public final double allocationRate;
+  public final double peakHeap;
+  
+  public BenchmarkResult(String scenario, String operation, int objects, int iterations, 
+      double p50, double p90, double p99, double mean, double throughput, long allocatedPerOp, 
+      double allocationRate, double peakHeap) {
+    this.scenario = scenario;
+    this.operation = operation;
+    this.objects = objects;
+    this.iterations = iterations;
+    this.p50 = p50;
+    this.p90 = p90;
+    this.p99 = p99;
+    this.mean = mean;
+    this.throughput = throughput;
+    this.allocatedPerOp = allocatedPerOp;
+    this.allocationRate = allocationRate;
+    this.peakHeap = peakHeap;
+  }
+  
+  /**
+   * Creates a result from the latency of each iteration.
+   * @param scenario
+   * @param operation
+   * @param objects the number of objects each iteration processes
+   * @param nanos the latency of each iteration
+   * @param allocated the bytes allocated over every iteration, or -1 if unknown
+   * @param peakHeap the sum of the peak use of each heap pool in bytes, an upper bound of the peak 
+   * heap use
+   * @return
+   */
+  public static BenchmarkResult of(String scenario, String operation, int objects, long[] nanos, 
+      long allocated, long peakHeap) {
+    long[] sorted = nanos.clone();
+    Arrays.sort(sorted);
+    long total = 0;
+    for (long n : sorted) {
+      total += n;
+    }
+    double mean = total / (double) sorted.length / 1e6;
+    long perOp = (allocated < 0) ? -1 : allocated / sorted.length;
+    return new BenchmarkResult(scenario, operation, objects, sorted.length, 
+        percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), mean, 
+        objects / (mean / 1e3), 
+        perOp, 
+        (allocated < 0) ? -1 : allocated / (total / 1e9) / (1 << 20), 
+        peakHeap / (double) (1 << 20));
+  }
+  
+  // Nearest rank percentile in milliseconds
+  private static double percentile(long[] sorted, double p) {
+    int rank = (int) Math.ceil(p * sorted.length);
+    return sorted[Math.max(rank - 1, 0)] / 1e6;
+  }
+  
+  /**
+   * Returns the key results of two runs are matched by.
+   * @return
+   */
+  public String getKey() {
+    return scenario + "\t" + operation;
+  }
+  
+  public String toLine() {
+    return String.format(Locale.ROOT, "%s\t%s\t%d\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%.0f\t%d\t%.1f\t%.1f",
+        scenario, operation, objects, iterations, p50, p90, p99, mean, throughput, 
+        allocatedPerOp, allocationRate, peakHeap);
+  }
+  
+  public static BenchmarkResult parse(String line) {
+    String[] f = line.split("\t");
+    return new BenchmarkResult(f[0], f[1], Integer.parseInt(f[2]), Integer.parseInt(f[3]), 
+        Double.parseDouble(f[4]), Double.parseDouble(f[5]), Double.parseDouble(f[6]), 
+        Double.parseDouble(f[7]), Double.parseDouble(f[8]), Long.parseLong(f[9]), 
+        Double.parseDouble(f[10]), Double.parseDouble(f[11]));
+  }
+  
+  /**
+   * Saves results to a file, one per line after a header.
+   * @param results
+   * @param file
+   * @throws IOException
+   */
+  public static void write(List<BenchmarkResult> results, File file) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    try {
+      out.println(HEADER);
+      for (BenchmarkResult result : results) {
+        out.println(result.toLine());
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+  
+  /**
+   * Reads results saved by {@link #write(List, File)}.
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  public static List<BenchmarkResult> read(File file) throws IOException {
+    List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.length() == 0 || line.equals(HEADER)) continue;
+        results.add(parse(line));
+      }
+    }
+    finally {
+      in.close();
+    }
+    return results;
+  }
+  
+  @Override
+  public String toString() {
+    return toLine();
+  }
+
+}
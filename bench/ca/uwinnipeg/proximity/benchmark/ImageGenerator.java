@@ -0,0 +1,180 @@
+package ca.uwinnipeg.proximity.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates reproducible synthetic images for benchmarks. Every channel is quantised to a number 
+ * of levels, which bounds the number of distinct descriptions.
+ * @author Garrett Smith
+ *
+ */
+public abstract class ImageGenerator {
+  
+  /**
+   * A single colour.
+   */
+  public static final ImageGenerator UNIFORM = new ImageGenerator("uniform") {
+    @Override
+    protected void fill(int[][] channels, int width, int height, Random random) {
+      for (int[] channel : channels) {
+        int value = random.nextInt(256);
+        for (int i = 0; i < channel.length; i++) {
+          channel[i] = value;
+        }
+      }
+    }
+  };
+  
+  /**
+   * Every channel of every pixel independently random.
+   */
+  public static final ImageGenerator NOISY = new ImageGenerator("noisy") {
+    @Override
+    protected void fill(int[][] channels, int width, int height, Random random) {
+      for (int[] channel : channels) {
+        for (int i = 0; i < channel.length; i++) {
+          channel[i] = random.nextInt(256);
+        }
+      }
+    }
+  };
+  
+  /**
+   * Repeating oriented stripes with a little noise, like fabric or brick.
+   */
+  public static final ImageGenerator TEXTURED = new ImageGenerator("textured") {
+    @Override
+    protected void fill(int[][] channels, int width, int height, Random random) {
+      for (int[] channel : channels) {
+        double angle = random.nextDouble() * Math.PI;
+        double period = 4 + random.nextInt(12);
+        double dx = Math.cos(angle) * 2 * Math.PI / period;
+        double dy = Math.sin(angle) * 2 * Math.PI / period;
+        for (int y = 0; y < height; y++) {
+          for (int x = 0; x < width; x++) {
+            double v = 128 + 100 * Math.sin(x * dx + y * dy) + random.nextGaussian() * 10;
+            channel[y * width + x] = clamp(v);
+          }
+        }
+      }
+    }
+  };
+  
+  /**
+   * Smooth regions and detail at every scale, the sum of octaves of interpolated value noise.
+   */
+  public static final ImageGenerator NATURAL = new ImageGenerator("natural") {
+    @Override
+    protected void fill(int[][] channels, int width, int height, Random random) {
+      for (int[] channel : channels) {
+        double[] sum = new double[channel.length];
+        double amplitude = 1;
+        double total = 0;
+        // coarsest octave first, each finer octave half as strong
+        for (int cell = Math.max(width, height) / 2; cell >= 1; cell /= 2) {
+          addOctave(sum, width, height, cell, amplitude, random);
+          total += amplitude;
+          amplitude /= 2;
+        }
+        for (int i = 0; i < channel.length; i++) {
+          channel[i] = clamp(255 * sum[i] / total);
+        }
+      }
+    }
+  };
+  
+  /**
+   * Every generator, in the order reported.
+   */
+  public static final ImageGenerator[] ALL = {UNIFORM, NOISY, TEXTURED, NATURAL};
+  
+  protected final String mName;
+  
+  public ImageGenerator(String name) {
+    mName = name;
+  }
+  
+  public String getName() {
+    return mName;
+  }
+  
+  /**
+   * Fills the red, green and blue channels with values in [0, 255].
+   * @param channels the red, green and blue values of every pixel
+   * @param width
+   * @param height
+   * @param random
+   */
+  protected abstract void fill(int[][] channels, int width, int height, Random random);
+  
+  /**
+   * Generates an opaque image.
+   * @param width
+   * @param height
+   * @param levels the number of values each channel is quantised to, at most 256
+   * @param seed the same seed always generates the same image
+   * @return the ARGB pixels
+   */
+  public int[] generate(int width, int height, int levels, long seed) {
+    int size = width * height;
+    int[][] channels = new int[3][size];
+    fill(channels, width, height, new Random(seed));
+    
+    // snap each channel to the centre of its level
+    int step = (int) Math.ceil(256.0 / levels);
+    int[] pixels = new int[size];
+    for (int i = 0; i < size; i++) {
+      int pixel = 0xFF000000;
+      for (int c = 0; c < 3; c++) {
+        int value = Math.min(channels[c][i] / step * step + step / 2, 255);
+        pixel |= value << (16 - 8 * c);
+      }
+      pixels[i] = pixel;
+    }
+    return pixels;
+  }
+  
+  /**
+   * Returns the generator with the given name or null if there is none.
+   * @param name
+   * @return
+   */
+  public static ImageGenerator forName(String name) {
+    for (ImageGenerator generator : ALL) {
+      if (generator.mName.equals(name)) return generator;
+    }
+    return null;
+  }
+  
+  @Override
+  public String toString() {
+    return mName;
+  }
+  
+  protected static int clamp(double value) {
+    return (int) Math.max(0, Math.min(255, Math.round(value)));
+  }
+  
+  // Adds value noise with lattice points every cell pixels, bilinearly interpolated
+  private static void addOctave(double[] sum, int width, int height, int cell, double amplitude, 
+      Random random) {
+    int cols = width / cell + 2;
+    int rows = height / cell + 2;
+    double[] lattice = new double[cols * rows];
+    for (int i = 0; i < lattice.length; i++) {
+      lattice[i] = random.nextDouble();
+    }
+    for (int y = 0; y < height; y++) {
+      int ly = y / cell;
+      double fy = (y % cell) / (double) cell;
+      for (int x = 0; x < width; x++) {
+        int lx = x / cell;
+        double fx = (x % cell) / (double) cell;
+        double top = lattice[ly * cols + lx] * (1 - fx) + lattice[ly * cols + lx + 1] * fx;
+        double bottom = lattice[(ly + 1) * cols + lx] * (1 - fx) + lattice[(ly + 1) * cols + lx + 1] * fx;
+        sum[y * width + x] += amplitude * (top * (1 - fy) + bottom * fy);
+      }
+    }
+  }
+
+}
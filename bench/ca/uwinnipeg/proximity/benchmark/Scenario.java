@@ -0,0 +1,104 @@
+package ca.uwinnipeg.proximity.benchmark;
+
+import ca.uwinnipeg.proximity.image.BlueFunc;
+import ca.uwinnipeg.proximity.image.DifferentialExcitationFunc;
+import ca.uwinnipeg.proximity.image.GreenFunc;
+import ca.uwinnipeg.proximity.image.HomogeneityFunc;
+import ca.uwinnipeg.proximity.image.Image;
+import ca.uwinnipeg.proximity.image.ImageFunc;
+import ca.uwinnipeg.proximity.image.PerceptualGrayScaleFunc;
+import ca.uwinnipeg.proximity.image.RedFunc;
+
+/**
+ * One point of the benchmark parameter space: a generated image, the probe functions applied to 
+ * it and the tolerance used by the hybrid operations.
+ * @author Garrett Smith
+ *
+ */
+public class Scenario {
+  
+  /**
+   * The most probe functions a scenario can use.
+   */
+  public static final int MAX_FUNCS = 6;
+  
+  // Every scenario generates its image from the same seed so runs are comparable
+  protected static final long SEED = 42;
+  
+  protected final ImageGenerator mGenerator;
+  protected final int mSize;
+  protected final int mFuncCount;
+  protected final int mLevels;
+  protected final double mEpsilon;
+  
+  // Generated on first use
+  protected int[] mPixels = null;
+  
+  /**
+   * Creates a scenario.
+   * @param generator
+   * @param size the width and height of the image
+   * @param funcCount how many probe functions to use, from 1 to {@link #MAX_FUNCS}
+   * @param levels the number of values of each colour channel
+   * @param epsilon
+   */
+  public Scenario(ImageGenerator generator, int size, int funcCount, int levels, double epsilon) {
+    if (funcCount < 1 || funcCount > MAX_FUNCS) {
+      throw new IllegalArgumentException("Probe function count must be 1 to " + MAX_FUNCS);
+    }
+    mGenerator = generator;
+    mSize = size;
+    mFuncCount = funcCount;
+    mLevels = levels;
+    mEpsilon = epsilon;
+  }
+  
+  public int getSize() {
+    return mSize;
+  }
+  
+  public double getEpsilon() {
+    return mEpsilon;
+  }
+  
+  /**
+   * Returns the number of pixels in the image.
+   * @return
+   */
+  public int getObjectCount() {
+    return mSize * mSize;
+  }
+  
+  /**
+   * Returns an identifier unique to the parameters of the scenario.
+   * @return
+   */
+  public String getId() {
+    return mGenerator.getName() + "-" + mSize + "px-" + mFuncCount + "f-" + mLevels + "l-e" + mEpsilon;
+  }
+  
+  /**
+   * Creates a new image of the scenario with its probe functions, not yet featurised.
+   * @return
+   */
+  public Image createImage() {
+    if (mPixels == null) {
+      mPixels = mGenerator.generate(mSize, mSize, mLevels, SEED);
+    }
+    Image image = new Image(mPixels, mSize, mSize);
+    ImageFunc[] funcs = {
+        new RedFunc(), new GreenFunc(), new BlueFunc(), new PerceptualGrayScaleFunc(), 
+        new HomogeneityFunc(), new DifferentialExcitationFunc()};
+    for (int i = 0; i < mFuncCount; i++) {
+      image.addProbeFunc(funcs[i]);
+    }
+    image.setCaching(true);
+    return image;
+  }
+  
+  @Override
+  public String toString() {
+    return getId();
+  }
+
+}
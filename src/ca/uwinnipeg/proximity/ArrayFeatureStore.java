@@ -0,0 +1,37 @@
+package ca.uwinnipeg.proximity;
+
+/**
+ * A {@link FeatureStore} backed by one primitive array per probe function.
+ * @author Garrett Smith
+ *
+ */
+public class ArrayFeatureStore extends FeatureStore {
+  
+  // To get a value use mColumns[ProbeFunc index][Object index]
+  protected final double[][] mColumns;
+
+  public ArrayFeatureStore(int size, int featureCount) {
+    super(size, featureCount);
+    mColumns = new double[featureCount][size];
+  }
+
+  @Override
+  public double getValue(int index, int feature) {
+    return mColumns[feature][index];
+  }
+
+  @Override
+  public void setValue(int index, int feature, double value) {
+    mColumns[feature][index] = value;
+  }
+  
+  /**
+   * Returns the column of values of the given probe function.
+   * @param feature the index of the probe function
+   * @return
+   */
+  public double[] getColumn(int feature) {
+    return mColumns[feature];
+  }
+
+}
@@ -0,0 +1,317 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import ca.uwinnipeg.proximity.PerceptualSystem.ClassVisitor;
+import ca.uwinnipeg.proximity.PerceptualSystem.ObjectVisitor;
+import ca.uwinnipeg.proximity.PerceptualSystem.PerceptualSystemSubscriber;
+import ca.uwinnipeg.proximity.QueryTask.Query;
+import ca.uwinnipeg.proximity.QueryTask.QueryListener;
+
+/**
+ * Runs the methods of a {@link PerceptualSystem} on an {@link Executor} without blocking the 
+ * calling thread. Each method returns a {@link QueryTask} that can be waited on, cancelled, or 
+ * listened to for progress and completion.
+ * The system is shared by every query so it must not be modified while queries are running.
+ * @author Garrett Smith
+ *
+ */
+public class AsyncPerceptualSystem {
+  
+  // The system queries run against
+  protected final PerceptualSystem<?, ?> mSystem;
+  
+  // Runs the queries
+  protected final Executor mExecutor;
+  
+  /**
+   * Creates an asynchronous view of the given system running queries on the given executor.
+   * @param system
+   * @param executor
+   */
+  public AsyncPerceptualSystem(PerceptualSystem<?, ?> system, Executor executor) {
+    mSystem = system;
+    mExecutor = executor;
+  }
+  
+  /**
+   * Returns the system queries run against.
+   * @return
+   */
+  public PerceptualSystem<?, ?> getSystem() {
+    return mSystem;
+  }
+  
+  /**
+   * Runs an arbitrary query on the executor.
+   * @param query
+   * @param listener may be null
+   * @return the running task
+   */
+  public <V> QueryTask<V> submit(Query<V> query, QueryListener listener) {
+    QueryTask<V> task = new QueryTask<V>(query, listener);
+    mExecutor.execute(task);
+    return task;
+  }
+  
+  /**
+   * Returns a description-based neighbourhood.
+   * @see PerceptualSystem#neighbourhood
+   * @param x
+   * @param region
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<Integer>> neighbourhood(final int x, final List<Integer> region, QueryListener listener) {
+    return submit(new Query<List<Integer>>() {
+      @Override
+      public List<Integer> run(PerceptualSystemSubscriber sub) {
+        return mSystem.neighbourhood(x, region, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns a tolerance-based neighbourhood.
+   * @see PerceptualSystem#hybridNeighbourhood
+   * @param x
+   * @param region
+   * @param epsilon
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<Integer>> hybridNeighbourhood(final int x, final List<Integer> region, final double epsilon, QueryListener listener) {
+    return submit(new Query<List<Integer>>() {
+      @Override
+      public List<Integer> run(PerceptualSystemSubscriber sub) {
+        return mSystem.hybridNeighbourhood(x, region, epsilon, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the descriptive intersection of two regions.
+   * @see PerceptualSystem#intersection
+   * @param A
+   * @param B
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<Integer>> intersection(final List<Integer> A, final List<Integer> B, QueryListener listener) {
+    return submit(new Query<List<Integer>>() {
+      @Override
+      public List<Integer> run(PerceptualSystemSubscriber sub) {
+        return mSystem.intersection(A, B, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the tolerance-based intersection of two regions.
+   * @see PerceptualSystem#hybridIntersection
+   * @param A
+   * @param B
+   * @param epsilon
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<Integer>> hybridIntersection(final List<Integer> A, final List<Integer> B, final double epsilon, QueryListener listener) {
+    return submit(new Query<List<Integer>>() {
+      @Override
+      public List<Integer> run(PerceptualSystemSubscriber sub) {
+        return mSystem.hybridIntersection(A, B, epsilon, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the descriptive difference of region B from region A.
+   * @see PerceptualSystem#difference
+   * @param A
+   * @param B
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<Integer>> difference(final List<Integer> A, final List<Integer> B, QueryListener listener) {
+    return submit(new Query<List<Integer>>() {
+      @Override
+      public List<Integer> run(PerceptualSystemSubscriber sub) {
+        return mSystem.difference(A, B, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the tolerance-based difference of region B from region A.
+   * @see PerceptualSystem#hybridDifference
+   * @param A
+   * @param B
+   * @param epsilon
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<Integer>> hybridDifference(final List<Integer> A, final List<Integer> B, final double epsilon, QueryListener listener) {
+    return submit(new Query<List<Integer>>() {
+      @Override
+      public List<Integer> run(PerceptualSystemSubscriber sub) {
+        return mSystem.hybridDifference(A, B, epsilon, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the descriptive compliment of the given region and the universe.
+   * @see PerceptualSystem#compliment
+   * @param region
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<Integer>> compliment(final List<Integer> region, QueryListener listener) {
+    return submit(new Query<List<Integer>>() {
+      @Override
+      public List<Integer> run(PerceptualSystemSubscriber sub) {
+        return mSystem.compliment(region, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the tolerance-based compliment of the given region and the universe.
+   * @see PerceptualSystem#hybridCompliment
+   * @param region
+   * @param epsilon
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<Integer>> hybridCompliment(final List<Integer> region, final double epsilon, QueryListener listener) {
+    return submit(new Query<List<Integer>>() {
+      @Override
+      public List<Integer> run(PerceptualSystemSubscriber sub) {
+        return mSystem.hybridCompliment(region, epsilon, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the descriptive intersection of two regions.
+   * @see PerceptualSystem#intersection
+   * @param A
+   * @param B
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<Region> intersection(final Region A, final Region B, QueryListener listener) {
+    return submit(new Query<Region>() {
+      @Override
+      public Region run(PerceptualSystemSubscriber sub) {
+        return mSystem.intersection(A, B, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the descriptive difference of region B from region A.
+   * @see PerceptualSystem#difference
+   * @param A
+   * @param B
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<Region> difference(final Region A, final Region B, QueryListener listener) {
+    return submit(new Query<Region>() {
+      @Override
+      public Region run(PerceptualSystemSubscriber sub) {
+        return mSystem.difference(A, B, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the descriptive compliment of the given region and the universe.
+   * @see PerceptualSystem#compliment
+   * @param region
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<Region> compliment(final Region region, QueryListener listener) {
+    return submit(new Query<Region>() {
+      @Override
+      public Region run(PerceptualSystemSubscriber sub) {
+        return mSystem.compliment(region, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns all equivalence classes for descriptions within the given region.
+   * @see PerceptualSystem#equivalenceClasses
+   * @param region
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<List<Integer>>> equivalenceClasses(final List<Integer> region, QueryListener listener) {
+    return submit(new Query<List<List<Integer>>>() {
+      @Override
+      public List<List<Integer>> run(PerceptualSystemSubscriber sub) {
+        return mSystem.equivalenceClasses(region, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Returns the maximal tolerance classes of the given region.
+   * @see PerceptualSystem#toleranceClasses
+   * @param region
+   * @param epsilon
+   * @param listener may be null
+   * @return the running task
+   */
+  public QueryTask<List<List<Integer>>> toleranceClasses(final List<Integer> region, final double epsilon, QueryListener listener) {
+    return submit(new Query<List<List<Integer>>>() {
+      @Override
+      public List<List<Integer>> run(PerceptualSystemSubscriber sub) {
+        return mSystem.toleranceClasses(region, epsilon, sub);
+      }
+    }, listener);
+  }
+
+  /**
+   * Streams a tolerance-based neighbourhood to the visitor from the executor.
+   * @see PerceptualSystem#hybridNeighbourhood(int, List, double, ObjectVisitor, PerceptualSystemSubscriber)
+   * @param x
+   * @param region
+   * @param epsilon
+   * @param visitor called from the executor
+   * @param listener may be null
+   * @return the running task, true if the whole region was visited
+   */
+  public QueryTask<Boolean> hybridNeighbourhood(final int x, final List<Integer> region, 
+      final double epsilon, final ObjectVisitor visitor, QueryListener listener) {
+    return submit(new Query<Boolean>() {
+      @Override
+      public Boolean run(PerceptualSystemSubscriber sub) {
+        return mSystem.hybridNeighbourhood(x, region, epsilon, visitor, sub);
+      }
+    }, listener);
+  }
+  
+  /**
+   * Streams the equivalence classes of a region to the visitor from the executor.
+   * @see PerceptualSystem#equivalenceClasses(List, ClassVisitor, PerceptualSystemSubscriber)
+   * @param region
+   * @param visitor called from the executor
+   * @param listener may be null
+   * @return the running task, true if every object was visited
+   */
+  public QueryTask<Boolean> equivalenceClasses(final List<Integer> region, 
+      final ClassVisitor visitor, QueryListener listener) {
+    return submit(new Query<Boolean>() {
+      @Override
+      public Boolean run(PerceptualSystemSubscriber sub) {
+        return mSystem.equivalenceClasses(region, visitor, sub);
+      }
+    }, listener);
+  }
+
+}
@@ -0,0 +1,66 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.Arrays;
+
+/**
+ * The Chebyshev (L-infinity) distance scaled by a tolerance for each feature, the largest absolute 
+ * feature difference as a multiple of its tolerance. Two descriptions are within epsilon of each 
+ * other when every feature differs by less than epsilon times its tolerance, so with an epsilon of 
+ * 1 the tolerances are a box around each description.
+ * @author Garrett Smith
+ *
+ */
+public class ChebyshevMetric extends DistanceMetric {
+  
+  // The tolerance of each feature, null when every feature has tolerance 1
+  protected final double[] mTolerances;
+  
+  public ChebyshevMetric() {
+    this(null);
+  }
+  
+  /**
+   * Creates a metric with the given tolerance for each feature. Features past the end of the 
+   * tolerances have tolerance 1.
+   * @param tolerances must be greater than 0
+   * @throws IllegalArgumentException if a tolerance is not greater than 0
+   */
+  public ChebyshevMetric(double[] tolerances) {
+    mTolerances = copyTolerances(tolerances);
+  }
+
+  @Override
+  protected double accumulate(double total, int feature, double diff) {
+    return Math.max(total, Math.abs(diff) / get(mTolerances, feature));
+  }
+
+  @Override
+  protected double threshold(double epsilon) {
+    return epsilon;
+  }
+
+  @Override
+  protected double toDistance(double total) {
+    return total;
+  }
+
+  @Override
+  public double getReach(int feature, double epsilon) {
+    return epsilon * get(mTolerances, feature);
+  }
+
+  @Override
+  public double getNorm(int featureCount) {
+    double max = 0;
+    for (int i = 0; i < featureCount; i++) {
+      max = Math.max(max, 1 / get(mTolerances, i));
+    }
+    return max;
+  }
+  
+  @Override
+  public String toString() {
+    return "Linf" + ((mTolerances == null) ? "" : Arrays.toString(mTolerances));
+  }
+
+}
@@ -47,7 +47,7 @@ public class Description {
   }
   
   public double distance(Description other) {
-    return Math.sqrt(distance(other));
+    return Math.sqrt(squaredDistance(other));
   }
   
   public double squaredDistance(Description other) {
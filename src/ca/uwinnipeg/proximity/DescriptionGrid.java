@@ -0,0 +1,247 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buckets distinct descriptions into a grid of epsilon sized cells so that descriptions within 
+ * epsilon of a query are found by checking only the neighbouring cells.
+ * Probe functions normalise features to [0,1] so there are about 1 / epsilon cells along each 
+ * dimension. As the number of neighbouring cells grows as 3 to the power of the number of 
+ * dimensions, only the dimensions with the widest spread are bucketed, as many as are useful for 
+ * the number of descriptions. The remaining dimensions are checked by the exact distance test.
+ * @author Garrett Smith
+ *
+ */
+public class DescriptionGrid {
+  
+  // The bucketed descriptions
+  protected final Description[] mDescriptions;
+  
+  protected final double mEpsilon;
+  
+  // The metric descriptions are compared with
+  protected final DistanceMetric mMetric;
+  
+  // The dimensions used as grid axes
+  protected final int[] mAxes;
+  
+  // The width of a cell along each axis, the reach of epsilon along its dimension
+  protected final double[] mWidths;
+  
+  // The number of cells along each axis
+  protected final long[] mCells;
+  
+  // Maps a cell key to the positions of the descriptions within it
+  protected final Map<Long, List<Integer>> mGrid = new HashMap<Long, List<Integer>>();
+  
+  /**
+   * Buckets the given descriptions for the Euclidean distance.
+   * @param descs
+   * @param epsilon must be greater than 0
+   */
+  public DescriptionGrid(Description[] descs, double epsilon) {
+    this(descs, epsilon, new EuclideanMetric());
+  }
+  
+  /**
+   * Buckets the given descriptions for the given metric. Each cell spans the reach of epsilon 
+   * along its dimension so weighted and per-feature metrics keep small neighbourhoods.
+   * @param descs
+   * @param epsilon must be greater than 0
+   * @param metric
+   */
+  public DescriptionGrid(Description[] descs, double epsilon, DistanceMetric metric) {
+    mDescriptions = descs;
+    mEpsilon = epsilon;
+    mMetric = metric;
+    mAxes = chooseAxes(descs, epsilon, metric);
+    mWidths = new double[mAxes.length];
+    mCells = new long[mAxes.length];
+    for (int a = 0; a < mAxes.length; a++) {
+      mWidths[a] = metric.getReach(mAxes[a], epsilon);
+      mCells[a] = (long) Math.ceil(1 / mWidths[a]) + 1;
+    }
+    
+    for (int i = 0; i < descs.length; i++) {
+      Long key = key(cell(descs[i]));
+      List<Integer> cell = mGrid.get(key);
+      if (cell == null) {
+        cell = new ArrayList<Integer>();
+        mGrid.put(key, cell);
+      }
+      cell.add(i);
+    }
+  }
+  
+  /**
+   * Returns the number of dimensions used as grid axes, 0 if every description is in one cell.
+   * @return
+   */
+  public int getAxisCount() {
+    return mAxes.length;
+  }
+  
+  /**
+   * Returns the epsilon the descriptions are bucketed for.
+   * @return
+   */
+  public double getEpsilon() {
+    return mEpsilon;
+  }
+  
+  /**
+   * Returns the metric the descriptions are bucketed for.
+   * @return
+   */
+  public DistanceMetric getMetric() {
+    return mMetric;
+  }
+  
+  /**
+   * Marks every unmarked description within epsilon of the query.
+   * @param query
+   * @param marks a flag for each description, set for those found
+   * @return the number of distance calculations made
+   */
+  public long markNear(Description query, boolean[] marks) {
+    long comparisons = 0;
+    for (List<Integer> cell : neighbours(query)) {
+      for (Integer j : cell) {
+        if (!marks[j]) {
+          comparisons++;
+          if (mMetric.isNear(query, mDescriptions[j], mEpsilon)) {
+            marks[j] = true;
+          }
+        }
+      }
+    }
+    return comparisons;
+  }
+  
+  /**
+   * Returns true if a description is within epsilon of the query.
+   * @param query
+   * @return
+   */
+  public boolean containsNear(Description query) {
+    for (List<Integer> cell : neighbours(query)) {
+      for (Integer j : cell) {
+        if (mMetric.isNear(query, mDescriptions[j], mEpsilon)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+  
+  // Returns the non empty cells among the 3^axes cells around the query
+  private List<List<Integer>> neighbours(Description query) {
+    List<List<Integer>> rtn = new ArrayList<List<Integer>>();
+    int axes = mAxes.length;
+    long[] centre = cell(query);
+    long[] offset = new long[axes];
+    long[] neighbour = new long[axes];
+    for (int a = 0; a < axes; a++) {
+      offset[a] = -1;
+    }
+    
+    while (true) {
+      boolean inside = true;
+      for (int a = 0; a < axes; a++) {
+        neighbour[a] = centre[a] + offset[a];
+        if (neighbour[a] < 0 || neighbour[a] >= mCells[a]) {
+          inside = false;
+        }
+      }
+      
+      if (inside) {
+        List<Integer> cell = mGrid.get(key(neighbour));
+        if (cell != null) {
+          rtn.add(cell);
+        }
+      }
+      
+      // advance to the next offset
+      int a = 0;
+      while (a < axes && offset[a] == 1) {
+        offset[a] = -1;
+        a++;
+      }
+      if (a == axes) break;
+      offset[a]++;
+    }
+    return rtn;
+  }
+  
+  // Returns the cell of the description along each axis
+  private long[] cell(Description desc) {
+    long[] coords = new long[mAxes.length];
+    for (int a = 0; a < mAxes.length; a++) {
+      long c = (long) Math.floor(desc.getValue(mAxes[a]) / mWidths[a]);
+      // features outside [0,1] share the edge cells, this never separates near descriptions
+      coords[a] = Math.max(0, Math.min(mCells[a] - 1, c));
+    }
+    return coords;
+  }
+  
+  private Long key(long[] coords) {
+    long key = 0;
+    for (int a = 0; a < coords.length; a++) {
+      key = key * mCells[a] + coords[a];
+    }
+    return key;
+  }
+  
+  // Picks the dimensions spanning the most cells, limited so the neighbouring cells of a query are 
+  // fewer than the descriptions and every cell key fits within a long
+  private static int[] chooseAxes(Description[] descs, double epsilon, DistanceMetric metric) {
+    if (descs.length == 0) return new int[0];
+    
+    int dims = descs[0].getValues().length;
+    final double[] spread = new double[dims];
+    for (int d = 0; d < dims; d++) {
+      double min = Double.MAX_VALUE;
+      double max = -Double.MAX_VALUE;
+      for (Description desc : descs) {
+        double v = desc.getValue(d);
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+      }
+      // measured in cells, dimensions the metric does not limit span none
+      spread[d] = (max - min) / metric.getReach(d, epsilon);
+    }
+    
+    // order dimensions by spread, widest first
+    Integer[] order = new Integer[dims];
+    for (int d = 0; d < dims; d++) {
+      order[d] = d;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Double.compare(spread[b], spread[a]);
+      }
+    });
+    
+    // dimensions no wider than a cell do not separate anything
+    int[] rtn = new int[dims];
+    int count = 0;
+    long neighbours = 3;
+    double keySpace = 1;
+    for (int i = 0; i < dims && neighbours <= descs.length; i++) {
+      int d = order[i];
+      if (spread[d] <= 1) break;
+      keySpace *= Math.ceil(1 / metric.getReach(d, epsilon)) + 1;
+      if (keySpace >= Long.MAX_VALUE) break;
+      rtn[count++] = d;
+      neighbours *= 3;
+    }
+    return Arrays.copyOf(rtn, count);
+  }
+
+}
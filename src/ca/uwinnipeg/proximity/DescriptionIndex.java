@@ -0,0 +1,209 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The distinct descriptions of a region mapped to the objects that have them.
+ * An index is built once from a region of one {@link PerceptualSystem} and can then be probed by
+ * the regions of any other system that uses the same probe functions.
+ * Probes may run on any number of threads at once, but not while the index is being updated.
+ * @author Garrett Smith
+ *
+ */
+public class DescriptionIndex implements PerceptualSystem.DescriptionListener {
+  
+  // Maps each distinct description to the objects with that description, as a region so an 
+  // object can be moved in constant time when its system is updated
+  protected final Map<Description, Region> mMap = new HashMap<Description, Region>();
+  
+  // The number of objects in the system the index was built from
+  protected final int mSize;
+  
+  // The distinct descriptions and the grid of the last epsilon probed, read without locking.
+  // Discarded when the distinct descriptions change and rebuilt under the lock by the next probe.
+  protected volatile Snapshot mSnapshot;
+  
+  // The metric used when none is given
+  private static final DistanceMetric EUCLIDEAN = new EuclideanMetric();
+  
+  // The number of probe functions the descriptions were created with
+  protected final int mFeatureCount;
+  
+  /**
+   * Creates an index from a map of descriptions to object indices.
+   * @param map
+   * @param featureCount the number of probe functions used to create the descriptions
+   * @param size the number of objects in the system the indices belong to
+   */
+  public DescriptionIndex(Map<Description, List<Integer>> map, int featureCount, int size) {
+    for (Map.Entry<Description, List<Integer>> entry : map.entrySet()) {
+      mMap.put(entry.getKey(), new Region(size, entry.getValue()));
+    }
+    mSize = size;
+    mFeatureCount = featureCount;
+    mSnapshot = new Snapshot(mMap);
+  }
+  
+  /**
+   * Returns the number of probe functions the descriptions were created with.
+   * @return
+   */
+  public int getFeatureCount() {
+    return mFeatureCount;
+  }
+  
+  /**
+   * Returns the number of distinct descriptions in the index.
+   * @return
+   */
+  public int size() {
+    return mMap.size();
+  }
+  
+  /**
+   * Returns the distinct descriptions in the index.
+   * @return
+   */
+  public Set<Description> getDescriptions() {
+    return Collections.unmodifiableSet(mMap.keySet());
+  }
+  
+  /**
+   * Returns the indices of the objects with the given description in ascending order or null if 
+   * there are none.
+   * @param desc
+   * @return
+   */
+  public List<Integer> getIndices(Description desc) {
+    Region region = mMap.get(desc);
+    return region == null ? null : region.toList();
+  }
+  
+  /**
+   * Returns the number of objects with the given description.
+   * @param desc
+   * @return
+   */
+  public int getCount(Description desc) {
+    Region region = mMap.get(desc);
+    return region == null ? 0 : region.size();
+  }
+  
+  /**
+   * Returns the indices of every object in the index.
+   * @return
+   */
+  public List<Integer> getIndices() {
+    List<Integer> rtn = new ArrayList<Integer>();
+    for (Region region : mMap.values()) {
+      rtn.addAll(region.toList());
+    }
+    return rtn;
+  }
+  
+  /**
+   * Returns true if an object in the index has exactly the given description.
+   * @param desc
+   * @return
+   */
+  public boolean contains(Description desc) {
+    return mMap.containsKey(desc);
+  }
+  
+  /**
+   * Returns true if an object in the index has a description within epsilon of the given one.
+   * @param desc
+   * @param epsilon
+   * @return
+   */
+  public boolean containsNear(Description desc, double epsilon) {
+    return containsNear(desc, epsilon, EUCLIDEAN);
+  }
+  
+  /**
+   * Returns true if an object in the index has a description within epsilon of the given one 
+   * under the given metric. The descriptions are bucketed in a {@link DescriptionGrid} the first 
+   * time an epsilon and metric are probed, which is reused until either changes.
+   * @param desc
+   * @param epsilon
+   * @param metric
+   * @return
+   */
+  public boolean containsNear(Description desc, double epsilon, DistanceMetric metric) {
+    if (epsilon == 0) return contains(desc);
+    return getGrid(epsilon, metric).containsNear(desc);
+  }
+  
+  // Returns the grid of the distinct descriptions for the given epsilon and metric
+  private DescriptionGrid getGrid(double epsilon, DistanceMetric metric) {
+    Snapshot snapshot = mSnapshot;
+    if (snapshot != null) {
+      DescriptionGrid grid = snapshot.mGrid;
+      if (grid != null && grid.getEpsilon() == epsilon && grid.getMetric() == metric) {
+        return grid;
+      }
+    }
+    synchronized (this) {
+      snapshot = mSnapshot;
+      if (snapshot == null) {
+        snapshot = new Snapshot(mMap);
+        mSnapshot = snapshot;
+      }
+      DescriptionGrid grid = snapshot.mGrid;
+      if (grid == null || grid.getEpsilon() != epsilon || grid.getMetric() != metric) {
+        grid = new DescriptionGrid(snapshot.mDescriptions, epsilon, metric);
+        snapshot.mGrid = grid;
+      }
+      return grid;
+    }
+  }
+  
+  /**
+   * Moves an object of the index to its new description after its system is updated in place.
+   * Objects outside the indexed region are ignored.
+   */
+  @Override
+  public void onDescriptionChanged(int index, Description oldDesc, Description newDesc) {
+    Region indices = mMap.get(oldDesc);
+    if (indices == null || !indices.contains(index)) return;
+    indices.remove(index);
+    boolean changed = false;
+    if (indices.isEmpty()) {
+      mMap.remove(oldDesc);
+      changed = true;
+    }
+    Region moved = mMap.get(newDesc);
+    if (moved == null) {
+      moved = new Region(mSize);
+      mMap.put(newDesc, moved);
+      changed = true;
+    }
+    moved.add(index);
+    if (changed) {
+      synchronized (this) {
+        mSnapshot = null;
+      }
+    }
+  }
+  
+  /**
+   * The distinct descriptions of the index at one time, with the grid last used to probe them.
+   */
+  protected static class Snapshot {
+    
+    protected final Description[] mDescriptions;
+    
+    protected volatile DescriptionGrid mGrid;
+    
+    protected Snapshot(Map<Description, Region> map) {
+      mDescriptions = new Description[map.size()];
+      map.keySet().toArray(mDescriptions);
+    }
+  }
+
+}
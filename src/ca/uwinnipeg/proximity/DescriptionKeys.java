@@ -0,0 +1,95 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorts objects by primitive description keys, for probe functions whose descriptions can be 
+ * packed into a single long. Grouping equal keys by a radix sort takes linear time and never 
+ * creates {@link Description} objects or hashes them.
+ * @author Garrett Smith
+ *
+ */
+public class DescriptionKeys {
+  
+  // Below this many keys the sort uses 8 bit digits so the counts stay small
+  protected static final int SMALL_SORT = 1 << 16;
+  
+  private DescriptionKeys() {}
+  
+  /**
+   * Returns the positions of the keys in ascending key order. Equal keys keep their order.
+   * @param keys must not be negative
+   * @return
+   */
+  public static int[] sort(long[] keys) {
+    int n = keys.length;
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    
+    long max = 0;
+    for (long key : keys) {
+      max |= key;
+    }
+    int bits = 64 - Long.numberOfLeadingZeros(max);
+    int digit = (n < SMALL_SORT) ? 8 : 16;
+    int mask = (1 << digit) - 1;
+    int[] counts = new int[1 << digit];
+    int[] sorted = new int[n];
+    
+    // least significant digit first, each pass a stable counting sort
+    for (int shift = 0; shift < bits; shift += digit) {
+      Arrays.fill(counts, 0);
+      for (int i = 0; i < n; i++) {
+        counts[(int) (keys[i] >>> shift) & mask]++;
+      }
+      int sum = 0;
+      for (int d = 0; d < counts.length; d++) {
+        int count = counts[d];
+        counts[d] = sum;
+        sum += count;
+      }
+      for (int k = 0; k < n; k++) {
+        int i = order[k];
+        sorted[counts[(int) (keys[i] >>> shift) & mask]++] = i;
+      }
+      int[] tmp = order;
+      order = sorted;
+      sorted = tmp;
+    }
+    return order;
+  }
+  
+  /**
+   * Returns the end of the run of equal keys starting at the given position of the sorted order.
+   * @param keys
+   * @param order
+   * @param start
+   * @return the first position after the run
+   */
+  public static int runEnd(long[] keys, int[] order, int start) {
+    long key = keys[order[start]];
+    int end = start + 1;
+    while (end < order.length && keys[order[end]] == key) {
+      end++;
+    }
+    return end;
+  }
+  
+  /**
+   * Returns the indices of a list as an array.
+   * @param indices
+   * @return
+   */
+  public static int[] toArray(List<Integer> indices) {
+    int[] array = new int[indices.size()];
+    int i = 0;
+    for (Integer index : indices) {
+      array[i++] = index;
+    }
+    return array;
+  }
+
+}
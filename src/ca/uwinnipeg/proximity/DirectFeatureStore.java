@@ -0,0 +1,141 @@
+package ca.uwinnipeg.proximity;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * A {@link FeatureStore} whose values live outside the Java heap in a direct buffer, so large 
+ * stores add nothing for the garbage collector to copy or compact. Values are stored column by 
+ * column.
+ * <p>
+ * A shared store may be read from any thread. Closing it drops the buffer, whose memory is 
+ * returned when the buffer is collected. A confined store may only be used by the thread that 
+ * created it, so closing it frees the memory immediately where the virtual machine allows.
+ * Either kind throws an {@link IllegalStateException} when used after being closed.
+ * @author Garrett Smith
+ *
+ */
+public class DirectFeatureStore extends FeatureStore implements Closeable {
+  
+  // The buffer holding the values, null once closed
+  protected volatile ByteBuffer mBuffer;
+  
+  // To get a value use mValues[ProbeFunc index * size + Object index], null once closed
+  protected volatile DoubleBuffer mValues;
+  
+  // The only thread that may use a confined store, null when shared
+  protected final Thread mOwner;
+  
+  /**
+   * Creates a shared store.
+   * @param size
+   * @param featureCount
+   */
+  public DirectFeatureStore(int size, int featureCount) {
+    this(size, featureCount, true);
+  }
+  
+  /**
+   * Creates a store.
+   * @param size
+   * @param featureCount
+   * @param shared true if any thread may use the store, false to confine it to this thread
+   */
+  public DirectFeatureStore(int size, int featureCount, boolean shared) {
+    super(size, featureCount);
+    long bytes = 8L * size * featureCount;
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Feature store of " + bytes + " bytes is too large");
+    }
+    mBuffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    mValues = mBuffer.asDoubleBuffer();
+    mOwner = shared ? null : Thread.currentThread();
+  }
+  
+  public boolean isShared() {
+    return mOwner == null;
+  }
+  
+  public boolean isClosed() {
+    return mValues == null;
+  }
+
+  @Override
+  public double getValue(int index, int feature) {
+    return values().get(feature * mSize + index);
+  }
+
+  @Override
+  public void setValue(int index, int feature, double value) {
+    values().put(feature * mSize + index, value);
+  }
+  
+  /**
+   * Releases the values of the store. Closing a closed store does nothing.
+   */
+  @Override
+  public synchronized void close() {
+    if (mValues == null) return;
+    checkOwner();
+    ByteBuffer buffer = mBuffer;
+    mValues = null;
+    mBuffer = null;
+    // a shared store may still be being read, so only a confined store is freed here
+    if (mOwner != null) {
+      free(buffer);
+    }
+  }
+  
+  // Returns the values if the store can be used by this thread
+  private DoubleBuffer values() {
+    DoubleBuffer values = mValues;
+    if (values == null) {
+      throw new IllegalStateException("Feature store is closed");
+    }
+    if (mOwner != null) checkOwner();
+    return values;
+  }
+  
+  private void checkOwner() {
+    if (mOwner != null && Thread.currentThread() != mOwner) {
+      throw new IllegalStateException("Confined feature store used by another thread");
+    }
+  }
+  
+  /**
+   * Frees the memory of a direct buffer now rather than when it is collected, if the virtual 
+   * machine allows it. The buffer must not be used afterwards.
+   * @param buffer
+   */
+  protected static void free(ByteBuffer buffer) {
+    try {
+      // Java 9 and later
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+      return;
+    }
+    catch (Exception e) {
+      // fall through to the older cleaner
+    }
+    try {
+      // Java 8 and earlier
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    }
+    catch (Exception e) {
+      // the memory is returned when the buffer is collected
+    }
+  }
+
+}
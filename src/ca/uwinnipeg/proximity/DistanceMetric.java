@@ -0,0 +1,151 @@
+package ca.uwinnipeg.proximity;
+
+/**
+ * Measures the distance between descriptions for the tolerance-based operations of a 
+ * {@link PerceptualSystem}.
+ * A distance is built up one feature at a time from a running total that never decreases, so an 
+ * epsilon test stops as soon as the total reaches the threshold of epsilon.
+ * @author Garrett Smith
+ *
+ */
+public abstract class DistanceMetric {
+  
+  /**
+   * Adds the contribution of the difference along one feature to the running total.
+   * @param total the total so far
+   * @param feature the index of the feature
+   * @param diff the difference between the feature values
+   * @return the new total, never less than the old one
+   */
+  protected abstract double accumulate(double total, int feature, double diff);
+  
+  /**
+   * Returns the total that descriptions within epsilon stay below.
+   * @param epsilon
+   * @return
+   */
+  protected abstract double threshold(double epsilon);
+  
+  /**
+   * Converts a total over every feature to a distance.
+   * @param total
+   * @return
+   */
+  protected abstract double toDistance(double total);
+  
+  /**
+   * Returns the largest difference along the given feature that two descriptions within epsilon 
+   * can have, or infinity if the feature does not limit the distance. Used by spatial indices to 
+   * size their cells.
+   * @param feature
+   * @param epsilon
+   * @return
+   */
+  public abstract double getReach(int feature, double epsilon);
+  
+  /**
+   * Returns the largest possible distance between two descriptions with features in [0,1].
+   * @param featureCount
+   * @return
+   */
+  public abstract double getNorm(int featureCount);
+  
+  /**
+   * Returns the distance between two descriptions.
+   * @param a
+   * @param b
+   * @return
+   */
+  public double distance(Description a, Description b) {
+    double[] x = a.getValues();
+    double[] y = b.getValues();
+    double total = 0;
+    for (int i = 0; i < x.length; i++) {
+      total = accumulate(total, i, x[i] - y[i]);
+    }
+    return toDistance(total);
+  }
+  
+  /**
+   * Returns true if the descriptions are within epsilon of each other.
+   * @param a
+   * @param b
+   * @param epsilon
+   * @return
+   */
+  public boolean isNear(Description a, Description b, double epsilon) {
+    double[] x = a.getValues();
+    double[] y = b.getValues();
+    double limit = threshold(epsilon);
+    double total = 0;
+    for (int i = 0; i < x.length; i++) {
+      total = accumulate(total, i, x[i] - y[i]);
+      if (total >= limit) return false;
+    }
+    return true;
+  }
+  
+  /**
+   * Returns true if a stored object is within epsilon of the description, without creating the 
+   * description of the object.
+   * @param store
+   * @param index the index of the perceptual object
+   * @param desc
+   * @param epsilon
+   * @return
+   */
+  public boolean isNear(FeatureStore store, int index, Description desc, double epsilon) {
+    double limit = threshold(epsilon);
+    double total = 0;
+    int count = store.getFeatureCount();
+    for (int i = 0; i < count; i++) {
+      total = accumulate(total, i, store.getValue(index, i) - desc.getValue(i));
+      if (total >= limit) return false;
+    }
+    return true;
+  }
+  
+  // Returns the value of a feature, 1 for features without one
+  protected static double get(double[] values, int feature) {
+    return (values == null || feature >= values.length) ? 1 : values[feature];
+  }
+  
+  protected static double[] copy(double[] values) {
+    return (values == null) ? null : values.clone();
+  }
+  
+  /**
+   * Copies the weights of a metric.
+   * @param weights may be null
+   * @return
+   * @throws IllegalArgumentException if a weight is negative, infinite or NaN
+   */
+  protected static double[] copyWeights(double[] weights) {
+    if (weights != null) {
+      for (int i = 0; i < weights.length; i++) {
+        if (!(weights[i] >= 0) || Double.isInfinite(weights[i])) {
+          throw new IllegalArgumentException("Weight " + i + " is " + weights[i]);
+        }
+      }
+    }
+    return copy(weights);
+  }
+  
+  /**
+   * Copies the tolerances of a metric.
+   * @param tolerances may be null
+   * @return
+   * @throws IllegalArgumentException if a tolerance is not greater than 0 or is NaN
+   */
+  protected static double[] copyTolerances(double[] tolerances) {
+    if (tolerances != null) {
+      for (int i = 0; i < tolerances.length; i++) {
+        if (!(tolerances[i] > 0)) {
+          throw new IllegalArgumentException("Tolerance " + i + " is " + tolerances[i]);
+        }
+      }
+    }
+    return copy(tolerances);
+  }
+
+}
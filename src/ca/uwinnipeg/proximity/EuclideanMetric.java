@@ -0,0 +1,65 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.Arrays;
+
+/**
+ * The weighted Euclidean (L2) distance, the square root of the weighted sum of squared feature 
+ * differences. Without weights this is the distance used by default.
+ * @author Garrett Smith
+ *
+ */
+public class EuclideanMetric extends DistanceMetric {
+  
+  // The weight of each feature, null when every feature has weight 1
+  protected final double[] mWeights;
+  
+  public EuclideanMetric() {
+    this(null);
+  }
+  
+  /**
+   * Creates a metric with the given weight for each feature. Features past the end of the weights 
+   * have weight 1.
+   * @param weights must not be negative, a feature with weight 0 is ignored
+   * @throws IllegalArgumentException if a weight is negative or infinite
+   */
+  public EuclideanMetric(double[] weights) {
+    mWeights = copyWeights(weights);
+  }
+
+  @Override
+  protected double accumulate(double total, int feature, double diff) {
+    return (mWeights == null) ? total + diff * diff : total + get(mWeights, feature) * diff * diff;
+  }
+
+  @Override
+  protected double threshold(double epsilon) {
+    return epsilon * epsilon;
+  }
+
+  @Override
+  protected double toDistance(double total) {
+    return Math.sqrt(total);
+  }
+
+  @Override
+  public double getReach(int feature, double epsilon) {
+    double weight = get(mWeights, feature);
+    return (weight <= 0) ? Double.POSITIVE_INFINITY : epsilon / Math.sqrt(weight);
+  }
+
+  @Override
+  public double getNorm(int featureCount) {
+    double sum = 0;
+    for (int i = 0; i < featureCount; i++) {
+      sum += get(mWeights, i);
+    }
+    return Math.sqrt(sum);
+  }
+  
+  @Override
+  public String toString() {
+    return "L2" + ((mWeights == null) ? "" : Arrays.toString(mWeights));
+  }
+
+}
@@ -0,0 +1,150 @@
+package ca.uwinnipeg.proximity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Saves a {@link FeatureStore} to a file and maps it back without copying, so a restarted process
+ * can skip applying its probe functions.
+ * A snapshot is tagged with a key identifying the objects and probe functions it was calculated 
+ * from, see {@link PerceptualSystem#getSnapshotKey()}, and is only loaded when the key matches.
+ * <p>
+ * The format is a header of magic number, version, key length, key bytes, object count and probe 
+ * function count, padded to a multiple of 8 bytes, followed by every feature column as big-endian 
+ * doubles.
+ * @author Garrett Smith
+ *
+ */
+public class FeatureSnapshot {
+  
+  public static final int MAGIC = 0x50584653; // "PXFS"
+  public static final int VERSION = 1;
+  
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  
+  // How many doubles are written at a time
+  private static final int CHUNK_SIZE = 8192;
+  
+  private FeatureSnapshot() {}
+  
+  /**
+   * Writes the feature store to the given file, replacing it.
+   * @param store
+   * @param key identifies what the features were calculated from
+   * @param file
+   * @throws IOException
+   */
+  public static void write(FeatureStore store, String key, File file) throws IOException {
+    byte[] keyBytes = key.getBytes(UTF8);
+    int size = store.size();
+    int count = store.getFeatureCount();
+    
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0);
+      FileChannel channel = raf.getChannel();
+      
+      ByteBuffer header = ByteBuffer.allocate(headerSize(keyBytes.length));
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.putInt(keyBytes.length);
+      header.put(keyBytes);
+      header.putInt(size);
+      header.putInt(count);
+      header.position(0);
+      writeFully(channel, header);
+      
+      ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE * 8);
+      DoubleBuffer doubles = chunk.asDoubleBuffer();
+      for (int j = 0; j < count; j++) {
+        for (int i = 0; i < size; i++) {
+          doubles.put(store.getValue(i, j));
+          if (!doubles.hasRemaining()) {
+            flush(channel, chunk, doubles);
+          }
+        }
+      }
+      flush(channel, chunk, doubles);
+    }
+    finally {
+      raf.close();
+    }
+  }
+  
+  /**
+   * Maps the snapshot in the given file if it was written with the given key.
+   * @param file
+   * @param key identifies what the features must have been calculated from
+   * @return the mapped feature store or null if the file does not exist or the key differs
+   * @throws IOException if the file is not a valid snapshot
+   */
+  public static FeatureStore read(File file, String key) throws IOException {
+    if (!file.isFile()) return null;
+    
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      
+      if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+        throw new IOException(file + " is not a feature snapshot");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException(file + " has unsupported snapshot version " + version);
+      }
+      int keyLength = buffer.getInt();
+      if (keyLength < 0 || keyLength > buffer.remaining()) {
+        throw new IOException(file + " has a corrupt header");
+      }
+      byte[] keyBytes = new byte[keyLength];
+      buffer.get(keyBytes);
+      if (!key.equals(new String(keyBytes, UTF8))) {
+        return null;
+      }
+      
+      int size = buffer.getInt();
+      int count = buffer.getInt();
+      int offset = headerSize(keyLength);
+      if (channel.size() != offset + 8L * size * count) {
+        throw new IOException(file + " is truncated");
+      }
+      
+      // the mapping stays valid after the channel is closed
+      buffer.position(offset);
+      DoubleBuffer values = buffer.slice().asDoubleBuffer();
+      return new MappedFeatureStore(size, count, values);
+    }
+    finally {
+      raf.close();
+    }
+  }
+  
+  // The header padded so the columns are aligned to doubles
+  private static int headerSize(int keyLength) {
+    int size = 4 * 3 + keyLength + 4 * 2;
+    return (size + 7) & ~7;
+  }
+  
+  private static void flush(FileChannel channel, ByteBuffer chunk, DoubleBuffer doubles) 
+      throws IOException {
+    chunk.position(0);
+    chunk.limit(doubles.position() * 8);
+    writeFully(channel, chunk);
+    chunk.clear();
+    doubles.clear();
+  }
+  
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+}
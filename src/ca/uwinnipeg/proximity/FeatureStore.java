@@ -0,0 +1,89 @@
+package ca.uwinnipeg.proximity;
+
+/**
+ * Stores the normalised probe function values of every perceptual object in a 
+ * {@link PerceptualSystem}, one column per probe function.
+ * @author Garrett Smith
+ *
+ */
+public abstract class FeatureStore {
+  
+  // The number of perceptual objects
+  protected final int mSize;
+  
+  // The number of probe functions
+  protected final int mFeatureCount;
+  
+  /**
+   * Creates a feature store for the given number of objects and probe functions.
+   * @param size the number of perceptual objects
+   * @param featureCount the number of probe functions
+   */
+  public FeatureStore(int size, int featureCount) {
+    mSize = size;
+    mFeatureCount = featureCount;
+  }
+  
+  /**
+   * Returns the number of perceptual objects in the store.
+   * @return
+   */
+  public int size() {
+    return mSize;
+  }
+  
+  /**
+   * Returns the number of probe functions in the store.
+   * @return
+   */
+  public int getFeatureCount() {
+    return mFeatureCount;
+  }
+  
+  /**
+   * Returns the normalised value of the given probe function for the given object.
+   * @param index the index of the perceptual object
+   * @param feature the index of the probe function
+   * @return
+   */
+  public abstract double getValue(int index, int feature);
+  
+  /**
+   * Sets the normalised value of the given probe function for the given object.
+   * @param index the index of the perceptual object
+   * @param feature the index of the probe function
+   * @param value
+   */
+  public abstract void setValue(int index, int feature, double value);
+  
+  /**
+   * Returns true if the given object has exactly the given description, without creating the 
+   * description of the object.
+   * @param index the index of the perceptual object
+   * @param desc
+   * @return
+   */
+  public boolean matches(int index, Description desc) {
+    for (int i = 0; i < mFeatureCount; i++) {
+      if (Double.doubleToLongBits(getValue(index, i)) != 
+          Double.doubleToLongBits(desc.getValue(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Returns the description of the given object.
+   * @param index the index of the perceptual object
+   * @return
+   */
+  public Description getDescription(int index) {
+    double[] values = new double[mFeatureCount];
+    for (int i = 0; i < mFeatureCount; i++) {
+      values[i] = getValue(index, i);
+    }
+    return new Description(values);
+  }
+
+}
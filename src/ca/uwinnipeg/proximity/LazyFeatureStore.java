@@ -0,0 +1,142 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link FeatureStore} that applies the probe functions of a system one chunk of objects at a 
+ * time, only when a value in the chunk is first read. Computed chunks are kept, so a query only 
+ * pays for the objects it touches and later queries reuse them.
+ * Chunks are ranges of consecutive indices by default, subclasses can group objects differently.
+ * @author Garrett Smith
+ *
+ */
+public class LazyFeatureStore extends FeatureStore {
+  
+  // The system whose probe functions are applied
+  protected final PerceptualSystem<?, ?> mSystem;
+  
+  // The number of objects in a chunk
+  protected final int mChunkSize;
+  
+  // To get a value use mChunks[chunk][ProbeFunc index * chunk size + offset], null until computed
+  protected final AtomicReferenceArray<double[]> mChunks;
+  
+  /**
+   * Creates a lazy feature store for the given system.
+   * @param system
+   * @param size the number of perceptual objects
+   * @param featureCount the number of probe functions
+   * @param chunkSize the number of objects in a chunk
+   */
+  public LazyFeatureStore(PerceptualSystem<?, ?> system, int size, int featureCount, int chunkSize) {
+    this(system, size, featureCount, chunkSize, (size + chunkSize - 1) / chunkSize);
+  }
+  
+  protected LazyFeatureStore(PerceptualSystem<?, ?> system, int size, int featureCount, 
+      int chunkSize, int chunkCount) {
+    super(size, featureCount);
+    mSystem = system;
+    mChunkSize = chunkSize;
+    mChunks = new AtomicReferenceArray<double[]>(chunkCount);
+  }
+  
+  /**
+   * Returns the chunk containing the given object.
+   * @param index
+   * @return
+   */
+  protected int getChunk(int index) {
+    return index / mChunkSize;
+  }
+  
+  /**
+   * Returns the position of the given object within its chunk.
+   * @param index
+   * @return
+   */
+  protected int getOffset(int index) {
+    return index % mChunkSize;
+  }
+  
+  /**
+   * Returns the object at the given position of the given chunk, or -1 if there is none.
+   * @param chunk
+   * @param offset
+   * @return
+   */
+  protected int getIndex(int chunk, int offset) {
+    int index = chunk * mChunkSize + offset;
+    return index < mSize ? index : -1;
+  }
+  
+  /**
+   * Returns the number of chunks.
+   * @return
+   */
+  public int getChunkCount() {
+    return mChunks.length();
+  }
+  
+  /**
+   * Returns the number of chunks computed so far.
+   * @return
+   */
+  public int getComputedChunkCount() {
+    int count = 0;
+    for (int i = 0; i < mChunks.length(); i++) {
+      if (mChunks.get(i) != null) count++;
+    }
+    return count;
+  }
+  
+  /**
+   * Returns true if the features of the given object have been computed.
+   * @param index
+   * @return
+   */
+  public boolean isComputed(int index) {
+    return mChunks.get(getChunk(index)) != null;
+  }
+
+  @Override
+  public double getValue(int index, int feature) {
+    int chunk = getChunk(index);
+    double[] values = mChunks.get(chunk);
+    if (values == null) {
+      values = calcChunk(chunk);
+    }
+    return values[feature * mChunkSize + getOffset(index)];
+  }
+
+  @Override
+  public void setValue(int index, int feature, double value) {
+    int chunk = getChunk(index);
+    double[] values = mChunks.get(chunk);
+    if (values == null) {
+      values = calcChunk(chunk);
+    }
+    values[feature * mChunkSize + getOffset(index)] = value;
+  }
+  
+  // Applies every probe function to the objects of a chunk, once
+  private synchronized double[] calcChunk(int chunk) {
+    double[] values = mChunks.get(chunk);
+    if (values != null) return values;
+    
+    Metrics metrics = mSystem.getMetrics();
+    if (metrics != null) metrics.onCacheMiss("featureChunks");
+    
+    values = new double[mFeatureCount * mChunkSize];
+    for (int f = 0; f < mFeatureCount; f++) {
+      for (int offset = 0; offset < mChunkSize; offset++) {
+        int index = getIndex(chunk, offset);
+        if (index >= 0) {
+          values[f * mChunkSize + offset] = mSystem.calcFeature(index, f);
+        }
+      }
+    }
+    mChunks.set(chunk, values);
+    return values;
+  }
+
+}
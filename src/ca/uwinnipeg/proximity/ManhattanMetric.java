@@ -0,0 +1,64 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.Arrays;
+
+/**
+ * The weighted Manhattan (L1) distance, the weighted sum of absolute feature differences.
+ * @author Garrett Smith
+ *
+ */
+public class ManhattanMetric extends DistanceMetric {
+  
+  // The weight of each feature, null when every feature has weight 1
+  protected final double[] mWeights;
+  
+  public ManhattanMetric() {
+    this(null);
+  }
+  
+  /**
+   * Creates a metric with the given weight for each feature. Features past the end of the weights 
+   * have weight 1.
+   * @param weights must not be negative, a feature with weight 0 is ignored
+   * @throws IllegalArgumentException if a weight is negative or infinite
+   */
+  public ManhattanMetric(double[] weights) {
+    mWeights = copyWeights(weights);
+  }
+
+  @Override
+  protected double accumulate(double total, int feature, double diff) {
+    return total + get(mWeights, feature) * Math.abs(diff);
+  }
+
+  @Override
+  protected double threshold(double epsilon) {
+    return epsilon;
+  }
+
+  @Override
+  protected double toDistance(double total) {
+    return total;
+  }
+
+  @Override
+  public double getReach(int feature, double epsilon) {
+    double weight = get(mWeights, feature);
+    return (weight <= 0) ? Double.POSITIVE_INFINITY : epsilon / weight;
+  }
+
+  @Override
+  public double getNorm(int featureCount) {
+    double sum = 0;
+    for (int i = 0; i < featureCount; i++) {
+      sum += get(mWeights, i);
+    }
+    return sum;
+  }
+  
+  @Override
+  public String toString() {
+    return "L1" + ((mWeights == null) ? "" : Arrays.toString(mWeights));
+  }
+
+}
@@ -0,0 +1,31 @@
+package ca.uwinnipeg.proximity;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A read only {@link FeatureStore} reading directly from a buffer, such as a memory mapped 
+ * {@link FeatureSnapshot}. Values are stored column by column.
+ * @author Garrett Smith
+ *
+ */
+public class MappedFeatureStore extends FeatureStore {
+  
+  // To get a value use mValues[ProbeFunc index * size + Object index]
+  protected final DoubleBuffer mValues;
+
+  public MappedFeatureStore(int size, int featureCount, DoubleBuffer values) {
+    super(size, featureCount);
+    mValues = values;
+  }
+
+  @Override
+  public double getValue(int index, int feature) {
+    return mValues.get(feature * mSize + index);
+  }
+
+  @Override
+  public void setValue(int index, int feature, double value) {
+    throw new UnsupportedOperationException("Mapped feature stores are read only");
+  }
+
+}
@@ -0,0 +1,64 @@
+package ca.uwinnipeg.proximity;
+
+/**
+ * Receives timings and counters from the hot paths of a {@link PerceptualSystem}.
+ * A system without metrics skips all measurement, so instrumentation costs nothing unless a 
+ * Metrics is set with {@link PerceptualSystem#setMetrics(Metrics)}.
+ * Methods may be called from any thread running a query.
+ * @author Garrett Smith
+ *
+ */
+public interface Metrics {
+  
+  /**
+   * Called when a system method finishes, including when it is cancelled. Methods run by another 
+   * method on the same thread are part of the outer method and are not reported.
+   * @param operation the name of the method
+   * @param nanos the time taken
+   */
+  public void onOperation(String operation, long nanos);
+  
+  /**
+   * Called after a probe function has been applied to every object to fill the feature cache. 
+   * Descriptions calculated one at a time are not timed.
+   * @param func the probe function
+   * @param objects the number of objects it was applied to
+   * @param nanos the time taken
+   */
+  public void onProbeFunc(ProbeFunc<?, ?> func, int objects, long nanos);
+  
+  /**
+   * Called once as an operation starts for each cache it reads from that is already filled.
+   * @param cache the name of the cache
+   */
+  public void onCacheHit(String cache);
+  
+  /**
+   * Called once as an operation starts for each cache it reads from that has to be calculated.
+   * @param cache the name of the cache
+   */
+  public void onCacheMiss(String cache);
+  
+  /**
+   * Called after objects have been grouped by description.
+   * @param objects the number of objects grouped
+   * @param distinct the number of distinct descriptions found
+   * @param nanos the time taken
+   */
+  public void onGrouping(int objects, int distinct, long nanos);
+  
+  /**
+   * Called after descriptions have been compared against epsilon.
+   * @param operation the name of the method
+   * @param comparisons the number of distance calculations
+   */
+  public void onComparisons(String operation, long comparisons);
+  
+  /**
+   * Called when a large structure is allocated.
+   * @param structure the name of the structure
+   * @param bytes the estimated size
+   */
+  public void onAllocation(String structure, long bytes);
+
+}
@@ -3,8 +3,13 @@
  */
 package ca.uwinnipeg.proximity;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -16,14 +21,16 @@ import java.util.Set;
  * @author Garrett Smith
  *
  */
-public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends PerceptualSystem<O, ?>>> {
+public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends PerceptualSystem<O, ?>>> 
+    implements Closeable {
   
   // The perceptual objects within the system
   protected O[] mObjects;
   
-  // The description of every perceptual object in the system.
-  // To get a description use mDescriptions[Object index][ProbeFunc index].
-  private List<double[]> mDescriptions = new ArrayList<double[]>();
+  // The normalised features of every perceptual object in the system, only used when caching.
+  // Built on first use and discarded whenever the objects or probe functions change.
+  // Volatile so a store published by one thread is seen fully built by every other.
+  protected volatile FeatureStore mFeatures = null;
   
   // The list of probe functions
   protected List<P> mProbeFuncs = new ArrayList<P>();
@@ -31,6 +38,47 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
   
   protected boolean mCache = false;
   
+  // Whether the cached features are computed a chunk at a time as they are read
+  protected boolean mLazy = false;
+  
+  // Whether the cached features are stored off the Java heap
+  protected boolean mDirect = false;
+  
+  // Whether an off heap feature store may be read by any thread rather than only its creator
+  protected boolean mShared = true;
+  
+  // Receives measurements of the hot paths, null when the system is not measured
+  protected Metrics mMetrics = null;
+  
+  // The name the feature store is reported under
+  protected static final String FEATURE_CACHE = "features";
+  
+  // The distance the tolerance-based methods compare descriptions with
+  protected DistanceMetric mDistance = new EuclideanMetric();
+  
+  // The approximate matching used by hybridIntersection, null to match exactly
+  protected ProjectionIndex.Settings mApproximation = null;
+  
+  // How many objects are featurised at once by a lazy feature store
+  protected static final int LAZY_CHUNK_SIZE = 4096;
+  
+  // How many objects region scans process between checking for cancellation
+  protected static final int PROGRESS_INTERVAL = 4096;
+  
+  // The start time of an operation that is not measured
+  protected static final long UNMEASURED = Long.MIN_VALUE;
+  
+  // How many measured operations are running on each thread, only the outermost is reported
+  private static final ThreadLocal<int[]> sOperationDepth = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+  
+  // Whether the system has been frozen, after which it can no longer change
+  protected volatile boolean mFrozen = false;
+  
   /**
    * A task that can watch the status of a running {@link PerceptualSystem} method.
    * @author Garrett Smith
@@ -49,6 +97,51 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
      */
     public boolean isCancelled();
   }
+  
+  /**
+   * Receives the objects found by a streaming {@link PerceptualSystem} method as they are found.
+   * @author Garrett Smith
+   *
+   */
+  public interface ObjectVisitor {
+    /**
+     * Called with each object found.
+     * @param index the index of the object
+     * @return false to stop the method early
+     */
+    public boolean visit(int index);
+  }
+  
+  /**
+   * Receives the members of equivalence classes found by a streaming {@link PerceptualSystem} 
+   * method as they are found.
+   * @author Garrett Smith
+   *
+   */
+  public interface ClassVisitor {
+    /**
+     * Called with each object found.
+     * @param equivClass the number of the class the object belongs to
+     * @param index the index of the object
+     * @return false to stop the method early
+     */
+    public boolean visit(int equivClass, int index);
+  }
+  
+  /**
+   * Receives the objects whose descriptions change when a system is updated in place.
+   * @author Garrett Smith
+   *
+   */
+  public interface DescriptionListener {
+    /**
+     * Called with each object whose description changed.
+     * @param index the index of the object
+     * @param oldDesc the description before the update
+     * @param newDesc the description after the update
+     */
+    public void onDescriptionChanged(int index, Description oldDesc, Description newDesc);
+  }
 
   /**
    * Creates an empty perceptual system.
@@ -63,7 +156,6 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
   @SuppressWarnings("unchecked")
   public PerceptualSystem(int size) {
     mObjects = (O[]) new Object[size];
-    if (mCache) mDescriptions = new ArrayList<double[]>(size);
   }
   
   /**
@@ -79,21 +171,40 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
   
   public List<Integer> neighbourhood(int x, List<Integer> region, 
       PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      return calcNeighbourhood(x, region, sub);
+    }
+    finally {
+      endOperation("neighbourhood", start);
+    }
+  }
+  
+  private List<Integer> calcNeighbourhood(int x, List<Integer> region, 
+      PerceptualSystemSubscriber sub) {
     Description descX = getDescription(x);
     return mapIndicesList(region).get(descX);
   }
   
   public List<Integer> hybridNeighbourhood(int x, List<Integer> indices, double epsilon, 
       PerceptualSystemSubscriber sub) {
-    
+    long start = startOperation();
+    try {
+      return calcHybridNeighbourhood(x, indices, epsilon, sub);
+    }
+    finally {
+      endOperation("hybridNeighbourhood", start);
+    }
+  }
+  
+  private List<Integer> calcHybridNeighbourhood(int x, List<Integer> indices, double epsilon, 
+      PerceptualSystemSubscriber sub) {
     if (epsilon == 0) return neighbourhood(x, indices, sub);
     
     // check if we should stop
     if (sub.isCancelled()) return null;
     sub.onProgressSet(0);
     
-    double e2 = epsilon * epsilon;
-    
     Description descX = getDescription(x);
     List<Integer> neighbourhood = new ArrayList<Integer>();
     for (int i = 0; i < indices.size(); i++) {
@@ -103,7 +214,7 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
       
       Description descY = getDescription(indices.get(i));
       
-      if (descX.squaredDistance(descY) < e2) {
+      if (mDistance.isNear(descX, descY, epsilon)) {
         neighbourhood.add(indices.get(i));
       }
       
@@ -113,10 +224,93 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
     return neighbourhood;
   }
 
-  public List<Integer> intersection(List<Integer> A, List<Integer> B, 
+  /**
+   * Streams the description-based neighbourhood of x within the given region to the visitor 
+   * without holding the neighbourhood in memory.
+   * @param x the object to compare against
+   * @param region
+   * @param visitor
+   * @param sub
+   * @return true if the whole region was visited, false if stopped or cancelled
+   */
+  public boolean neighbourhood(int x, List<Integer> region, ObjectVisitor visitor, 
       PerceptualSystemSubscriber sub) {
+    return hybridNeighbourhood(x, region, 0, visitor, sub);
+  }
+  
+  /**
+   * Streams the tolerance-based neighbourhood of x within the given region to the visitor 
+   * without holding the neighbourhood in memory.
+   * @param x the object to compare against
+   * @param region
+   * @param epsilon
+   * @param visitor
+   * @param sub
+   * @return true if the whole region was visited, false if stopped or cancelled
+   */
+  public boolean hybridNeighbourhood(int x, List<Integer> region, double epsilon, 
+      ObjectVisitor visitor, PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      return calcHybridNeighbourhood(x, region, epsilon, visitor, sub);
+    }
+    finally {
+      endOperation("hybridNeighbourhood", start);
+    }
+  }
+  
+  private boolean calcHybridNeighbourhood(int x, List<Integer> region, double epsilon, 
+      ObjectVisitor visitor, PerceptualSystemSubscriber sub) {
+    if (sub.isCancelled()) return false;
+    sub.onProgressSet(0);
+    
+    Description descX = getDescription(x);
+    // compare against the cached features directly to avoid creating a description per object
+    FeatureStore store = mCache ? getFeatureStore() : null;
     
+    int size = region.size();
+    for (int i = 0; i < size; i++) {
+      if (i % PROGRESS_INTERVAL == 0) {
+        if (sub.isCancelled()) return false;
+        sub.onProgressSet(i / (float) size);
+      }
+      
+      int index = region.get(i);
+      boolean near;
+      if (store != null) {
+        near = (epsilon == 0) ? store.matches(index, descX) : mDistance.isNear(store, index, descX, epsilon);
+      }
+      else {
+        Description descY = getDescription(index);
+        near = (epsilon == 0) ? descX.equals(descY) : mDistance.isNear(descX, descY, epsilon);
+      }
+      if (near && !visitor.visit(index)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public List<Integer> intersection(List<Integer> A, List<Integer> B, 
+      PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      return calcIntersection(A, B, sub);
+    }
+    finally {
+      endOperation("intersection", start);
+    }
+  }
+  
+  private List<Integer> calcIntersection(List<Integer> A, List<Integer> B, 
+      PerceptualSystemSubscriber sub) {
     if (sub.isCancelled()) return null;
+    long[] keysA = getDescriptionKeys(A);
+    if (keysA != null) {
+      return keyedIntersection(DescriptionKeys.toArray(A), keysA, 
+          DescriptionKeys.toArray(B), getDescriptionKeys(B), sub);
+    }
+      
     Map<Description, List<Integer>> descsA = mapIndicesList(A);
     sub.onProgressSet(0.3f);
     
@@ -146,37 +340,58 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
   // TODO: sort descriptions
   public List<Integer> hybridIntersection(List<Integer> A, List<Integer> B, double epsilon,
       PerceptualSystemSubscriber sub) {
-    
+    long start = startOperation();
+    try {
+      return calcHybridIntersection(A, B, epsilon, sub);
+    }
+    finally {
+      endOperation("hybridIntersection", start);
+    }
+  }
+  
+  private List<Integer> calcHybridIntersection(List<Integer> A, List<Integer> B, double epsilon,
+      PerceptualSystemSubscriber sub) {
     // check if we really want a description based intersect, ie. epsilon = 0, this is much faster
     if (epsilon == 0) return intersection(A, B, sub);
 
+    if (mApproximation != null) {
+      return approximateHybridIntersection(A, B, epsilon, mApproximation, sub);
+    }
+    return exactHybridIntersection(A, B, epsilon, sub);
+  }
+  
+  private List<Integer> exactHybridIntersection(List<Integer> A, List<Integer> B, double epsilon,
+      PerceptualSystemSubscriber sub) {
+    // the recall and precision measures compare against this directly
+    if (epsilon == 0) return intersection(A, B, sub);
+    
     if (sub.isCancelled()) return null;
     Map<Description, List<Integer>> descsMapA = mapIndicesList(A);
-    
+  
     if (sub.isCancelled()) return null;
     Map<Description, List<Integer>> descsMapB = mapIndicesList(B);
-    
+  
     Description[] descsA = new Description[descsMapA.size()];
     descsMapA.keySet().toArray(descsA);
     Description[] descsB = new Description[descsMapB.size()];
     descsMapB.keySet().toArray(descsB);
-    
-    double e2 = epsilon * epsilon;
-    
+  
     boolean[] matchesA = new boolean[descsA.length];
     Arrays.fill(matchesA, false);
     boolean[] matchesB = new boolean[descsB.length];
     Arrays.fill(matchesB, false);
-    
+  
+    long comparisons = 0;
     for (int i = 0; i < descsA.length; i++) {
-      
+    
       if (sub.isCancelled()) return null;
       Description descA = descsA[i];
       boolean matched = false;
       for (int j = 0; j < descsB.length; j++) {
         if (!matched && !matchesB[j]) {
           Description descB = descsB[j];
-          if (descA.squaredDistance(descB) < e2) {
+          comparisons++;
+          if (mDistance.isNear(descA, descB, epsilon)) {
             matchesB[j] = true;
             matched = true;
           }
@@ -185,12 +400,133 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
       if (matched) matchesA[i] = true;
       sub.onProgressSet(i / (float)descsA.length);
     }
+    if (mMetrics != null) mMetrics.onComparisons("hybridIntersection", comparisons);
+    Set<Integer> rtn = new HashSet<Integer>();
+    getIndices(matchesA, descsA, descsMapA, rtn);
+    getIndices(matchesB, descsB, descsMapB, rtn);
+    return new ArrayList<Integer>(rtn);
+  }
+  
+  /**
+   * Returns an approximate tolerance-based intersection, comparing only descriptions that share a 
+   * bucket of a {@link ProjectionIndex}. Every object returned is within epsilon of an object of 
+   * the other region, but as descriptions are matched in candidate order rather than index order 
+   * the result is not guaranteed to be a subset of the exact intersection.
+   * @param A
+   * @param B
+   * @param epsilon
+   * @param settings
+   * @param sub
+   * @return
+   */
+  public List<Integer> approximateHybridIntersection(List<Integer> A, List<Integer> B, 
+      double epsilon, ProjectionIndex.Settings settings, PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      return calcApproximateHybridIntersection(A, B, epsilon, settings, sub);
+    }
+    finally {
+      endOperation("approximateHybridIntersection", start);
+    }
+  }
+  
+  private List<Integer> calcApproximateHybridIntersection(List<Integer> A, List<Integer> B, 
+      double epsilon, ProjectionIndex.Settings settings, PerceptualSystemSubscriber sub) {
+    if (epsilon == 0) return intersection(A, B, sub);
+      
+    if (sub.isCancelled()) return null;
+    Map<Description, List<Integer>> descsMapA = mapIndicesList(A);
+      
+    if (sub.isCancelled()) return null;
+    Map<Description, List<Integer>> descsMapB = mapIndicesList(B);
+      
+    Description[] descsA = new Description[descsMapA.size()];
+    descsMapA.keySet().toArray(descsA);
+    Description[] descsB = new Description[descsMapB.size()];
+    descsMapB.keySet().toArray(descsB);
+      
+    ProjectionIndex index = new ProjectionIndex(descsB, epsilon, settings);
+      
+    boolean[] matchesA = new boolean[descsA.length];
+    boolean[] matchesB = new boolean[descsB.length];
+      
+    // match each description of A with the first unmatched candidate of B, as the exact method
+    long comparisons = 0;
+    for (int i = 0; i < descsA.length; i++) {
+      if (sub.isCancelled()) return null;
+        
+      Description descA = descsA[i];
+      for (Integer j : index.candidates(descA)) {
+        if (!matchesB[j]) {
+          comparisons++;
+          if (mDistance.isNear(descA, descsB[j], epsilon)) {
+            matchesB[j] = true;
+            matchesA[i] = true;
+            break;
+          }
+        }
+      }
+      sub.onProgressSet(i / (float)descsA.length);
+    }
+    if (mMetrics != null) mMetrics.onComparisons("approximateHybridIntersection", comparisons);
+      
     Set<Integer> rtn = new HashSet<Integer>();
     getIndices(matchesA, descsA, descsMapA, rtn);
     getIndices(matchesB, descsB, descsMapB, rtn);
     return new ArrayList<Integer>(rtn);
   }
   
+  /**
+   * Measures the recall of the approximate tolerance-based intersection against the exact one, 
+   * the fraction of the exact result the approximation finds. Use 
+   * {@link #measureIntersectionPrecision} for the fraction of the approximation the exact result 
+   * contains.
+   * @param A
+   * @param B
+   * @param epsilon
+   * @param settings
+   * @param sub
+   * @return the recall or NaN if cancelled
+   */
+  public double measureIntersectionRecall(List<Integer> A, List<Integer> B, double epsilon, 
+      ProjectionIndex.Settings settings, PerceptualSystemSubscriber sub) {
+    List<Integer> exact = exactHybridIntersection(A, B, epsilon, sub);
+    if (exact == null) return Double.NaN;
+    List<Integer> approx = approximateHybridIntersection(A, B, epsilon, settings, sub);
+    if (approx == null) return Double.NaN;
+    return fractionWithin(exact, approx);
+  }
+  
+  /**
+   * Measures the precision of the approximate tolerance-based intersection against the exact one, 
+   * the fraction of the approximation also within the exact result.
+   * @param A
+   * @param B
+   * @param epsilon
+   * @param settings
+   * @param sub
+   * @return the precision or NaN if cancelled
+   */
+  public double measureIntersectionPrecision(List<Integer> A, List<Integer> B, double epsilon, 
+      ProjectionIndex.Settings settings, PerceptualSystemSubscriber sub) {
+    List<Integer> exact = exactHybridIntersection(A, B, epsilon, sub);
+    if (exact == null) return Double.NaN;
+    List<Integer> approx = approximateHybridIntersection(A, B, epsilon, settings, sub);
+    if (approx == null) return Double.NaN;
+    return fractionWithin(approx, exact);
+  }
+  
+  // The fraction of the given indices also within the other indices
+  private static double fractionWithin(List<Integer> indices, List<Integer> other) {
+    if (indices.isEmpty()) return 1;
+    Set<Integer> found = new HashSet<Integer>(other);
+    int hits = 0;
+    for (Integer i : indices) {
+      if (found.contains(i)) hits++;
+    }
+    return hits / (double) indices.size();
+  }
+  
   private void getIndices(
       boolean[] matches, 
       Description[] descs,
@@ -214,6 +550,24 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
       List<Integer> A, 
       List<Integer> B, 
       PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      return calcDifference(A, B, sub);
+    }
+    finally {
+      endOperation("difference", start);
+    }
+  }
+  
+  private List<Integer> calcDifference(
+      List<Integer> A, 
+      List<Integer> B, 
+      PerceptualSystemSubscriber sub) {
+    long[] keysA = getDescriptionKeys(A);
+    if (keysA != null) {
+      return keyedDifference(DescriptionKeys.toArray(A), keysA, getDescriptionKeys(B), sub);
+    }
+      
     List<Description> regionDescs = getIndicesDescriptions(B);
     sub.onProgressSet(0.25f);
     
@@ -246,7 +600,20 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
       List<Integer> B, 
       double epsilon,
       PerceptualSystemSubscriber sub) {
-    
+    long start = startOperation();
+    try {
+      return calcHybridDifference(A, B, epsilon, sub);
+    }
+    finally {
+      endOperation("hybridDifference", start);
+    }
+  }
+  
+  private List<Integer> calcHybridDifference(
+      List<Integer> A, 
+      List<Integer> B, 
+      double epsilon,
+      PerceptualSystemSubscriber sub) {
     // check if we really want a description based intersect, ie. epsilon = 0, this is much faster
     if (epsilon == 0) return difference(A, B, sub);
     
@@ -256,34 +623,32 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
     descsMapA.keySet().toArray(descsA);
     
     List<Description> descsB = getIndicesDescriptions(B);
-
-    double e2 = epsilon * epsilon;
+      
+    // bucket the descriptions of A so each description of B only checks its neighbours
+    DescriptionGrid grid = new DescriptionGrid(descsA, epsilon, mDistance);
+    boolean[] removed = new boolean[descsA.length];
     
     int sizeB = descsB.size();
+    long comparisons = 0;
     
     for (int i = 0; i < sizeB; i++) {
 
       // check if we were cancelled and should return
       if (sub.isCancelled()) return null;      
       
-      Description descB = descsB.get(i);
-      
-      for (int j = 0; j < descsA.length; j++) {
-        Description descA = descsA[j];
-        if (descA != null && descA.squaredDistance(descB) < e2) {
-          descsMapA.remove(descA);
-          descsA[j] = null;
-        }
-      }
+      comparisons += grid.markNear(descsB.get(i), removed);
       
       // update the progress
       sub.onProgressSet(i / (float)sizeB);
     }
+    if (mMetrics != null) mMetrics.onComparisons("hybridDifference", comparisons);
 
     // get all the remaining objects
     List<Integer> rtn = new ArrayList<Integer>();
-    for (List<Integer> l : descsMapA.values()) {
-      rtn.addAll(l);
+    for (int j = 0; j < descsA.length; j++) {
+      if (!removed[j]) {
+        rtn.addAll(descsMapA.get(descsA[j]));
+      }
     }
     return rtn;
   }
@@ -291,98 +656,1054 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
   /**
    * Gives the descriptive compliment of the given region and the universe.
    * @param region
-   * @return
+   * @return the indices in ascending order
    */
   public List<Integer> compliment(
       List<Integer> region, 
       PerceptualSystemSubscriber sub) {
-    return difference(objectsIndicesList(), region, sub);
-  }
-  
-  public List<Integer> hybridCompliment(
-      List<Integer> region, 
-      double epsilon,
-      PerceptualSystemSubscriber sub) {
-    return hybridDifference(objectsIndicesList(), region, epsilon, sub);
+    Region rtn = compliment(new Region(getObjectCount(), region), sub);
+    return rtn == null ? null : rtn.toList();
   }
   
   /**
-   * Returns all equivalence classes for descriptions within the given region.
-   * @param region
+   * Returns the region of the system with every object in either region whose description is 
+   * within both regions.
+   * @param A
+   * @param B
    * @param sub
    * @return
+   * @throws IllegalArgumentException if a region belongs to a system of a different size
    */
-  public List<List<Integer>> equivalenceClasses(List<Integer> region, PerceptualSystemSubscriber sub) {
-
-    // check if we were cancelled and should return
-    if (sub.isCancelled()) return null;
-
-    Map<Description, List<Integer>> descriptionsMap = new HashMap<Description, List<Integer>>();
+  public Region intersection(Region A, Region B, PerceptualSystemSubscriber sub) {
+    A.checkUniverse(getObjectCount());
+    B.checkUniverse(getObjectCount());
+    long start = startOperation();
+    try {
+      if (sub.isCancelled()) return null;
+      Set<Description> descsA = getRegionDescriptions(A, sub, 0, 0.3f);
     
-    for (Integer i : region) {
-      Description desc = getDescription(i);
-      List<Integer> list = descriptionsMap.get(desc); // get the corresponding list
-      if (list == null) {
-        list = new ArrayList<Integer>(); // create the list if this is the first one
-        descriptionsMap.put(desc, list);
+      if (descsA == null) return null;
+      Set<Description> descsB = new HashSet<Description>();
+      Region rtn = new Region(getObjectCount());
+    
+      // keep the objects of B that match A while collecting the descriptions of B
+      float size = B.getUniverseSize();
+      for (int i = B.nextIndex(0); i >= 0; i = B.nextIndex(i + 1)) {
+        if (i % PROGRESS_INTERVAL == 0) {
+          if (sub.isCancelled()) return null;
+          sub.onProgressSet(0.3f + 0.35f * (i / size));
+        }
+        Description desc = getDescription(i);
+        descsB.add(desc);
+        if (descsA.contains(desc)) {
+          rtn.add(i);
+        }
       }
-    }
     
-    for (int i = 0; i < mObjects.length; i++) {
-      // check if we were cancelled and should return
-      if (sub.isCancelled()) return null;
-      
-      Description desc = getDescription(i);
-      List<Integer> equivClass = descriptionsMap.get(desc);
-      if (equivClass != null) {
-        equivClass.add(i);
+      // keep the objects of A that match B
+      for (int i = A.nextIndex(0); i >= 0; i = A.nextIndex(i + 1)) {
+        if (i % PROGRESS_INTERVAL == 0) {
+          if (sub.isCancelled()) return null;
+          sub.onProgressSet(0.65f + 0.35f * (i / size));
+        }
+        if (!rtn.contains(i) && descsB.contains(getDescription(i))) {
+          rtn.add(i);
+        }
       }
-
-      // update the progress
-      sub.onProgressSet(i / (float)mObjects.length);
+      return rtn;
+    }
+    finally {
+      endOperation("intersection", start);
     }
-
-    List<List<Integer>> results = new ArrayList<List<Integer>>();
-    results.addAll(descriptionsMap.values());
-    return results;
   }
   
-  public List<Integer> objectsIndicesList() {
-    List<Integer> indices = new ArrayList<Integer>(mObjects.length);
-    for (int i = 0; i < mObjects.length; i++) {
-      indices.add(i);
+  /**
+   * Returns the region of the objects of A whose descriptions are not within B.
+   * @param A
+   * @param B
+   * @param sub
+   * @return
+   * @throws IllegalArgumentException if a region belongs to a system of a different size
+   */
+  public Region difference(Region A, Region B, PerceptualSystemSubscriber sub) {
+    A.checkUniverse(getObjectCount());
+    B.checkUniverse(getObjectCount());
+    long start = startOperation();
+    try {
+      if (sub.isCancelled()) return null;
+      Set<Description> descsB = getRegionDescriptions(B, sub, 0, 0.5f);
+    
+      if (descsB == null) return null;
+      Region rtn = new Region(getObjectCount());
+    
+      float size = A.getUniverseSize();
+      for (int i = A.nextIndex(0); i >= 0; i = A.nextIndex(i + 1)) {
+        if (i % PROGRESS_INTERVAL == 0) {
+          if (sub.isCancelled()) return null;
+          sub.onProgressSet(0.5f + 0.5f * (i / size));
+        }
+        if (!descsB.contains(getDescription(i))) {
+          rtn.add(i);
+        }
+      }
+      return rtn;
+    }
+    finally {
+      endOperation("difference", start);
     }
-    return indices;
   }
   
   /**
-   * Gets the description of a perceptual object by applying every probe function to the object.
-   * @param obj the perceptual object
-   * @return a map mapping each probe function to its applied value
-   */
-//  public Description getDescription(O obj) {
-//    // retrieve the description
-////    if (mCache) {
-////      return mDescriptions.get(Arrays.);
-////    }
-////    else {
-//    return calcDescription(obj);
-////    }
-//  }
+   * Gives the descriptive compliment of the given region and the universe.
+   * @param region
+   * @param sub
+   * @return
+   */
+  public Region compliment(Region region, PerceptualSystemSubscriber sub) {
+    return difference(Region.full(getObjectCount()), region, sub);
+  }
   
-  public abstract Description getDescription(int index);
-
+  /**
+   * Returns a region containing every object of the system.
+   * @return
+   */
+  public Region objectsRegion() {
+    return Region.full(getObjectCount());
+  }
+  
+  // Collects the distinct descriptions of a region, reporting progress between start and end
+  private Set<Description> getRegionDescriptions(
+      Region region, 
+      PerceptualSystemSubscriber sub,
+      float start, 
+      float end) {
+    Set<Description> descs = new HashSet<Description>();
+    float size = region.getUniverseSize();
+    for (int i = region.nextIndex(0); i >= 0; i = region.nextIndex(i + 1)) {
+      if (i % PROGRESS_INTERVAL == 0) {
+        if (sub.isCancelled()) return null;
+        sub.onProgressSet(start + (end - start) * (i / size));
+      }
+      descs.add(getDescription(i));
+    }
+    return descs;
+  }
+  
+  /**
+   * Gives the tolerance-based compliment of the given region and the universe.
+   * @param region
+   * @param epsilon
+   * @param sub
+   * @return the indices in ascending order
+   */
+  public List<Integer> hybridCompliment(
+      List<Integer> region, 
+      double epsilon,
+      PerceptualSystemSubscriber sub) {
+    Region rtn = hybridCompliment(new Region(getObjectCount(), region), epsilon, sub);
+    return rtn == null ? null : rtn.toList();
+  }
+  
+  /**
+   * Gives the tolerance-based compliment of the given region and the universe.
+   * @param region
+   * @param epsilon
+   * @param sub
+   * @return
+   */
+  public Region hybridCompliment(Region region, double epsilon, PerceptualSystemSubscriber sub) {
+    return hybridDifference(Region.full(getObjectCount()), region, epsilon, sub);
+  }
+  
+  /**
+   * Returns the region of the system with every object of A whose description is not within 
+   * epsilon of a description within B.
+   * @param A
+   * @param B
+   * @param epsilon
+   * @param sub
+   * @return
+   * @throws IllegalArgumentException if a region belongs to a system of a different size
+   */
+  public Region hybridDifference(
+      Region A, 
+      Region B, 
+      double epsilon, 
+      PerceptualSystemSubscriber sub) {
+    A.checkUniverse(getObjectCount());
+    B.checkUniverse(getObjectCount());
+    if (epsilon == 0) return difference(A, B, sub);
+    long start = startOperation();
+    try {
+      if (sub.isCancelled()) return null;
+      Set<Description> descsB = getRegionDescriptions(B, sub, 0, 0.3f);
+      
+      if (descsB == null) return null;
+      DescriptionGrid grid = 
+          new DescriptionGrid(descsB.toArray(new Description[descsB.size()]), epsilon, mDistance);
+      
+      // each distinct description of A is checked against the grid once
+      Map<Description, Boolean> near = new HashMap<Description, Boolean>();
+      Region rtn = new Region(getObjectCount());
+      float size = A.getUniverseSize();
+      for (int i = A.nextIndex(0); i >= 0; i = A.nextIndex(i + 1)) {
+        if (i % PROGRESS_INTERVAL == 0) {
+          if (sub.isCancelled()) return null;
+          sub.onProgressSet(0.3f + 0.7f * (i / size));
+        }
+        Description desc = getDescription(i);
+        Boolean isNear = near.get(desc);
+        if (isNear == null) {
+          isNear = grid.containsNear(desc);
+          near.put(desc, isNear);
+        }
+        if (!isNear) rtn.add(i);
+      }
+      return rtn;
+    }
+    finally {
+      endOperation("hybridDifference", start);
+    }
+  }
+  
+  /**
+   * Returns an index of the distinct descriptions within the given region.
+   * The index can be probed by any system using the same probe functions.
+   * @param region
+   * @return
+   */
+  public DescriptionIndex index(List<Integer> region) {
+    return new DescriptionIndex(mapIndicesList(region), mProbeFuncs.size(), getObjectCount());
+  }
+  
+  /**
+   * Returns the objects of the given region that have a description within the given index.
+   * @param ref the index of the reference region, possibly from another system
+   * @param region the region of this system
+   * @param sub
+   * @return
+   */
+  public List<Integer> intersection(
+      DescriptionIndex ref, 
+      List<Integer> region, 
+      PerceptualSystemSubscriber sub) {
+    return hybridIntersection(ref, region, 0, sub);
+  }
+  
+  /**
+   * Returns the objects of the given region that have a description within epsilon of a 
+   * description within the given index.
+   * @param ref the index of the reference region, possibly from another system
+   * @param region the region of this system
+   * @param epsilon
+   * @param sub
+   * @return
+   */
+  public List<Integer> hybridIntersection(
+      DescriptionIndex ref, 
+      List<Integer> region, 
+      double epsilon,
+      PerceptualSystemSubscriber sub) {
+    return filterIndex(ref, region, epsilon, true, sub);
+  }
+  
+  /**
+   * Returns the objects of the given region that do not have a description within the given index.
+   * @param region the region of this system
+   * @param ref the index of the reference region, possibly from another system
+   * @param sub
+   * @return
+   */
+  public List<Integer> difference(
+      List<Integer> region, 
+      DescriptionIndex ref, 
+      PerceptualSystemSubscriber sub) {
+    return hybridDifference(region, ref, 0, sub);
+  }
+  
+  /**
+   * Returns the objects of the given region that do not have a description within epsilon of a 
+   * description within the given index.
+   * @param region the region of this system
+   * @param ref the index of the reference region, possibly from another system
+   * @param epsilon
+   * @param sub
+   * @return
+   */
+  public List<Integer> hybridDifference(
+      List<Integer> region, 
+      DescriptionIndex ref, 
+      double epsilon,
+      PerceptualSystemSubscriber sub) {
+    return filterIndex(ref, region, epsilon, false, sub);
+  }
+  
+  // Returns the objects of the region whose match against the index equals keep
+  private List<Integer> filterIndex(
+      DescriptionIndex ref, 
+      List<Integer> region, 
+      double epsilon,
+      boolean keep,
+      PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      if (ref.getFeatureCount() != mProbeFuncs.size()) {
+        throw new IllegalArgumentException(
+            "Index uses " + ref.getFeatureCount() + " probe functions, system uses " + 
+            mProbeFuncs.size());
+      }
+    
+      if (sub.isCancelled()) return null;
+      Map<Description, List<Integer>> descsMap = mapIndicesList(region);
+      sub.onProgressSet(0.5f);
+    
+      int i = 0;
+      float size = descsMap.size();
+      List<Integer> rtn = new ArrayList<Integer>();
+      for (Map.Entry<Description, List<Integer>> entry : descsMap.entrySet()) {
+        if (sub.isCancelled()) return null;
+        i++;
+        if (ref.containsNear(entry.getKey(), epsilon, mDistance) == keep) {
+          rtn.addAll(entry.getValue());
+        }
+        sub.onProgressSet(0.5f + (0.5f * (i / size)));
+      }
+      return rtn;
+    }
+    finally {
+      endOperation("indexFilter", start);
+    }
+  }
+  
+  /**
+   * Returns all equivalence classes for descriptions within the given region.
+   * @param region
+   * @param sub
+   * @return
+   */
+  public List<List<Integer>> equivalenceClasses(List<Integer> region, PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      return calcEquivalenceClasses(region, sub);
+    }
+    finally {
+      endOperation("equivalenceClasses", start);
+    }
+  }
+  
+  private List<List<Integer>> calcEquivalenceClasses(List<Integer> region, 
+      PerceptualSystemSubscriber sub) {
+    // check if we were cancelled and should return
+    if (sub.isCancelled()) return null;
+      
+    long[] regionKeys = getDescriptionKeys(region);
+    if (regionKeys != null) {
+      return keyedEquivalenceClasses(regionKeys, sub);
+    }
+
+    Map<Description, List<Integer>> descriptionsMap = new HashMap<Description, List<Integer>>();
+    
+    for (Integer i : region) {
+      Description desc = getDescription(i);
+      List<Integer> list = descriptionsMap.get(desc); // get the corresponding list
+      if (list == null) {
+        list = new ArrayList<Integer>(); // create the list if this is the first one
+        descriptionsMap.put(desc, list);
+      }
+    }
+    
+    for (int i = 0; i < getObjectCount(); i++) {
+      // check if we were cancelled and should return
+      if (sub.isCancelled()) return null;
+      
+      Description desc = getDescription(i);
+      List<Integer> equivClass = descriptionsMap.get(desc);
+      if (equivClass != null) {
+        equivClass.add(i);
+      }
+
+      // update the progress
+      sub.onProgressSet(i / (float)getObjectCount());
+    }
+
+    List<List<Integer>> results = new ArrayList<List<Integer>>();
+    results.addAll(descriptionsMap.values());
+    return results;
+  }
+  
+  /**
+   * Returns a key for each of the given objects that is equal for two objects exactly when their 
+   * descriptions are equal, or null if the probe functions have no keys. When there are keys 
+   * equivalenceClasses, intersection and difference group objects by sorting their keys instead 
+   * of hashing their descriptions.
+   * @param indices
+   * @return the keys, which must not be negative, or null
+   */
+  protected long[] getDescriptionKeys(List<Integer> indices) {
+    return null;
+  }
+  
+  // Groups every object of the system by key and keeps the groups with a key of the region
+  private List<List<Integer>> keyedEquivalenceClasses(long[] regionKeys, 
+      PerceptualSystemSubscriber sub) {
+    long[] keys = getDescriptionKeys(objectsIndicesList());
+    sub.onProgressSet(0.25f);
+    
+    if (sub.isCancelled()) return null;
+    int[] order = DescriptionKeys.sort(keys);
+    sub.onProgressSet(0.75f);
+    
+    if (sub.isCancelled()) return null;
+    int[] regionOrder = DescriptionKeys.sort(regionKeys);
+    
+    List<List<Integer>> results = new ArrayList<List<Integer>>();
+    int r = 0;
+    for (int s = 0; s < order.length;) {
+      int e = DescriptionKeys.runEnd(keys, order, s);
+      long key = keys[order[s]];
+      while (r < regionOrder.length && regionKeys[regionOrder[r]] < key) r++;
+      if (r < regionOrder.length && regionKeys[regionOrder[r]] == key) {
+        // the sort is stable so the class is in ascending order
+        List<Integer> equivClass = new ArrayList<Integer>(e - s);
+        for (int k = s; k < e; k++) {
+          equivClass.add(order[k]);
+        }
+        results.add(equivClass);
+      }
+      s = e;
+    }
+    return results;
+  }
+  
+  // Keeps the objects of either list whose key is in both
+  private List<Integer> keyedIntersection(int[] a, long[] keysA, int[] b, long[] keysB, 
+      PerceptualSystemSubscriber sub) {
+    int[] orderA = DescriptionKeys.sort(keysA);
+    sub.onProgressSet(0.3f);
+    
+    if (sub.isCancelled()) return null;
+    int[] orderB = DescriptionKeys.sort(keysB);
+    sub.onProgressSet(0.6f);
+    
+    if (sub.isCancelled()) return null;
+    // trims objects in both lists
+    BitSet added = new BitSet(getObjectCount());
+    List<Integer> rtn = new ArrayList<Integer>();
+    int sB = 0;
+    for (int sA = 0; sA < orderA.length && sB < orderB.length;) {
+      long keyA = keysA[orderA[sA]];
+      long keyB = keysB[orderB[sB]];
+      if (keyA < keyB) {
+        sA = DescriptionKeys.runEnd(keysA, orderA, sA);
+      }
+      else if (keyB < keyA) {
+        sB = DescriptionKeys.runEnd(keysB, orderB, sB);
+      }
+      else {
+        int eA = DescriptionKeys.runEnd(keysA, orderA, sA);
+        int eB = DescriptionKeys.runEnd(keysB, orderB, sB);
+        for (int k = sA; k < eA; k++) {
+          int i = a[orderA[k]];
+          if (!added.get(i)) {
+            added.set(i);
+            rtn.add(i);
+          }
+        }
+        for (int k = sB; k < eB; k++) {
+          int i = b[orderB[k]];
+          if (!added.get(i)) {
+            added.set(i);
+            rtn.add(i);
+          }
+        }
+        sA = eA;
+        sB = eB;
+      }
+    }
+    return rtn;
+  }
+  
+  // Keeps the objects of a whose key is not in b
+  private List<Integer> keyedDifference(int[] a, long[] keysA, long[] keysB, 
+      PerceptualSystemSubscriber sub) {
+    int[] orderA = DescriptionKeys.sort(keysA);
+    sub.onProgressSet(0.4f);
+    
+    if (sub.isCancelled()) return null;
+    int[] orderB = DescriptionKeys.sort(keysB);
+    sub.onProgressSet(0.8f);
+    
+    if (sub.isCancelled()) return null;
+    List<Integer> rtn = new ArrayList<Integer>();
+    int sB = 0;
+    for (int sA = 0; sA < orderA.length;) {
+      int eA = DescriptionKeys.runEnd(keysA, orderA, sA);
+      long key = keysA[orderA[sA]];
+      while (sB < orderB.length && keysB[orderB[sB]] < key) sB++;
+      if (sB == orderB.length || keysB[orderB[sB]] != key) {
+        for (int k = sA; k < eA; k++) {
+          rtn.add(a[orderA[k]]);
+        }
+      }
+      sA = eA;
+    }
+    return rtn;
+  }
+  
+  /**
+   * Streams the members of every equivalence class for descriptions within the given region to the
+   * visitor without holding the classes in memory. Classes are numbered in the order their 
+   * descriptions first appear in the region.
+   * @param region
+   * @param visitor
+   * @param sub
+   * @return true if every object was visited, false if stopped or cancelled
+   */
+  public boolean equivalenceClasses(List<Integer> region, ClassVisitor visitor, 
+      PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      return calcEquivalenceClasses(region, visitor, sub);
+    }
+    finally {
+      endOperation("equivalenceClasses", start);
+    }
+  }
+  
+  private boolean calcEquivalenceClasses(List<Integer> region, ClassVisitor visitor, 
+      PerceptualSystemSubscriber sub) {
+    if (sub.isCancelled()) return false;
+    
+    // number the distinct descriptions of the region
+    Map<Description, Integer> classes = new HashMap<Description, Integer>();
+    for (Integer i : region) {
+      Description desc = getDescription(i);
+      if (!classes.containsKey(desc)) {
+        classes.put(desc, classes.size());
+      }
+    }
+    
+    for (int i = 0; i < getObjectCount(); i++) {
+      if (i % PROGRESS_INTERVAL == 0) {
+        if (sub.isCancelled()) return false;
+        sub.onProgressSet(i / (float) getObjectCount());
+      }
+      
+      Integer equivClass = classes.get(getDescription(i));
+      if (equivClass != null && !visitor.visit(equivClass, i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Returns the maximal tolerance classes of the given region. Every object in a class is within 
+   * epsilon of every other object in the class.
+   * @param region
+   * @param epsilon
+   * @param sub
+   * @return the maximal tolerance classes or null if cancelled
+   */
+  public List<List<Integer>> toleranceClasses(
+      List<Integer> region, 
+      double epsilon, 
+      PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      return calcToleranceClasses(region, epsilon, sub);
+    }
+    finally {
+      endOperation("toleranceClasses", start);
+    }
+  }
+  
+  private List<List<Integer>> calcToleranceClasses(
+      List<Integer> region, 
+      double epsilon, 
+      PerceptualSystemSubscriber sub) {
+    if (sub.isCancelled()) return null;
+    Map<Description, List<Integer>> descsMap = mapIndicesList(region);
+    
+    Description[] descs = new Description[descsMap.size()];
+    descsMap.keySet().toArray(descs);
+    
+    List<BitSet> classes = new ToleranceSpace(descs, epsilon, mDistance).toleranceClasses(sub);
+    if (classes == null) return null;
+    
+    List<List<Integer>> rtn = new ArrayList<List<Integer>>(classes.size());
+    for (BitSet c : classes) {
+      List<Integer> objs = new ArrayList<Integer>();
+      for (int i = c.nextSetBit(0); i >= 0; i = c.nextSetBit(i + 1)) {
+        objs.addAll(descsMap.get(descs[i]));
+      }
+      rtn.add(objs);
+    }
+    return rtn;
+  }
+  
+  /**
+   * Calculates the tolerance nearness measure (tNM) of two regions. The measure is 1 when the 
+   * regions are indistinguishable and approaches 0 as they become further apart.
+   * @param A
+   * @param B
+   * @param epsilon
+   * @param sub
+   * @return the tolerance nearness measure or NaN if cancelled
+   */
+  public double nearnessMeasure(
+      List<Integer> A, 
+      List<Integer> B, 
+      double epsilon, 
+      PerceptualSystemSubscriber sub) {
+    long start = startOperation();
+    try {
+      return calcNearnessMeasure(A, B, epsilon, sub);
+    }
+    finally {
+      endOperation("nearnessMeasure", start);
+    }
+  }
+  
+  private double calcNearnessMeasure(
+      List<Integer> A, 
+      List<Integer> B, 
+      double epsilon, 
+      PerceptualSystemSubscriber sub) {
+    if (sub.isCancelled()) return Double.NaN;
+    Set<Integer> setA = new HashSet<Integer>(A);
+    Set<Integer> setB = new HashSet<Integer>(B);
+    Set<Integer> union = new HashSet<Integer>(setA);
+    union.addAll(setB);
+    Map<Description, List<Integer>> descsMap = mapIndicesList(new ArrayList<Integer>(union));
+    
+    // count the members of each region with each description
+    int size = descsMap.size();
+    Description[] descs = new Description[size];
+    int[] countA = new int[size];
+    int[] countB = new int[size];
+    int[] countZ = new int[size];
+    int i = 0;
+    for (Map.Entry<Description, List<Integer>> entry : descsMap.entrySet()) {
+      descs[i] = entry.getKey();
+      for (Integer index : entry.getValue()) {
+        if (setA.contains(index)) countA[i]++;
+        if (setB.contains(index)) countB[i]++;
+      }
+      countZ[i] = entry.getValue().size();
+      i++;
+    }
+    
+    return new ToleranceSpace(descs, epsilon, mDistance)
+        .nearnessMeasure(countA, countB, countZ, sub);
+  }
+  
+  public List<Integer> objectsIndicesList() {
+    List<Integer> indices = new ArrayList<Integer>(getObjectCount());
+    for (int i = 0; i < getObjectCount(); i++) {
+      indices.add(i);
+    }
+    return indices;
+  }
+  
+  /**
+   * Gets the description of a perceptual object by applying every probe function to the object.
+   * If caching is enabled the description is read from the feature store.
+   * @param index the index of the perceptual object
+   * @return the description of the object
+   */
+  public Description getDescription(int index) {
+    if (mCache) {
+      return getFeatureStore().getDescription(index);
+    }
+    else {
+      return calcDescription(index);
+    }
+  }
+
   /**
    * Calculates the description of a perceptual object by applying every probe function to the object.
-   * @param obj the perceptual object
-   * @return a map mapping each probe function to its applied value
+   * @param index the index of the perceptual object
+   * @return the description of the object
    */
-//  private Description calcDescription(O obj) {
-//    return getDescription(mObjects[]);
-//  }
+  protected Description calcDescription(int index) {
+    double[] desc = new double[mProbeFuncs.size()];
+    for (int i = 0; i < desc.length; i++) {
+      desc[i] = calcFeature(index, i);
+    }
+    return new Description(desc);
+  }
+  
+  /**
+   * Applies a single probe function to a perceptual object.
+   * @param index the index of the perceptual object
+   * @param func the index of the probe function
+   * @return the normalised feature value
+   */
+  protected abstract double calcFeature(int index, int func);
+  
+  /**
+   * Returns true if descriptions are cached in a {@link FeatureStore}.
+   * @return
+   */
+  public boolean isCaching() {
+    return mCache;
+  }
+  
+  /**
+   * Sets whether descriptions should be cached in a {@link FeatureStore}.
+   * @param cache
+   */
+  public void setCaching(boolean cache) {
+    if (!cache) invalidateFeatures();
+    mCache = cache;
+  }
+  
+  /**
+   * Returns the feature store of the system, calculating it if needed.
+   * @return
+   */
+  public FeatureStore getFeatureStore() {
+    FeatureStore store = mFeatures;
+    if (store == null) {
+      store = mLazy ? createLazyFeatureStore() : calcFeatureStore();
+      mFeatures = store;
+    }
+    return store;
+  }
+  
+  /**
+   * Returns true if cached features are computed a chunk at a time as they are first read.
+   * @return
+   */
+  public boolean isLazy() {
+    return mLazy;
+  }
+  
+  /**
+   * Sets whether cached features are computed a chunk at a time as they are first read rather 
+   * than all at once. Only used while caching.
+   * @param lazy
+   */
+  public void setLazy(boolean lazy) {
+    if (lazy != mLazy) invalidateFeatures();
+    mLazy = lazy;
+  }
+  
+  /**
+   * Returns true if cached features are stored off the Java heap.
+   * @return
+   */
+  public boolean isDirect() {
+    return mDirect;
+  }
+  
+  /**
+   * Returns true if an off heap feature store may be read by any thread.
+   * @return
+   */
+  public boolean isShared() {
+    return mShared;
+  }
+  
+  /**
+   * Sets whether cached features are stored off the Java heap in a shared 
+   * {@link DirectFeatureStore}. Lazy stores are still kept on the heap.
+   * @param direct
+   */
+  public void setDirect(boolean direct) {
+    setDirect(direct, true);
+  }
+  
+  /**
+   * Sets whether cached features are stored off the Java heap in a {@link DirectFeatureStore}. 
+   * Lazy stores are still kept on the heap.
+   * @param direct
+   * @param shared true if any thread may read the store, false to confine it to the thread that 
+   *        calculates it so it can be freed as soon as it is discarded
+   */
+  public void setDirect(boolean direct, boolean shared) {
+    if (direct != mDirect || shared != mShared) invalidateFeatures();
+    mDirect = direct;
+    mShared = shared;
+  }
+  
+  /**
+   * Creates a feature store that applies the probe functions as values are first read.
+   * @return
+   */
+  protected FeatureStore createLazyFeatureStore() {
+    return new LazyFeatureStore(this, getObjectCount(), mProbeFuncs.size(), LAZY_CHUNK_SIZE);
+  }
+  
+  /**
+   * Creates an empty feature store to be filled by {@link #calcFeatureStore()}.
+   * @param size the number of perceptual objects
+   * @param featureCount the number of probe functions
+   * @return
+   */
+  protected FeatureStore createFeatureStore(int size, int featureCount) {
+    if (mDirect) return new DirectFeatureStore(size, featureCount, mShared);
+    return new ArrayFeatureStore(size, featureCount);
+  }
+  
+  /**
+   * Calculates the feature store by applying every probe function to every object.
+   * @return
+   */
+  protected FeatureStore calcFeatureStore() {
+    int size = getObjectCount();
+    int count = mProbeFuncs.size();
+    FeatureStore store = createFeatureStore(size, count);
+    if (mMetrics != null) mMetrics.onAllocation("features", 8L * size * count);
+    // apply one probe function at a time so each can reuse its own per system state
+    for (int j = 0; j < count; j++) {
+      long start = (mMetrics != null) ? System.nanoTime() : 0;
+      for (int i = 0; i < size; i++) {
+        store.setValue(i, j, calcFeature(i, j));
+      }
+      if (mMetrics != null) mMetrics.onProbeFunc(mProbeFuncs.get(j), size, System.nanoTime() - start);
+    }
+    return store;
+  }
+  
+  /**
+   * Returns a key identifying the objects and probe functions of the system. Two systems with the 
+   * same key have the same features.
+   * @return
+   */
+  public String getSnapshotKey() {
+    // 64 bit FNV-1a over the hash of every object
+    long hash = 0xcbf29ce484222325L;
+    int count = getObjectCount();
+    for (int i = 0; i < count; i++) {
+      O obj = getObject(i);
+      hash ^= (obj == null) ? 0 : obj.hashCode();
+      hash *= 0x100000001b3L;
+    }
+    StringBuilder key = new StringBuilder();
+    key.append(getObjectCount()).append(':').append(Long.toHexString(hash));
+    for (P func : mProbeFuncs) {
+      key.append(':').append(func.getIdentity());
+    }
+    return key.toString();
+  }
+  
+  /**
+   * Saves the features of the system to the given file, calculating them if needed.
+   * @param file
+   * @throws IOException
+   */
+  public void saveFeatures(File file) throws IOException {
+    FeatureSnapshot.write(getFeatureStore(), getSnapshotKey(), file);
+  }
+  
+  /**
+   * Loads the features of the system from a snapshot saved by {@link #saveFeatures(File)} and 
+   * enables caching. The snapshot is only used if it matches the current objects and probe 
+   * functions.
+   * @param file
+   * @return true if the features were loaded
+   * @throws IOException if the file is not a valid snapshot
+   */
+  public boolean loadFeatures(File file) throws IOException {
+    checkMutable();
+    FeatureStore store = FeatureSnapshot.read(file, getSnapshotKey());
+    if (store == null) return false;
+    mCache = true;
+    releaseFeatures();
+    mFeatures = store;
+    return true;
+  }
+  
+  /**
+   * Returns the metric the tolerance-based methods compare descriptions with.
+   * @return
+   */
+  public DistanceMetric getDistanceMetric() {
+    return mDistance;
+  }
+  
+  /**
+   * Sets the metric the tolerance-based methods compare descriptions with, by default the 
+   * unweighted {@link EuclideanMetric}. Spatial indices size their cells by the metric's reach 
+   * along each feature. Approximate matching still hashes by Euclidean distance, so its recall 
+   * drops for metrics far from it.
+   * @param metric
+   */
+  public void setDistanceMetric(DistanceMetric metric) {
+    checkMutable();
+    mDistance = metric;
+  }
+  
+  /**
+   * Returns the approximate matching used by hybridIntersection, or null if it matches exactly.
+   * @return
+   */
+  public ProjectionIndex.Settings getApproximation() {
+    return mApproximation;
+  }
+  
+  /**
+   * Sets hybridIntersection to match approximately with the given settings. Pass null to match 
+   * exactly. Neighbourhoods always match exactly, as a single query compares x against each 
+   * description once, which is less work than building an index.
+   * @param settings
+   */
+  public void setApproximation(ProjectionIndex.Settings settings) {
+    checkMutable();
+    mApproximation = settings;
+  }
+  
+  /**
+   * Returns the metrics the system reports to, or null if it is not measured.
+   * @return
+   */
+  public Metrics getMetrics() {
+    return mMetrics;
+  }
+  
+  /**
+   * Sets the metrics the system reports to. Pass null to stop measuring.
+   * @param metrics
+   */
+  public void setMetrics(Metrics metrics) {
+    mMetrics = metrics;
+  }
+  
+  // Returns the start time of an operation if the system is measured, otherwise UNMEASURED
+  protected long startOperation() {
+    Metrics metrics = mMetrics;
+    if (metrics == null) return UNMEASURED;
+    if (sOperationDepth.get()[0]++ == 0) reportCacheLookups(metrics);
+    return System.nanoTime();
+  }
+  
+  /**
+   * Reports whether the caches an operation reads from are already filled. Called once as an 
+   * operation starts rather than for every object it reads, so measuring stays cheap.
+   * @param metrics
+   */
+  protected void reportCacheLookups(Metrics metrics) {
+    if (!mCache) return;
+    if (mFeatures != null) {
+      metrics.onCacheHit(FEATURE_CACHE);
+    }
+    else {
+      metrics.onCacheMiss(FEATURE_CACHE);
+    }
+  }
+  
+  // Reports the time taken by an operation if the system is measured and it is not running 
+  // within another operation
+  protected void endOperation(String operation, long start) {
+    if (start == UNMEASURED) return;
+    long nanos = System.nanoTime() - start;
+    Metrics metrics = mMetrics;
+    if (--sOperationDepth.get()[0] == 0 && metrics != null) {
+      metrics.onOperation(operation, nanos);
+    }
+  }
+  
+  /**
+   * Discards the feature store so it will be recalculated on next use.
+   * @throws IllegalStateException if the system is frozen
+   */
+  protected void invalidateFeatures() {
+    checkMutable();
+    releaseFeatures();
+  }
+  
+  // Discards the feature store, freeing it if it is off the heap
+  private void releaseFeatures() {
+    FeatureStore store = mFeatures;
+    mFeatures = null;
+    if (store instanceof DirectFeatureStore) {
+      ((DirectFeatureStore) store).close();
+    }
+  }
+  
+  /**
+   * Frees the off heap memory held by the system. The features are recalculated if the system is 
+   * used again, so a frozen system may only be closed once every query has finished.
+   */
+  @Override
+  public synchronized void close() {
+    releaseFeatures();
+  }
+  
+  /**
+   * Recalculates the stored features of objects that have changed, leaving the rest of the store 
+   * as it is. Objects a lazy store has not computed yet are left to be computed when read.
+   * @param affected the objects to recalculate for each probe function
+   */
+  protected void refreshFeatures(Region[] affected) {
+    FeatureStore store = mFeatures;
+    if (store == null) return;
+    if (store instanceof MappedFeatureStore) {
+      // a read only store is recalculated on next use
+      mFeatures = null;
+      return;
+    }
+    LazyFeatureStore lazy = (store instanceof LazyFeatureStore) ? (LazyFeatureStore) store : null;
+    for (int j = 0; j < affected.length; j++) {
+      Region region = affected[j];
+      for (int i = region.nextIndex(0); i >= 0; i = region.nextIndex(i + 1)) {
+        if (lazy == null || lazy.isComputed(i)) {
+          store.setValue(i, j, calcFeature(i, j));
+        }
+      }
+    }
+  }
+  
+  /**
+   * Freezes the system so it can be queried from any number of threads at once without locking.
+   * Every feature is calculated up front into a fully computed store, which is then only read.
+   * Afterwards changing the objects, probe functions, caching or approximation throws an 
+   * {@link IllegalStateException}. Freezing a frozen system does nothing.
+   */
+  public synchronized void freeze() {
+    if (mFrozen) return;
+    long start = startOperation();
+    try {
+      // a lazy store would still be written as it is read, and a confined store can only be read 
+      // by one thread
+      mShared = true;
+      FeatureStore store = mFeatures;
+      if (!mCache || store == null || store instanceof LazyFeatureStore 
+          || (store instanceof DirectFeatureStore && !((DirectFeatureStore) store).isShared())) {
+        releaseFeatures();
+        mFeatures = calcFeatureStore();
+      }
+      mCache = true;
+      mLazy = false;
+      mProbeFuncs = Collections.unmodifiableList(new ArrayList<P>(mProbeFuncs));
+      // written last so any thread that sees the system frozen sees everything above
+      mFrozen = true;
+    }
+    finally {
+      endOperation("freeze", start);
+    }
+  }
+  
+  /**
+   * Returns true if the system has been frozen and can be safely queried concurrently.
+   * @return
+   */
+  public boolean isFrozen() {
+    return mFrozen;
+  }
+  
+  // Throws if the system is frozen
+  protected void checkMutable() {
+    if (mFrozen) {
+      throw new IllegalStateException("Cannot change a frozen perceptual system");
+    }
+  }
   
   private Map<Description, List<Integer>> mapIndicesList(List<Integer> l) {
     
+    long start = (mMetrics != null) ? System.nanoTime() : 0;
     Map<Description, List<Integer>> map = new HashMap<Description, List<Integer>>(l.size());
     
     for (Integer i : l) {
@@ -398,6 +1719,7 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
       }
     }
     
+    if (mMetrics != null) mMetrics.onGrouping(l.size(), map.size(), System.nanoTime() - start);
     return map;
   }
   
@@ -434,6 +1756,14 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
     return Arrays.copyOf(mObjects, mObjects.length);
   }
   
+  /**
+   * Returns the number of objects in the system.
+   * @return the number of objects in the system
+   */
+  public int getObjectCount() {
+    return mObjects.length;
+  }
+  
   /**
    * Returns the object at the given index
    * @param index
@@ -444,29 +1774,34 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
   }
   
   public void addObject(int index, O obj) {
-    // calculate description
-//    if (mCache) {
-//      mDescriptions.add(index, calcDescription(obj));
-//    }
+    invalidateFeatures();
     mObjects[index] = obj;
   }
   
+  /**
+   * Removes the object at the given index, leaving null in its place.
+   * @param index
+   * @return
+   * @throws UnsupportedOperationException if the system cannot hold null objects, as a direct 
+   * image cannot
+   */
   public O removeObject(int index) {
-    // update cache
-    if (mCache) {
-      mDescriptions.remove(index);
-    }
+    invalidateFeatures();
     return mObjects[index] = null;
   }
   
+  /**
+   * Removes every object, leaving null in their place.
+   * @throws UnsupportedOperationException if the system cannot hold null objects, as a direct 
+   * image cannot
+   */
   public void clearObjects() {
-    if (mCache) {
-      mDescriptions.clear();
-    }
+    invalidateFeatures();
     Arrays.fill(mObjects, null);
   }
   
   public void setObjects(O[] objs) {
+    invalidateFeatures();
     mObjects = Arrays.copyOf(objs, objs.length);
   }
 
@@ -483,12 +1818,7 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
    * @param func
    */
   public void addProbeFunc(P func) {
-    // update cached features
-//    if (mCache) {
-//      for (int i = 0; i < mDescriptions.size(); i++) {
-//        mDescriptions.get(i).add(func.apply(mObjects[i]));
-//      }
-//    }
+    invalidateFeatures();
     mProbeFuncs.add(func);
     //mProbeFuncCount++;
   }
@@ -499,13 +1829,7 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
    * @return true if the probe function was removed
    */
   public boolean removeProbeFunc(P func) {
-    // remove cached feature
-//    if (mCache) {
-//      int index = mProbeFuncs.indexOf(func);
-//      for (int i = 0; i < mDescriptions.size(); i++) {
-//        mDescriptions.get(i).remove(index);
-//      }
-//    }
+    invalidateFeatures();
     //mProbeFuncCount--;
     return mProbeFuncs.remove(func);
   }
@@ -515,7 +1839,7 @@ public abstract class PerceptualSystem<O, P extends ProbeFunc<O, ? extends Perce
    * @return the largest possible distance between two objects.
    */
   public double getNorm() {
-    return Math.sqrt(mProbeFuncs.size());
+    return mDistance.getNorm(mProbeFuncs.size());
   }
   
   @Override
@@ -48,4 +48,13 @@ public abstract class ProbeFunc<T, S extends PerceptualSystem<T, ?>> {
     // normalise
     return (result - MINIMUM) / (MAXIMUM - MINIMUM);
   }
+  
+  /**
+   * Returns a string identifying the values this probe function produces, used to tell whether 
+   * saved features can be reused. Probe functions with parameters should include them.
+   * @return
+   */
+  public String getIdentity() {
+    return getClass().getName() + "[" + MINIMUM + "," + MAXIMUM + "]";
+  }
 }
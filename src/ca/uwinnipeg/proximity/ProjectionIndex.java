@@ -0,0 +1,153 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * An approximate index of descriptions using locality-sensitive hashing by random projection.
+ * Each table hashes a description by projecting it onto a few random directions and cutting each 
+ * projection into buckets, so descriptions close together usually share a bucket in at least one 
+ * table. Descriptions that share no bucket with a query are never compared to it, trading recall 
+ * for speed when there are many probe functions.
+ * @author Garrett Smith
+ *
+ */
+public class ProjectionIndex {
+  
+  /**
+   * The parameters of an index. More tables raise recall, more projections per table lower the 
+   * number of candidates, and wider buckets raise both.
+   */
+  public static class Settings {
+    
+    // The number of hash tables
+    public int tables = 8;
+    
+    // The number of projections combined into each table's hash
+    public int projections = 4;
+    
+    // The width of a bucket in multiples of epsilon
+    public double width = 4;
+    
+    // Seeds the random projections so results are repeatable
+    public long seed = 0;
+    
+    public Settings() {}
+    
+    public Settings(int tables, int projections, double width) {
+      this.tables = tables;
+      this.projections = projections;
+      this.width = width;
+    }
+  }
+  
+  protected final Description[] mDescriptions;
+  protected final Settings mSettings;
+  
+  // To get a projection direction use mDirections[table][projection]
+  protected final double[][][] mDirections;
+  protected final double[][] mOffsets;
+  protected final double mWidth;
+  
+  // Maps each hash of each table to the positions of the descriptions with it
+  protected final List<Map<Long, List<Integer>>> mTables;
+  
+  // Marks the descriptions already returned by the current query
+  private final int[] mSeen;
+  private int mQuery = 0;
+  
+  /**
+   * Hashes the given descriptions.
+   * @param descs
+   * @param epsilon must be greater than 0
+   * @param settings
+   * @throws IllegalArgumentException if epsilon or the width is not greater than 0, or there is 
+   * not at least one table and one projection
+   */
+  public ProjectionIndex(Description[] descs, double epsilon, Settings settings) {
+    if (!(epsilon > 0)) {
+      throw new IllegalArgumentException("Epsilon must be greater than 0, was " + epsilon);
+    }
+    if (!(settings.width > 0) || Double.isInfinite(settings.width)) {
+      throw new IllegalArgumentException(
+          "Bucket width must be greater than 0 and finite, was " + settings.width);
+    }
+    if (settings.tables < 1 || settings.projections < 1) {
+      throw new IllegalArgumentException("An index needs at least one table and projection, had " 
+          + settings.tables + " tables and " + settings.projections + " projections");
+    }
+    mDescriptions = descs;
+    mSettings = settings;
+    mWidth = settings.width * epsilon;
+    mSeen = new int[descs.length];
+    
+    int dims = descs.length == 0 ? 0 : descs[0].getValues().length;
+    Random random = new Random(settings.seed);
+    mDirections = new double[settings.tables][settings.projections][dims];
+    mOffsets = new double[settings.tables][settings.projections];
+    for (int t = 0; t < settings.tables; t++) {
+      for (int p = 0; p < settings.projections; p++) {
+        for (int d = 0; d < dims; d++) {
+          mDirections[t][p][d] = random.nextGaussian();
+        }
+        mOffsets[t][p] = random.nextDouble() * mWidth;
+      }
+    }
+    
+    mTables = new ArrayList<Map<Long, List<Integer>>>(settings.tables);
+    for (int t = 0; t < settings.tables; t++) {
+      Map<Long, List<Integer>> table = new HashMap<Long, List<Integer>>();
+      for (int i = 0; i < descs.length; i++) {
+        Long key = hash(t, descs[i]);
+        List<Integer> bucket = table.get(key);
+        if (bucket == null) {
+          bucket = new ArrayList<Integer>();
+          table.put(key, bucket);
+        }
+        bucket.add(i);
+      }
+      mTables.add(table);
+    }
+  }
+  
+  /**
+   * Returns the positions of the descriptions sharing a bucket with the query in any table.
+   * Not safe to call from several threads at once.
+   * @param query
+   * @return
+   */
+  public List<Integer> candidates(Description query) {
+    mQuery++;
+    List<Integer> rtn = new ArrayList<Integer>();
+    for (int t = 0; t < mTables.size(); t++) {
+      List<Integer> bucket = mTables.get(t).get(hash(t, query));
+      if (bucket != null) {
+        for (Integer i : bucket) {
+          if (mSeen[i] != mQuery) {
+            mSeen[i] = mQuery;
+            rtn.add(i);
+          }
+        }
+      }
+    }
+    return rtn;
+  }
+  
+  private Long hash(int table, Description desc) {
+    double[] values = desc.getValues();
+    long key = 17;
+    for (int p = 0; p < mSettings.projections; p++) {
+      double[] direction = mDirections[table][p];
+      double dot = 0;
+      for (int d = 0; d < values.length; d++) {
+        dot += direction[d] * values[d];
+      }
+      key = key * 31 + (long) Math.floor((dot + mOffsets[table][p]) / mWidth);
+    }
+    return key;
+  }
+
+}
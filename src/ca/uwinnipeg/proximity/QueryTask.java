@@ -0,0 +1,109 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import ca.uwinnipeg.proximity.PerceptualSystem.PerceptualSystemSubscriber;
+
+/**
+ * A {@link PerceptualSystem} method running asynchronously. The task acts as the subscriber of the 
+ * method it runs so calling {@link #cancel(boolean)} stops the method at its next check.
+ * @author Garrett Smith
+ *
+ * @param <V> the result type of the method
+ */
+public class QueryTask<V> extends FutureTask<V> implements PerceptualSystemSubscriber {
+  
+  /**
+   * A call to a {@link PerceptualSystem} method.
+   * @param <V> the result type of the method
+   */
+  public interface Query<V> {
+    /**
+     * Runs the method reporting to the given subscriber.
+     * @param sub
+     * @return the result or null if cancelled
+     */
+    public V run(PerceptualSystemSubscriber sub);
+  }
+  
+  /**
+   * Listens to the progress and completion of a {@link QueryTask}.
+   */
+  public interface QueryListener {
+    /**
+     * Called from the running task with its current progress.
+     * @param progress
+     */
+    public void onProgressSet(float progress);
+    
+    /**
+     * Called once the task has completed, been cancelled or failed.
+     * @param task
+     */
+    public void onDone(QueryTask<?> task);
+  }
+  
+  // The listener to report to, may be null
+  private final QueryListener mListener;
+  
+  // The most recently reported progress
+  private volatile float mProgress = 0;
+  
+  /**
+   * Creates a task that will run the given query when executed.
+   * @param query
+   * @param listener the listener to report to, may be null
+   */
+  public QueryTask(Query<V> query, QueryListener listener) {
+    this(new Runner<V>(query), listener);
+  }
+  
+  private QueryTask(Runner<V> runner, QueryListener listener) {
+    super(runner);
+    runner.mTask = this;
+    mListener = listener;
+  }
+  
+  /**
+   * Returns the most recently reported progress of the task.
+   * @return
+   */
+  public float getProgress() {
+    return mProgress;
+  }
+
+  @Override
+  public void onProgressSet(float progress) {
+    mProgress = progress;
+    if (mListener != null) {
+      mListener.onProgressSet(progress);
+    }
+  }
+  
+  @Override
+  protected void done() {
+    if (mListener != null) {
+      mListener.onDone(this);
+    }
+  }
+  
+  /**
+   * Runs the query with the task as its subscriber.
+   */
+  private static class Runner<V> implements Callable<V> {
+    
+    private final Query<V> mQuery;
+    private QueryTask<V> mTask;
+    
+    public Runner(Query<V> query) {
+      mQuery = query;
+    }
+
+    @Override
+    public V call() throws Exception {
+      return mQuery.run(mTask);
+    }
+  }
+
+}
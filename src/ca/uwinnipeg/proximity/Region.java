@@ -0,0 +1,238 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A set of perceptual object indices stored as a bitset over every index of a system.
+ * Set operations work a word at a time and never box indices, so operations on regions covering a 
+ * whole image stay fast and small.
+ * @author Garrett Smith
+ *
+ */
+public class Region {
+  
+  // The number of objects in the system the region belongs to
+  protected final int mSize;
+  
+  // The set bits are the indices within the region
+  protected final BitSet mBits;
+  
+  /**
+   * Creates an empty region of a system with the given number of objects.
+   * @param size
+   */
+  public Region(int size) {
+    this(size, new BitSet(size));
+  }
+  
+  /**
+   * Creates a region of a system with the given number of objects containing the given indices.
+   * @param size
+   * @param indices
+   */
+  public Region(int size, List<Integer> indices) {
+    this(size);
+    for (Integer i : indices) {
+      add(i);
+    }
+  }
+  
+  /**
+   * Creates a region of a system with the given number of objects containing the given indices.
+   * @param size
+   * @param indices
+   */
+  public Region(int size, int[] indices) {
+    this(size);
+    for (int i : indices) {
+      add(i);
+    }
+  }
+  
+  protected Region(int size, BitSet bits) {
+    mSize = size;
+    mBits = bits;
+  }
+  
+  /**
+   * Creates a region containing every object of a system with the given number of objects.
+   * @param size
+   * @return
+   */
+  public static Region full(int size) {
+    BitSet bits = new BitSet(size);
+    bits.set(0, size);
+    return new Region(size, bits);
+  }
+  
+  /**
+   * Returns the number of objects in the system the region belongs to.
+   * @return
+   */
+  public int getUniverseSize() {
+    return mSize;
+  }
+  
+  /**
+   * Returns the number of objects in the region.
+   * @return
+   */
+  public int size() {
+    return mBits.cardinality();
+  }
+  
+  public boolean isEmpty() {
+    return mBits.isEmpty();
+  }
+  
+  public boolean contains(int index) {
+    return mBits.get(index);
+  }
+  
+  /**
+   * Adds the given index to the region.
+   * @param index
+   * @throws IndexOutOfBoundsException if the index is not an object of the system
+   */
+  public void add(int index) {
+    checkIndex(index);
+    mBits.set(index);
+  }
+  
+  public void remove(int index) {
+    mBits.clear(index);
+  }
+  
+  private void checkIndex(int index) {
+    if (index < 0 || index >= mSize) {
+      throw new IndexOutOfBoundsException("Index " + index + " is outside a system of " + mSize);
+    }
+  }
+  
+  /**
+   * Throws an {@link IllegalArgumentException} if the other region belongs to a system with a 
+   * different number of objects.
+   * @param other
+   */
+  public void checkUniverse(Region other) {
+    checkUniverse(other.mSize);
+  }
+  
+  /**
+   * Throws an {@link IllegalArgumentException} if the region belongs to a system with a different 
+   * number of objects than the given size.
+   * @param size
+   */
+  public void checkUniverse(int size) {
+    if (size != mSize) {
+      throw new IllegalArgumentException(
+          "Region of a system of " + mSize + " objects used with one of " + size);
+    }
+  }
+  
+  /**
+   * Returns the first index in the region at or after the given index, or -1 if there is none.
+   * Iterate the region with <code>for (int i = r.nextIndex(0); i >= 0; i = r.nextIndex(i + 1))</code>.
+   * @param from
+   * @return
+   */
+  public int nextIndex(int from) {
+    return mBits.nextSetBit(from);
+  }
+  
+  /**
+   * Returns a new region containing the objects in this region or the other.
+   * @param other
+   * @return
+   * @throws IllegalArgumentException if the regions belong to systems of different sizes
+   */
+  public Region union(Region other) {
+    checkUniverse(other);
+    BitSet bits = copyBits();
+    bits.or(other.mBits);
+    return new Region(mSize, bits);
+  }
+  
+  /**
+   * Returns a new region containing the objects in both this region and the other.
+   * @param other
+   * @return
+   * @throws IllegalArgumentException if the regions belong to systems of different sizes
+   */
+  public Region intersection(Region other) {
+    checkUniverse(other);
+    BitSet bits = copyBits();
+    bits.and(other.mBits);
+    return new Region(mSize, bits);
+  }
+  
+  /**
+   * Returns a new region containing the objects in this region but not the other.
+   * @param other
+   * @return
+   * @throws IllegalArgumentException if the regions belong to systems of different sizes
+   */
+  public Region difference(Region other) {
+    checkUniverse(other);
+    BitSet bits = copyBits();
+    bits.andNot(other.mBits);
+    return new Region(mSize, bits);
+  }
+  
+  /**
+   * Returns a new region containing every object of the system not in this region.
+   * @return
+   */
+  public Region compliment() {
+    BitSet bits = copyBits();
+    bits.flip(0, mSize);
+    return new Region(mSize, bits);
+  }
+  
+  /**
+   * Returns the indices of the region in ascending order.
+   * @return
+   */
+  public int[] toArray() {
+    int[] indices = new int[mBits.cardinality()];
+    int j = 0;
+    for (int i = mBits.nextSetBit(0); i >= 0; i = mBits.nextSetBit(i + 1)) {
+      indices[j++] = i;
+    }
+    return indices;
+  }
+  
+  /**
+   * Returns the indices of the region in ascending order.
+   * @return
+   */
+  public List<Integer> toList() {
+    List<Integer> indices = new ArrayList<Integer>(mBits.cardinality());
+    for (int i = mBits.nextSetBit(0); i >= 0; i = mBits.nextSetBit(i + 1)) {
+      indices.add(i);
+    }
+    return indices;
+  }
+  
+  protected BitSet copyBits() {
+    return (BitSet) mBits.clone();
+  }
+  
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof Region))
+      return false;
+    Region other = (Region) obj;
+    return mSize == other.mSize && mBits.equals(other.mBits);
+  }
+  
+  @Override
+  public int hashCode() {
+    return 31 * mSize + mBits.hashCode();
+  }
+
+}
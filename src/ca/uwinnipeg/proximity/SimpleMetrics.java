@@ -0,0 +1,172 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link Metrics} that keeps running totals in memory.
+ * Call {@link #toString()} for a readable report.
+ * @author Garrett Smith
+ *
+ */
+public class SimpleMetrics implements Metrics {
+  
+  // Totals keyed by name
+  protected final Map<String, Stat> mOperations = new TreeMap<String, Stat>();
+  protected final Map<String, Stat> mProbeFuncs = new TreeMap<String, Stat>();
+  protected final Map<String, Stat> mComparisons = new TreeMap<String, Stat>();
+  protected final Map<String, Stat> mAllocations = new TreeMap<String, Stat>();
+  protected final Map<String, long[]> mCaches = new TreeMap<String, long[]>();
+  protected final Map<String, Stat> mProbeFuncObjects = new TreeMap<String, Stat>();
+  protected final Stat mGroupingObjects = new Stat();
+  protected final Stat mGroupingDistinct = new Stat();
+  protected final Stat mGroupingTime = new Stat();
+  
+  /**
+   * A count, sum and maximum of a measurement.
+   */
+  public static class Stat {
+    public long count = 0;
+    public long total = 0;
+    public long max = 0;
+    
+    protected void add(long value) {
+      count++;
+      total += value;
+      max = Math.max(max, value);
+    }
+    
+    @Override
+    public String toString() {
+      return "count=" + count + " total=" + total + " max=" + max;
+    }
+  }
+
+  @Override
+  public synchronized void onOperation(String operation, long nanos) {
+    stat(mOperations, operation).add(nanos);
+  }
+
+  @Override
+  public synchronized void onProbeFunc(ProbeFunc<?, ?> func, int objects, long nanos) {
+    String name = func.toString();
+    stat(mProbeFuncs, name).add(nanos);
+    stat(mProbeFuncObjects, name).add(objects);
+  }
+
+  @Override
+  public synchronized void onCacheHit(String cache) {
+    cache(cache)[0]++;
+  }
+
+  @Override
+  public synchronized void onCacheMiss(String cache) {
+    cache(cache)[1]++;
+  }
+
+  @Override
+  public synchronized void onGrouping(int objects, int distinct, long nanos) {
+    mGroupingObjects.add(objects);
+    mGroupingDistinct.add(distinct);
+    mGroupingTime.add(nanos);
+  }
+
+  @Override
+  public synchronized void onComparisons(String operation, long comparisons) {
+    stat(mComparisons, operation).add(comparisons);
+  }
+
+  @Override
+  public synchronized void onAllocation(String structure, long bytes) {
+    stat(mAllocations, structure).add(bytes);
+  }
+  
+  /**
+   * Returns the timings of the given operation in nanoseconds, or null if it has not run.
+   * @param operation
+   * @return
+   */
+  public synchronized Stat getOperation(String operation) {
+    return mOperations.get(operation);
+  }
+  
+  /**
+   * Returns the timings of grouping objects by description in nanoseconds.
+   * @return
+   */
+  public synchronized Stat getGrouping() {
+    return mGroupingTime;
+  }
+  
+  /**
+   * Returns the fraction of lookups of the given cache that were hits.
+   * @param cache
+   * @return
+   */
+  public synchronized double getHitRate(String cache) {
+    long[] counts = mCaches.get(cache);
+    if (counts == null || counts[0] + counts[1] == 0) return 0;
+    return counts[0] / (double) (counts[0] + counts[1]);
+  }
+  
+  /**
+   * Clears every total.
+   */
+  public synchronized void reset() {
+    mOperations.clear();
+    mProbeFuncs.clear();
+    mComparisons.clear();
+    mAllocations.clear();
+    mCaches.clear();
+    mProbeFuncObjects.clear();
+    mGroupingObjects.count = mGroupingObjects.total = mGroupingObjects.max = 0;
+    mGroupingDistinct.count = mGroupingDistinct.total = mGroupingDistinct.max = 0;
+    mGroupingTime.count = mGroupingTime.total = mGroupingTime.max = 0;
+  }
+  
+  private Stat stat(Map<String, Stat> map, String key) {
+    Stat stat = map.get(key);
+    if (stat == null) {
+      stat = new Stat();
+      map.put(key, stat);
+    }
+    return stat;
+  }
+  
+  private long[] cache(String key) {
+    long[] counts = mCaches.get(key);
+    if (counts == null) {
+      counts = new long[2];
+      mCaches.put(key, counts);
+    }
+    return counts;
+  }
+  
+  @Override
+  public synchronized String toString() {
+    StringBuilder sb = new StringBuilder();
+    append(sb, "operation ns", mOperations);
+    append(sb, "probe function ns", mProbeFuncs);
+    append(sb, "probe function objects", mProbeFuncObjects);
+    append(sb, "comparisons", mComparisons);
+    append(sb, "allocation bytes", mAllocations);
+    for (Map.Entry<String, long[]> entry : mCaches.entrySet()) {
+      long[] counts = entry.getValue();
+      sb.append("cache ").append(entry.getKey())
+        .append(": hits=").append(counts[0])
+        .append(" misses=").append(counts[1]).append('\n');
+    }
+    sb.append("grouped objects: ").append(mGroupingObjects).append('\n');
+    sb.append("distinct descriptions: ").append(mGroupingDistinct).append('\n');
+    sb.append("grouping ns: ").append(mGroupingTime).append('\n');
+    return sb.toString();
+  }
+  
+  private void append(StringBuilder sb, String title, Map<String, Stat> map) {
+    for (Map.Entry<String, Stat> entry : map.entrySet()) {
+      sb.append(title).append(' ').append(entry.getKey())
+        .append(": ").append(entry.getValue()).append('\n');
+    }
+  }
+
+}
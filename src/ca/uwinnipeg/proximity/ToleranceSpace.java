@@ -0,0 +1,306 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uwinnipeg.proximity.PerceptualSystem.PerceptualSystemSubscriber;
+
+/**
+ * The tolerance relation over a set of distinct descriptions. Two descriptions are tolerant when 
+ * they are within epsilon of each other.
+ * Objects with the same description always belong to the same tolerance classes so all work is
+ * done on distinct descriptions rather than on objects.
+ * @author Garrett Smith
+ *
+ */
+public class ToleranceSpace {
+  
+  // The distinct descriptions
+  protected final Description[] mDescriptions;
+  
+  protected final double mEpsilon;
+  
+  // The metric descriptions are compared with
+  protected final DistanceMetric mMetric;
+  
+  // The descriptions tolerant to each description, not including itself
+  protected BitSet[] mNeighbours = null;
+  
+  /**
+   * Creates the tolerance space of the given distinct descriptions.
+   * @param descs the distinct descriptions
+   * @param epsilon
+   */
+  public ToleranceSpace(Description[] descs, double epsilon) {
+    this(descs, epsilon, new EuclideanMetric());
+  }
+  
+  /**
+   * Creates the tolerance space of the given distinct descriptions under the given metric.
+   * @param descs the distinct descriptions
+   * @param epsilon
+   * @param metric
+   */
+  public ToleranceSpace(Description[] descs, double epsilon, DistanceMetric metric) {
+    mDescriptions = descs;
+    mEpsilon = epsilon;
+    mMetric = metric;
+  }
+  
+  /**
+   * Returns the number of distinct descriptions.
+   * @return
+   */
+  public int size() {
+    return mDescriptions.length;
+  }
+  
+  /**
+   * Returns the description at the given position.
+   * @param i
+   * @return
+   */
+  public Description getDescription(int i) {
+    return mDescriptions[i];
+  }
+  
+  public double getEpsilon() {
+    return mEpsilon;
+  }
+  
+  /**
+   * Returns the maximal tolerance classes of the space. Each class is a set of positions of 
+   * descriptions in the space.
+   * @param sub
+   * @return the maximal tolerance classes or null if cancelled
+   */
+  public List<BitSet> toleranceClasses(PerceptualSystemSubscriber sub) {
+    List<BitSet> classes = new ArrayList<BitSet>();
+    int size = mDescriptions.length;
+    
+    // with no tolerance every description is a class of its own
+    if (mEpsilon == 0) {
+      for (int i = 0; i < size; i++) {
+        BitSet c = new BitSet(size);
+        c.set(i);
+        classes.add(c);
+      }
+      return classes;
+    }
+    
+    if (!calcNeighbours(sub)) return null;
+    
+    // the maximal classes are the maximal cliques of the tolerance graph, found by Bron-Kerbosch
+    // with pivoting, started from each description in turn
+    BitSet p = new BitSet(size);
+    p.set(0, size);
+    BitSet x = new BitSet(size);
+    BitSet r = new BitSet(size);
+    for (int v = 0; v < size; v++) {
+      if (sub.isCancelled()) return null;
+      
+      BitSet newP = (BitSet) p.clone();
+      newP.and(mNeighbours[v]);
+      BitSet newX = (BitSet) x.clone();
+      newX.and(mNeighbours[v]);
+      
+      r.set(v);
+      if (!expand(r, newP, newX, classes, sub)) return null;
+      r.clear(v);
+      
+      p.clear(v);
+      x.set(v);
+      
+      sub.onProgressSet(0.5f + 0.5f * (v / (float) size));
+    }
+    return classes;
+  }
+  
+  private boolean expand(BitSet r, BitSet p, BitSet x, List<BitSet> classes, 
+      PerceptualSystemSubscriber sub) {
+    if (p.isEmpty()) {
+      if (x.isEmpty()) {
+        classes.add((BitSet) r.clone());
+      }
+      return true;
+    }
+    
+    if (sub.isCancelled()) return false;
+    
+    // pivot on the description with the most neighbours among the candidates
+    int pivot = -1;
+    int best = -1;
+    for (int u = p.nextSetBit(0); u >= 0; u = p.nextSetBit(u + 1)) {
+      int count = intersectionSize(p, mNeighbours[u]);
+      if (count > best) {
+        best = count;
+        pivot = u;
+      }
+    }
+    for (int u = x.nextSetBit(0); u >= 0; u = x.nextSetBit(u + 1)) {
+      int count = intersectionSize(p, mNeighbours[u]);
+      if (count > best) {
+        best = count;
+        pivot = u;
+      }
+    }
+    
+    BitSet candidates = (BitSet) p.clone();
+    candidates.andNot(mNeighbours[pivot]);
+    
+    for (int v = candidates.nextSetBit(0); v >= 0; v = candidates.nextSetBit(v + 1)) {
+      BitSet newP = (BitSet) p.clone();
+      newP.and(mNeighbours[v]);
+      BitSet newX = (BitSet) x.clone();
+      newX.and(mNeighbours[v]);
+      
+      r.set(v);
+      if (!expand(r, newP, newX, classes, sub)) return false;
+      r.clear(v);
+      
+      p.clear(v);
+      x.set(v);
+    }
+    return true;
+  }
+  
+  private static int intersectionSize(BitSet a, BitSet b) {
+    BitSet tmp = (BitSet) a.clone();
+    tmp.and(b);
+    return tmp.cardinality();
+  }
+  
+  // Finds the tolerant descriptions of every description
+  private boolean calcNeighbours(PerceptualSystemSubscriber sub) {
+    if (mNeighbours != null) return true;
+    
+    int size = mDescriptions.length;
+    BitSet[] neighbours = new BitSet[size];
+    for (int i = 0; i < size; i++) {
+      neighbours[i] = new BitSet(size);
+    }
+    
+    for (int i = 0; i < size; i++) {
+      if (sub.isCancelled()) return false;
+      
+      Description descI = mDescriptions[i];
+      for (int j = i + 1; j < size; j++) {
+        if (mMetric.isNear(descI, mDescriptions[j], mEpsilon)) {
+          neighbours[i].set(j);
+          neighbours[j].set(i);
+        }
+      }
+      
+      sub.onProgressSet(0.5f * (i / (float) size));
+    }
+    mNeighbours = neighbours;
+    return true;
+  }
+  
+  /**
+   * Calculates the tolerance nearness measure of two sets of objects. The measure is 1 when every 
+   * tolerance class holds as many objects from one set as from the other and approaches 0 as the 
+   * sets become further apart.
+   * @param countX the number of objects of the first set with each description of the space
+   * @param countY the number of objects of the second set with each description of the space
+   * @param countZ the number of objects of the union with each description of the space
+   * @param sub
+   * @return the tolerance nearness measure or NaN if cancelled
+   */
+  public double nearnessMeasure(int[] countX, int[] countY, int[] countZ,
+      PerceptualSystemSubscriber sub) {
+    List<BitSet> classes = toleranceClasses(sub);
+    if (classes == null) return Double.NaN;
+    
+    double weighted = 0;
+    double total = 0;
+    for (BitSet c : classes) {
+      int x = 0, y = 0, z = 0;
+      for (int i = c.nextSetBit(0); i >= 0; i = c.nextSetBit(i + 1)) {
+        x += countX[i];
+        y += countY[i];
+        z += countZ[i];
+      }
+      total += z;
+      if (x != 0 && y != 0) {
+        weighted += z * ((double) Math.min(x, y) / Math.max(x, y));
+      }
+    }
+    return total == 0 ? 0 : weighted / total;
+  }
+  
+  /**
+   * Calculates the tolerance nearness measure of two indexed regions, possibly of different 
+   * systems using the same probe functions. The regions are treated as disjoint.
+   * @param X
+   * @param Y
+   * @param epsilon
+   * @param sub
+   * @return the tolerance nearness measure or NaN if cancelled
+   */
+  public static double nearnessMeasure(
+      DescriptionIndex X, 
+      DescriptionIndex Y, 
+      double epsilon, 
+      PerceptualSystemSubscriber sub) {
+    return nearnessMeasure(X, Y, epsilon, new EuclideanMetric(), sub);
+  }
+  
+  /**
+   * Calculates the tolerance nearness measure of two indices under the given metric.
+   * @param X
+   * @param Y
+   * @param epsilon
+   * @param metric
+   * @param sub
+   * @return the tolerance nearness measure or NaN if cancelled
+   */
+  public static double nearnessMeasure(
+      DescriptionIndex X, 
+      DescriptionIndex Y, 
+      double epsilon, 
+      DistanceMetric metric,
+      PerceptualSystemSubscriber sub) {
+    
+    if (X.getFeatureCount() != Y.getFeatureCount()) {
+      throw new IllegalArgumentException(
+          "Indices use " + X.getFeatureCount() + " and " + Y.getFeatureCount() + 
+          " probe functions");
+    }
+    
+    // give every distinct description of the union a position
+    Map<Description, Integer> positions = new HashMap<Description, Integer>();
+    List<Description> descs = new ArrayList<Description>();
+    for (Description d : X.getDescriptions()) {
+      positions.put(d, descs.size());
+      descs.add(d);
+    }
+    for (Description d : Y.getDescriptions()) {
+      if (!positions.containsKey(d)) {
+        positions.put(d, descs.size());
+        descs.add(d);
+      }
+    }
+    
+    int size = descs.size();
+    int[] countX = new int[size];
+    int[] countY = new int[size];
+    int[] countZ = new int[size];
+    for (Description d : X.getDescriptions()) {
+      countX[positions.get(d)] = X.getCount(d);
+    }
+    for (Description d : Y.getDescriptions()) {
+      countY[positions.get(d)] = Y.getCount(d);
+    }
+    for (int i = 0; i < size; i++) {
+      countZ[i] = countX[i] + countY[i];
+    }
+    
+    ToleranceSpace space = new ToleranceSpace(descs.toArray(new Description[size]), epsilon, metric);
+    return space.nearnessMeasure(countX, countY, countZ, sub);
+  }
+
+}
@@ -5,7 +5,7 @@ public class AlphaFunc extends ColorFunc {
 
   @Override
   protected double map(int index, Image system) {
-    return (system.getObject(index) >> 24) & 0xFF;
+    return (system.getPixel(index) >> 24) & 0xFF;
   }
   
   @Override
@@ -0,0 +1,223 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ca.uwinnipeg.proximity.FeatureStore;
+
+/**
+ * Featurises a stream of images with the same probe functions on a fixed pool of worker threads.
+ * At most a bounded number of images are queued, running or waiting to be taken at once; 
+ * {@link #submit(Object, int[], int, int)} blocks until there is room, so a fast producer cannot 
+ * outrun the workers or a slow consumer.
+ * Each result is an {@link Image} with its feature store already calculated and caching enabled.
+ * @author Garrett Smith
+ *
+ */
+public class BatchFeaturizer {
+  
+  /**
+   * A featurised image and the statistics of its featurisation.
+   */
+  public static class Result {
+    
+    // The tag given when the image was submitted
+    public final Object tag;
+    
+    // The featurised image, null if featurisation failed
+    public final Image image;
+    
+    // The reason featurisation failed, null if it succeeded
+    public final Throwable error;
+    
+    // The time spent waiting for a worker
+    public final long queuedNanos;
+    
+    // The time spent featurising
+    public final long featureNanos;
+    
+    protected Result(Object tag, Image image, Throwable error, long queuedNanos, long featureNanos) {
+      this.tag = tag;
+      this.image = image;
+      this.error = error;
+      this.queuedNanos = queuedNanos;
+      this.featureNanos = featureNanos;
+    }
+    
+    /**
+     * Returns the features of the image, null if featurisation failed.
+     * @return
+     */
+    public FeatureStore getFeatures() {
+      return image == null ? null : image.getFeatureStore();
+    }
+    
+    /**
+     * Returns the number of pixels featurised per second.
+     * @return
+     */
+    public double getPixelsPerSecond() {
+      if (image == null || featureNanos == 0) return 0;
+      return image.getSize() * 1e9 / featureNanos;
+    }
+  }
+  
+  // The probe functions applied to every image
+  protected final List<ImageFunc> mProbeFuncs;
+  
+  protected final ExecutorService mExecutor;
+  
+  // Limits the images that have been submitted but not taken
+  protected final Semaphore mPermits;
+  
+  // Completed results waiting to be taken
+  protected final BlockingQueue<Result> mResults = new LinkedBlockingQueue<Result>();
+  
+  // Totals over every completed image
+  private long mImages = 0;
+  private long mPixels = 0;
+  private long mFeatureNanos = 0;
+  
+  /**
+   * Creates a featurizer.
+   * @param funcs the probe functions to apply, they must be safe to apply from several threads
+   * @param threads the number of worker threads
+   * @param capacity the number of images that may be waiting for a worker
+   */
+  public BatchFeaturizer(List<ImageFunc> funcs, int threads, int capacity) {
+    mProbeFuncs = new ArrayList<ImageFunc>(funcs);
+    mPermits = new Semaphore(threads + capacity);
+    mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+        new ArrayBlockingQueue<Runnable>(threads + capacity));
+  }
+  
+  /**
+   * Queues an image to be featurised, waiting while the featurizer is full.
+   * @param tag identifies the image in its result
+   * @param pixels the ARGB pixels, must not be modified until the result is taken
+   * @param width
+   * @param height
+   * @throws InterruptedException
+   */
+  public void submit(final Object tag, final int[] pixels, final int width, final int height) 
+      throws InterruptedException {
+    mPermits.acquire();
+    final long queued = System.nanoTime();
+    try {
+      mExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          long start = System.nanoTime();
+          Image image = null;
+          Throwable error = null;
+          try {
+            image = featurise(pixels, width, height);
+          }
+          catch (Throwable t) {
+            error = t;
+          }
+          long end = System.nanoTime();
+          complete(new Result(tag, image, error, start - queued, end - start));
+        }
+      });
+    }
+    catch (RuntimeException e) {
+      mPermits.release();
+      throw e;
+    }
+  }
+  
+  /**
+   * Returns the next completed result, waiting if there is none.
+   * @return
+   * @throws InterruptedException
+   */
+  public Result take() throws InterruptedException {
+    Result result = mResults.take();
+    mPermits.release();
+    return result;
+  }
+  
+  /**
+   * Returns the next completed result or null if there is none.
+   * @return
+   */
+  public Result poll() {
+    Result result = mResults.poll();
+    if (result != null) mPermits.release();
+    return result;
+  }
+  
+  /**
+   * Stops accepting images, images already submitted are still featurised.
+   */
+  public void shutdown() {
+    mExecutor.shutdown();
+  }
+  
+  /**
+   * Waits for every submitted image to be featurised after {@link #shutdown()}.
+   * @param timeout
+   * @param unit
+   * @return true if every image was featurised
+   * @throws InterruptedException
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return mExecutor.awaitTermination(timeout, unit);
+  }
+  
+  /**
+   * Returns the number of images featurised so far.
+   * @return
+   */
+  public synchronized long getImageCount() {
+    return mImages;
+  }
+  
+  /**
+   * Returns the number of pixels featurised per second of worker time so far.
+   * @return
+   */
+  public synchronized double getPixelsPerSecond() {
+    return mFeatureNanos == 0 ? 0 : mPixels * 1e9 / mFeatureNanos;
+  }
+  
+  /**
+   * Creates an image and calculates its feature store.
+   * @param pixels
+   * @param width
+   * @param height
+   * @return
+   */
+  protected Image featurise(int[] pixels, int width, int height) {
+    Image image = new Image(pixels, width, height);
+    for (ImageFunc func : mProbeFuncs) {
+      image.addProbeFunc(func);
+    }
+    image.setCaching(true);
+    image.getFeatureStore();
+    return image;
+  }
+  
+  private void complete(Result result) {
+    if (result.image != null) {
+      synchronized (this) {
+        mImages++;
+        mPixels += result.image.getSize();
+        mFeatureNanos += result.featureNanos;
+      }
+    }
+    mResults.add(result);
+  }
+
+}
@@ -5,7 +5,7 @@ public class BlueFunc extends ColorFunc {
 
   @Override
   protected double map(int index, Image system) {
-    return system.getObject(index) & 0xFF;
+    return system.getPixel(index) & 0xFF;
   }
   
   @Override
@@ -0,0 +1,31 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+/**
+ * The contrast of the grey level co-occurrence matrix, the mean squared difference of grey levels between pixel pairs.
+ * @author Garrett Smith
+ *
+ */
+public class ContrastFunc extends GlcmFunc {
+
+  public ContrastFunc() {
+    this(GlcmConfig.DEFAULT);
+  }
+  
+  public ContrastFunc(GlcmConfig config) {
+    super(config, 0, (config.getLevels() - 1) * (config.getLevels() - 1));
+  }
+  
+  @Override
+  protected int getFeature() {
+    return GlcmTexture.CONTRAST;
+  }
+  
+  @Override
+  public String toString() {
+    return "Contrast";
+  }
+
+}
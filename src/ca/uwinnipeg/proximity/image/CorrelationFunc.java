@@ -0,0 +1,31 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+/**
+ * The correlation of the grey levels of pixel pairs within the grey level co-occurrence matrix.
+ * @author Garrett Smith
+ *
+ */
+public class CorrelationFunc extends GlcmFunc {
+
+  public CorrelationFunc() {
+    this(GlcmConfig.DEFAULT);
+  }
+  
+  public CorrelationFunc(GlcmConfig config) {
+    super(config, -1, 1);
+  }
+  
+  @Override
+  protected int getFeature() {
+    return GlcmTexture.CORRELATION;
+  }
+  
+  @Override
+  public String toString() {
+    return "Correlation";
+  }
+
+}
@@ -19,7 +19,7 @@ public class DifferentialExcitationFunc extends ImageFunc {
   @Override
   protected double map(int index, Image image) {
     int sum = 0;
-    double pixel = PerceptualGrayScaleFunc.grayscale(image.getObject(index));
+    double pixel = PerceptualGrayScaleFunc.grayscale(image.getPixel(index));
     int size = 0;
     
     int halfWindow = WINDOW_SIZE / 2;
@@ -51,6 +51,12 @@ public class DifferentialExcitationFunc extends ImageFunc {
     }
   }
   
+  @Override
+  public int[] getAffectedArea(Image image, int[] area) {
+    int halfWindow = WINDOW_SIZE / 2;
+    return grow(image, area, halfWindow, halfWindow);
+  }
+  
   @Override
   public String toString() {
     return "Differential Excitation";
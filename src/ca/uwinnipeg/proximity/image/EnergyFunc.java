@@ -0,0 +1,31 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+/**
+ * The energy (angular second moment) of the grey level co-occurrence matrix, close to 1 when few grey level pairs occur.
+ * @author Garrett Smith
+ *
+ */
+public class EnergyFunc extends GlcmFunc {
+
+  public EnergyFunc() {
+    this(GlcmConfig.DEFAULT);
+  }
+  
+  public EnergyFunc(GlcmConfig config) {
+    super(config, 0, 1);
+  }
+  
+  @Override
+  protected int getFeature() {
+    return GlcmTexture.ENERGY;
+  }
+  
+  @Override
+  public String toString() {
+    return "Energy";
+  }
+
+}
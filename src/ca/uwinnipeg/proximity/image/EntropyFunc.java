@@ -0,0 +1,31 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+/**
+ * The entropy of the grey level co-occurrence matrix, high when many grey level pairs are equally likely.
+ * @author Garrett Smith
+ *
+ */
+public class EntropyFunc extends GlcmFunc {
+
+  public EntropyFunc() {
+    this(GlcmConfig.DEFAULT);
+  }
+  
+  public EntropyFunc(GlcmConfig config) {
+    super(config, 0, 2 * Math.log(config.getLevels()));
+  }
+  
+  @Override
+  protected int getFeature() {
+    return GlcmTexture.ENTROPY;
+  }
+  
+  @Override
+  public String toString() {
+    return "Entropy";
+  }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+import java.util.Arrays;
+
+/**
+ * The parameters of a grey level co-occurrence matrix (GLCM) texture calculation.
+ * Pixels are converted to perceptual grayscale and quantised to the given number of levels. Each 
+ * matrix counts the pairs of pixels within a square window that are separated by one of the 
+ * displacements, every vector multiplied by every scalar.
+ * Windows are either non-overlapping tiles shared by every pixel within them, or a window centred 
+ * on every pixel.
+ * @author Garrett Smith
+ *
+ */
+public class GlcmConfig {
+  
+  /**
+   * 64 levels, 5x5 tiles, distances 1 to 4 at 0, 45, 90 and 135 degrees.
+   */
+  public static final GlcmConfig DEFAULT = new GlcmConfig(
+      64, 5, new int[] {1, 2, 3, 4}, new int[][] {{1, 0}, {1, 1}, {0, 1}, {-1, 1}}, false);
+  
+  protected final int mLevels;
+  protected final int mWindowSize;
+  protected final int[] mScalars;
+  protected final int[][] mVectors;
+  protected final boolean mOverlapping;
+  
+  // Every vector multiplied by every scalar
+  protected final int[][] mDisplacements;
+  
+  // Calculated once as configurations are looked up for every pixel
+  private final int mHashCode;
+  
+  /**
+   * Creates a configuration.
+   * @param levels the number of grey levels, at least 2 as features are normalised by the range
+   * @param windowSize the width and height of a window
+   * @param scalars the distances between pixels
+   * @param vectors the directions between pixels as {x, y}
+   * @param overlapping true for a window centred on every pixel, false for tiles
+   */
+  public GlcmConfig(int levels, int windowSize, int[] scalars, int[][] vectors, 
+      boolean overlapping) {
+    if (levels < 2 || levels > 256) {
+      throw new IllegalArgumentException("Levels must be between 2 and 256: " + levels);
+    }
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+    }
+    mLevels = levels;
+    mWindowSize = windowSize;
+    mScalars = scalars.clone();
+    mVectors = new int[vectors.length][];
+    for (int i = 0; i < vectors.length; i++) {
+      mVectors[i] = vectors[i].clone();
+    }
+    mOverlapping = overlapping;
+    
+    mDisplacements = new int[mVectors.length * mScalars.length][];
+    int d = 0;
+    for (int[] vector : mVectors) {
+      for (int scalar : mScalars) {
+        mDisplacements[d++] = new int[] {vector[0] * scalar, vector[1] * scalar};
+      }
+    }
+    mHashCode = calcHashCode();
+  }
+  
+  /**
+   * Returns a copy of this configuration with the given window mode.
+   * @param overlapping
+   * @return
+   */
+  public GlcmConfig withOverlapping(boolean overlapping) {
+    return new GlcmConfig(mLevels, mWindowSize, mScalars, mVectors, overlapping);
+  }
+  
+  public int getLevels() {
+    return mLevels;
+  }
+  
+  /**
+   * Returns the grey level of a grayscale value, every level spanning an equal share of [0,255].
+   * @param grayscale
+   * @return a level in [0, levels)
+   */
+  public int quantise(int grayscale) {
+    return grayscale * mLevels >> 8;
+  }
+  
+  public int getWindowSize() {
+    return mWindowSize;
+  }
+  
+  public boolean isOverlapping() {
+    return mOverlapping;
+  }
+  
+  /**
+   * Returns every displacement between pixel pairs as {x, y}.
+   * @return
+   */
+  public int[][] getDisplacements() {
+    return mDisplacements;
+  }
+  
+  /**
+   * Returns the area of pixels whose features may change when the pixels within the given area 
+   * change, which is every tile the area touches or every window that overlaps it.
+   * @param area {left, top, right, bottom} with right and bottom exclusive
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return
+   */
+  public int[] getAffectedArea(int[] area, int width, int height) {
+    int size = mWindowSize;
+    if (mOverlapping) {
+      // the window of x spans [x - half, x - half + size)
+      int half = size / 2;
+      int before = size - half - 1;
+      return new int[] {
+          Math.max(area[0] - before, 0),
+          Math.max(area[1] - before, 0),
+          Math.min(area[2] + half, width),
+          Math.min(area[3] + half, height)};
+    }
+    else {
+      return new int[] {
+          area[0] / size * size,
+          area[1] / size * size,
+          Math.min((area[2] + size - 1) / size * size, width),
+          Math.min((area[3] + size - 1) / size * size, height)};
+    }
+  }
+  
+  @Override
+  public int hashCode() {
+    return mHashCode;
+  }
+  
+  private int calcHashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + mLevels;
+    result = prime * result + mWindowSize;
+    result = prime * result + Arrays.hashCode(mScalars);
+    result = prime * result + Arrays.deepHashCode(mVectors);
+    result = prime * result + (mOverlapping ? 1231 : 1237);
+    return result;
+  }
+  
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    GlcmConfig other = (GlcmConfig) obj;
+    return mHashCode == other.mHashCode &&
+        mLevels == other.mLevels &&
+        mWindowSize == other.mWindowSize &&
+        mOverlapping == other.mOverlapping &&
+        Arrays.equals(mScalars, other.mScalars) &&
+        Arrays.deepEquals(mVectors, other.mVectors);
+  }
+  
+  @Override
+  public String toString() {
+    return "levels=" + mLevels + 
+        " window=" + mWindowSize + 
+        " scalars=" + Arrays.toString(mScalars) + 
+        " vectors=" + Arrays.deepToString(mVectors) + 
+        " overlapping=" + mOverlapping;
+  }
+
+}
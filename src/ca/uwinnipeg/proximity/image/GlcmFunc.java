@@ -0,0 +1,46 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+/**
+ * A Haralick texture feature of the grey level co-occurrence matrix around each pixel.
+ * Every GlcmFunc of an image with the same {@link GlcmConfig} shares a single {@link GlcmTexture}.
+ * @author Garrett Smith
+ *
+ */
+public abstract class GlcmFunc extends ImageFunc {
+  
+  protected final GlcmConfig mConfig;
+  
+  public GlcmFunc(GlcmConfig config, double min, double max) {
+    super(min, max);
+    mConfig = config;
+  }
+  
+  public GlcmConfig getConfig() {
+    return mConfig;
+  }
+  
+  /**
+   * Returns which feature of the {@link GlcmTexture} this function reads.
+   * @return
+   */
+  protected abstract int getFeature();
+
+  @Override
+  protected double map(int index, Image image) {
+    return image.getTexture(mConfig).getValue(getFeature(), index);
+  }
+  
+  @Override
+  public int[] getAffectedArea(Image image, int[] area) {
+    return mConfig.getAffectedArea(area, image.getWidth(), image.getHeight());
+  }
+  
+  @Override
+  public String getIdentity() {
+    return super.getIdentity() + "[" + mConfig + "]";
+  }
+
+}
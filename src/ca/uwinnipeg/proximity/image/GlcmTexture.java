@@ -0,0 +1,295 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+import java.util.Arrays;
+
+/**
+ * The Haralick texture features of every pixel of an {@link Image} for one {@link GlcmConfig}.
+ * Every feature is calculated in a single pass from running sums over the co-occurrence counts of 
+ * the window, so the features share one calculation and overlapping windows are updated 
+ * incrementally as the window slides rather than recounted.
+ * @author Garrett Smith
+ *
+ */
+public class GlcmTexture {
+  
+  public static final int HOMOGENEITY = 0;
+  public static final int CONTRAST = 1;
+  public static final int ENERGY = 2;
+  public static final int CORRELATION = 3;
+  public static final int ENTROPY = 4;
+  
+  public static final int FEATURE_COUNT = 5;
+  
+  protected final GlcmConfig mConfig;
+  
+  // To get a value use mFeatures[feature][pixel index]
+  protected final double[][] mFeatures;
+  
+  protected GlcmTexture(GlcmConfig config, int size) {
+    mConfig = config;
+    mFeatures = new double[FEATURE_COUNT][size];
+  }
+  
+  public GlcmConfig getConfig() {
+    return mConfig;
+  }
+  
+  /**
+   * Returns the value of the given feature at the given pixel.
+   * @param feature
+   * @param index
+   * @return
+   */
+  public double getValue(int feature, int index) {
+    return mFeatures[feature][index];
+  }
+  
+  /**
+   * Returns the estimated size of the texture in bytes.
+   * @return
+   */
+  public long getByteSize() {
+    return 8L * FEATURE_COUNT * mFeatures[0].length;
+  }
+  
+  /**
+   * Calculates the texture features of every pixel of the image.
+   * @param image
+   * @param config
+   * @return
+   */
+  public static GlcmTexture calc(Image image, GlcmConfig config) {
+    GlcmTexture texture = new GlcmTexture(config, image.getSize());
+    texture.update(image, new int[][] {{0, 0, image.getWidth(), image.getHeight()}});
+    return texture;
+  }
+  
+  /**
+   * Recalculates the features of the pixels affected by a change to the pixels within the given 
+   * areas, leaving the rest as they are.
+   * @param image the changed image, the same size as the image the texture was calculated from
+   * @param areas the changed areas as {left, top, right, bottom} with right and bottom exclusive
+   */
+  public void update(Image image, int[][] areas) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int size = mConfig.getWindowSize();
+    // only the pixels within a window of an area are quantised, the rest of the buffer is unused
+    ScratchBuffers buffers = ScratchBuffers.get();
+    int[] levels = buffers.getInts(image.getSize());
+    // the window and its tables depend only on the configuration, so each thread keeps one
+    Window window = (Window) buffers.getObject(mConfig);
+    if (window == null) {
+      window = new Window(mConfig);
+      buffers.putObject(mConfig, window);
+    }
+    window.attach(levels, width);
+    
+    for (int[] area : areas) {
+      int[] affected = mConfig.getAffectedArea(area, width, height);
+      
+      // quantise the grayscale of every pixel a window of the affected area can hold
+      int right = Math.min(affected[2] + size, width);
+      int bottom = Math.min(affected[3] + size, height);
+      for (int y = Math.max(affected[1] - size, 0); y < bottom; y++) {
+        for (int x = Math.max(affected[0] - size, 0); x < right; x++) {
+          int i = y * width + x;
+          levels[i] = mConfig.quantise(PerceptualGrayScaleFunc.grayscale(image.getPixel(i)));
+        }
+      }
+      
+      if (mConfig.isOverlapping()) {
+        fillWindows(window, affected, width, height, size);
+      }
+      else {
+        fillTiles(window, affected, width, height, size);
+      }
+    }
+  }
+  
+  // Slides a window centred on each pixel of the area along each row
+  private void fillWindows(Window window, int[] area, int width, int height, int size) {
+    int half = size / 2;
+    for (int y = area[1]; y < area[3]; y++) {
+      int top = Math.max(y - half, 0);
+      int bottom = Math.min(y - half + size, height);
+      window.reset(Math.max(area[0] - half, 0), Math.min(area[0] - half + size, width), top, bottom);
+      for (int x = area[0]; x < area[2]; x++) {
+        int left = Math.max(x - half, 0);
+        int right = Math.min(x - half + size, width);
+        while (window.mRight < right) window.addColumn();
+        while (window.mLeft < left) window.removeColumn();
+        window.store(this, y * width + x);
+      }
+    }
+  }
+  
+  // Every pixel of a complete tile shares its value, the rest are left 0
+  private void fillTiles(Window window, int[] area, int width, int height, int size) {
+    int cols = Math.min((area[2] + size - 1) / size, width / size);
+    int rows = Math.min((area[3] + size - 1) / size, height / size);
+    for (int row = area[1] / size; row < rows; row++) {
+      for (int col = area[0] / size; col < cols; col++) {
+        int left = col * size;
+        int top = row * size;
+        window.reset(left, left + size, top, top + size);
+        for (int y = top; y < top + size; y++) {
+          for (int x = left; x < left + size; x++) {
+            window.store(this, y * width + x);
+          }
+        }
+      }
+    }
+  }
+  
+  /**
+   * The co-occurrence counts of a rectangular window and running sums of the features over them.
+   */
+  private static class Window {
+    
+    // The quantised levels of the image the window is sliding over
+    private int[] mLevels;
+    private int mWidth;
+    
+    private final int[][] mDisplacements;
+    
+    // The co-occurrence counts, count[reference][neighbour]
+    private final int[][] mCounts;
+    
+    // The weighted sums are kept in fixed point so they are exact, which makes every feature 
+    // depend only on the contents of the window and not the path the window took to get there
+    private static final double FIXED_POINT = 1L << 32;
+    
+    // c ln c in fixed point for every count a window can hold
+    private final long[] mCLogC;
+    
+    // 1 / (1 + |i - j|) in fixed point for every pair of levels
+    private final long[][] mWeights;
+    
+    // The bounds of the window, right and bottom exclusive
+    int mLeft, mRight, mTop, mBottom;
+    
+    // The running sums
+    private long mPairs, mContrast, mSquares, mI, mJ, mII, mJJ, mIJ, mHomogeneity, mCLogCSum;
+    
+    public Window(GlcmConfig config) {
+      mDisplacements = config.getDisplacements();
+      int l = config.getLevels();
+      mCounts = new int[l][l];
+      mWeights = new long[l][l];
+      for (int i = 0; i < l; i++) {
+        for (int j = 0; j < l; j++) {
+          mWeights[i][j] = Math.round(FIXED_POINT / (1 + Math.abs(i - j)));
+        }
+      }
+      int size = config.getWindowSize();
+      int maxCount = size * size * mDisplacements.length;
+      mCLogC = new long[maxCount + 1];
+      for (int c = 1; c <= maxCount; c++) {
+        mCLogC[c] = Math.round(c * Math.log(c) * FIXED_POINT);
+      }
+    }
+    
+    // Slides the window over the given levels from the next reset
+    public void attach(int[] levels, int width) {
+      mLevels = levels;
+      mWidth = width;
+    }
+    
+    // Empties the window and fills it with the given bounds
+    public void reset(int left, int right, int top, int bottom) {
+      for (int[] row : mCounts) {
+        Arrays.fill(row, 0);
+      }
+      mPairs = mContrast = mSquares = mI = mJ = mII = mJJ = mIJ = mHomogeneity = mCLogCSum = 0;
+      mTop = top;
+      mBottom = bottom;
+      mLeft = left;
+      mRight = left;
+      while (mRight < right) addColumn();
+    }
+    
+    // Grows the window by the column on its right
+    public void addColumn() {
+      int c = mRight;
+      mRight++;
+      updateColumn(c, 1);
+    }
+    
+    // Shrinks the window by the column on its left
+    public void removeColumn() {
+      int c = mLeft;
+      updateColumn(c, -1);
+      mLeft++;
+    }
+    
+    // Adds or removes every pair with a pixel in column c, which must be inside the window
+    private void updateColumn(int c, int delta) {
+      for (int y = mTop; y < mBottom; y++) {
+        int p = mLevels[y * mWidth + c];
+        for (int[] d : mDisplacements) {
+          // pairs with this pixel as the reference
+          int nx = c + d[0];
+          int ny = y + d[1];
+          if (contains(nx, ny)) {
+            update(p, mLevels[ny * mWidth + nx], delta);
+          }
+          // pairs with this pixel as the neighbour, unless the reference is in the column too
+          int rx = c - d[0];
+          int ry = y - d[1];
+          if (rx != c && contains(rx, ry)) {
+            update(mLevels[ry * mWidth + rx], p, delta);
+          }
+        }
+      }
+    }
+    
+    private boolean contains(int x, int y) {
+      return mLeft <= x && x < mRight && mTop <= y && y < mBottom;
+    }
+    
+    private void update(int i, int j, int delta) {
+      int c = mCounts[i][j];
+      int n = c + delta;
+      mCounts[i][j] = n;
+      mPairs += delta;
+      mHomogeneity += delta * mWeights[i][j];
+      mContrast += delta * (i - j) * (i - j);
+      mSquares += (long) n * n - (long) c * c;
+      mCLogCSum += mCLogC[n] - mCLogC[c];
+      mI += delta * i;
+      mJ += delta * j;
+      mII += delta * i * i;
+      mJJ += delta * j * j;
+      mIJ += delta * i * j;
+    }
+    
+    // Writes the features of the window as the features of the given pixel
+    public void store(GlcmTexture texture, int index) {
+      double[][] features = texture.mFeatures;
+      if (mPairs == 0) {
+        for (int f = 0; f < FEATURE_COUNT; f++) {
+          features[f][index] = 0;
+        }
+        return;
+      }
+      double n = mPairs;
+      features[HOMOGENEITY][index] = mHomogeneity / FIXED_POINT / n;
+      features[CONTRAST][index] = mContrast / n;
+      features[ENERGY][index] = mSquares / (n * n);
+      features[ENTROPY][index] = Math.log(n) - mCLogCSum / FIXED_POINT / n;
+      
+      double meanI = mI / n;
+      double meanJ = mJ / n;
+      double varI = mII / n - meanI * meanI;
+      double varJ = mJJ / n - meanJ * meanJ;
+      double cov = mIJ / n - meanI * meanJ;
+      // a window of a single grey level is perfectly correlated
+      features[CORRELATION][index] = (varI <= 0 || varJ <= 0) ? 1 : cov / Math.sqrt(varI * varJ);
+    }
+  }
+
+}
@@ -5,7 +5,7 @@ public class GreenFunc extends ColorFunc {
 
   @Override
   protected double map(int index, Image system) {
-    return (system.getObject(index) >> 8) & 0xFF;
+    return (system.getPixel(index) >> 8) & 0xFF;
   }
   
   @Override
@@ -3,8 +3,23 @@
  */
 package ca.uwinnipeg.proximity.image;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import ca.uwinnipeg.proximity.Description;
+import ca.uwinnipeg.proximity.FeatureStore;
+import ca.uwinnipeg.proximity.Metrics;
 import ca.uwinnipeg.proximity.PerceptualSystem;
+import ca.uwinnipeg.proximity.Region;
 
 /**
  * An immutable array of pixels.
@@ -16,6 +31,32 @@ public class Image extends PerceptualSystem<Integer, ImageFunc> {
   
   protected int mWidth, mHeight, mSize;
   
+  // The width and height of the tiles featurised at once when lazy
+  protected static final int TILE_SIZE = 64;
+  
+  // The fraction of the frame the dirty areas of an update may cover before the whole frame is 
+  // recalculated instead
+  protected static final float FULL_UPDATE_FRACTION = 0.5f;
+  
+  // Lazily built downsampled copies of the image, level i + 1 is 2^(i + 1) times smaller.
+  // Replaced rather than changed so it is read without locking.
+  protected volatile Image[] mLevels = NO_LEVELS;
+  
+  private static final Image[] NO_LEVELS = new Image[0];
+  
+  // The co-occurrence texture features of the image for each configuration used.
+  // Replaced rather than changed so it is read without locking.
+  protected volatile Map<GlcmConfig, GlcmTexture> mTextures = Collections.emptyMap();
+  
+  // The name of the texture cache reported to metrics
+  public static final String TEXTURE_CACHE = "cooccurrence";
+  
+  // The pixels when they are stored off the Java heap, otherwise null and the pixels are objects
+  protected IntBuffer mPixels = null;
+  
+  // Whether the image was direct when closed, so it has no pixels until set again
+  protected boolean mClosed = false;
+  
   public Image() {
     super();
   }
@@ -26,30 +67,230 @@ public class Image extends PerceptualSystem<Integer, ImageFunc> {
   }
   
   public void set(int[] pixels, int width, int height) {    
+    invalidateFeatures();
+    mClosed = false;
     this.mWidth = width;
     this.mHeight = height;
     mSize = pixels.length;
 
+    if (mDirect) {
+      if (mPixels == null || mPixels.capacity() != mSize) mPixels = allocatePixels(mSize);
+      IntBuffer dest = mPixels.duplicate();
+      dest.put(pixels);
+      return;
+    }
     mObjects = new Integer[mSize];
     for (int i = 0; i < pixels.length; i++) {
       mObjects[i] = pixels[i];
     }
   }
   
+  // Creates a buffer for the given number of pixels off the Java heap
+  private static IntBuffer allocatePixels(int size) {
+    return ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+  
+  /**
+   * Replaces the pixels with the next frame of the same size, recalculating only the features of 
+   * pixels that may have changed. The changed pixels are found by comparing the frames and are 
+   * grouped into the bounding rectangles of connected runs of changed pixels.
+   * @param pixels the new frame
+   * @param listener notified of every pixel whose description changed, may be null
+   * @return the pixels whose features were recalculated
+   */
+  public Region update(int[] pixels, DescriptionListener listener) {
+    if (pixels.length != mSize) {
+      throw new IllegalArgumentException("Frame has " + pixels.length + " pixels, not " + mSize);
+    }
+    // areas that reach the previous row and may grow into this one
+    List<int[]> open = new ArrayList<int[]>();
+    List<int[]> dirty = new ArrayList<int[]>();
+    for (int y = 0; y < mHeight; y++) {
+      int row = y * mWidth;
+      List<int[]> next = new ArrayList<int[]>();
+      int x = 0;
+      while (x < mWidth) {
+        if (pixels[row + x] != getPixel(row + x)) {
+          int start = x;
+          while (x < mWidth && pixels[row + x] != getPixel(row + x)) x++;
+          next.add(merge(new int[] {start, y, x, y + 1}, open, next));
+        }
+        else {
+          x++;
+        }
+      }
+      // areas no run of this row touched are finished
+      dirty.addAll(open);
+      open = next;
+    }
+    dirty.addAll(open);
+    return update(pixels, dirty.toArray(new int[dirty.size()][]), listener);
+  }
+  
+  // Removes the areas of both lists overlapping or touching the given area and returns their 
+  // bounding rectangle, repeating as the rectangle grows. Areas are merged as they are found so an 
+  // area that later grows wider may still overlap one finished before it.
+  private static int[] merge(int[] area, List<int[]> first, List<int[]> second) {
+    boolean grown = true;
+    while (grown) {
+      grown = absorb(area, first) | absorb(area, second);
+    }
+    return area;
+  }
+  
+  private static boolean absorb(int[] area, List<int[]> areas) {
+    boolean grown = false;
+    for (int i = areas.size() - 1; i >= 0; i--) {
+      int[] other = areas.get(i);
+      if (other[0] <= area[2] && area[0] <= other[2] && 
+          other[1] <= area[3] && area[1] <= other[3]) {
+        area[0] = Math.min(area[0], other[0]);
+        area[1] = Math.min(area[1], other[1]);
+        area[2] = Math.max(area[2], other[2]);
+        area[3] = Math.max(area[3], other[3]);
+        areas.remove(i);
+        grown = true;
+      }
+    }
+    return grown;
+  }
+  
+  /**
+   * Replaces the pixels within the dirty areas with those of the next frame, recalculating only 
+   * the features of pixels that may have changed. Pixels outside the dirty areas are assumed 
+   * unchanged and are not copied.
+   * Window based probe functions recalculate every pixel whose window touches a dirty area, and 
+   * cached co-occurrence textures are updated rather than rebuilt. If the areas cover more than 
+   * half the frame the whole frame is recalculated in one pass.
+   * @param pixels the new frame
+   * @param dirty the changed areas as {left, top, right, bottom} with right and bottom exclusive
+   * @param listener notified of every pixel whose description changed, may be null
+   * @return the pixels whose features were recalculated
+   */
+  public Region update(int[] pixels, int[][] dirty, DescriptionListener listener) {
+    checkMutable();
+    checkOpen();
+    if (pixels.length != mSize) {
+      throw new IllegalArgumentException("Frame has " + pixels.length + " pixels, not " + mSize);
+    }
+    long start = startOperation();
+    try {
+      int[][] areas = new int[dirty.length][];
+      long dirtySize = 0;
+      for (int i = 0; i < dirty.length; i++) {
+        areas[i] = new int[] {
+            Math.max(dirty[i][0], 0), 
+            Math.max(dirty[i][1], 0), 
+            Math.min(dirty[i][2], mWidth), 
+            Math.min(dirty[i][3], mHeight)};
+        dirtySize += (long) Math.max(areas[i][2] - areas[i][0], 0) * 
+            Math.max(areas[i][3] - areas[i][1], 0);
+      }
+      // once most of the frame changed one pass over all of it is cheaper than the areas
+      if (dirtySize > FULL_UPDATE_FRACTION * mSize) {
+        areas = new int[][] {{0, 0, mWidth, mHeight}};
+      }
+      
+      // find the pixels each probe function must recalculate
+      Region[] affected = new Region[mProbeFuncs.size()];
+      Region changed = new Region(mSize);
+      for (int j = 0; j < affected.length; j++) {
+        affected[j] = new Region(mSize);
+        for (int[] area : areas) {
+          int[] a = mProbeFuncs.get(j).getAffectedArea(this, area);
+          for (int y = a[1]; y < a[3]; y++) {
+            for (int x = a[0]; x < a[2]; x++) {
+              affected[j].add(y * mWidth + x);
+              changed.add(y * mWidth + x);
+            }
+          }
+        }
+      }
+      
+      // remember the descriptions of the previous frame
+      Description[] previous = null;
+      if (listener != null) {
+        previous = new Description[changed.size()];
+        int k = 0;
+        for (int i = changed.nextIndex(0); i >= 0; i = changed.nextIndex(i + 1)) {
+          previous[k++] = getDescription(i);
+        }
+      }
+      
+      for (int[] area : areas) {
+        for (int y = area[1]; y < area[3]; y++) {
+          for (int x = area[0]; x < area[2]; x++) {
+            int i = y * mWidth + x;
+            setPixel(i, pixels[i]);
+          }
+        }
+      }
+      synchronized (this) {
+        // the levels are built from the previous frame
+        mLevels = NO_LEVELS;
+        for (GlcmTexture texture : mTextures.values()) {
+          texture.update(this, areas);
+        }
+      }
+      refreshFeatures(affected);
+      
+      if (listener != null) {
+        int k = 0;
+        for (int i = changed.nextIndex(0); i >= 0; i = changed.nextIndex(i + 1)) {
+          Description desc = getDescription(i);
+          Description old = previous[k++];
+          if (!desc.equals(old)) {
+            listener.onDescriptionChanged(i, old, desc);
+          }
+        }
+      }
+      return changed;
+    }
+    finally {
+      endOperation("update", start);
+    }
+  }
+  
   public int getWidth() {
+    checkOpen();
     return mWidth;
   }
   
   public int getHeight() {
+    checkOpen();
     return mHeight;
   }
   
   public int getSize() {
+    checkOpen();
     return mSize;
   }
 
   public int getPixel(int x, int y) {
-    return mObjects[y * mWidth + x];
+    return getPixel(y * mWidth + x);
+  }
+  
+  /**
+   * Returns the pixel at the given index without boxing it.
+   * @param index
+   * @return
+   */
+  public int getPixel(int index) {
+    IntBuffer pixels = mPixels;
+    if (pixels != null) return pixels.get(index);
+    checkOpen();
+    return mObjects[index];
+  }
+  
+  // Sets the pixel at the given index without invalidating the features
+  protected void setPixel(int index, int pixel) {
+    checkOpen();
+    if (mPixels != null) {
+      mPixels.put(index, pixel);
+    }
+    else {
+      mObjects[index] = pixel;
+    }
   }
   
 
@@ -66,11 +307,25 @@ public class Image extends PerceptualSystem<Integer, ImageFunc> {
   }
   
   public int[] getPixels() {
-	  int[] pixels = new int[mSize];
-	  for (int i = 0; i < mSize; i++) {
-		  pixels[i] = mObjects[i];
-	  }
-	  return pixels;
+	  return getPixels(new int[mSize]);
+  }
+  
+  /**
+   * Copies every pixel into the given array, which must hold at least getSize() pixels.
+   * @param dest
+   * @return dest
+   */
+  public int[] getPixels(int[] dest) {
+    checkOpen();
+    if (mPixels != null) {
+      IntBuffer src = mPixels.duplicate();
+      src.get(dest, 0, mSize);
+      return dest;
+    }
+    for (int i = 0; i < mSize; i++) {
+      dest[i] = mObjects[i];
+    }
+    return dest;
   }
   
   public int[] getPixels(int left, int top, int right, int bottom) {
@@ -78,8 +333,8 @@ public class Image extends PerceptualSystem<Integer, ImageFunc> {
     int h = (bottom - top);
     int s = w * h;
     int[] pxls = new int[s];
-    for (int i = 0; i < mSize; i++) {
-      pxls[i] = mObjects[(top + (i / w)) * mWidth + (left + (i % w))];
+    for (int i = 0; i < s; i++) {
+      pxls[i] = getPixel((top + (i / w)) * mWidth + (left + (i % w)));
     }
     return pxls;
   }
@@ -95,13 +350,329 @@ public class Image extends PerceptualSystem<Integer, ImageFunc> {
     return indices;
   }
 
+  /**
+   * Returns the image downsampled by 2^level, building it if needed. Level 0 is this image.
+   * Each level has the probe functions of this image and caches its own features.
+   * Levels already built are returned without locking.
+   * @param level
+   * @return
+   */
+  public Image getLevel(int level) {
+    if (level == 0) return this;
+    Image[] levels = mLevels;
+    if (level <= levels.length) return levels[level - 1];
+    return buildLevel(level);
+  }
+  
+  // Builds the levels up to the given level
+  private synchronized Image buildLevel(int level) {
+    Image[] levels = mLevels;
+    if (level <= levels.length) return levels[level - 1];
+    int built = levels.length;
+    levels = Arrays.copyOf(levels, level);
+    for (int i = built; i < level; i++) {
+      Image prev = (i == 0) ? this : levels[i - 1];
+      Image next = prev.downsample();
+      // levels of a frozen image are shared between threads too
+      if (mFrozen) next.freeze();
+      levels[i] = next;
+    }
+    mLevels = levels;
+    return levels[level - 1];
+  }
+  
+  /**
+   * Returns a copy of the image at half the width and height, each pixel the average of a 2x2 block.
+   * @return
+   */
+  protected Image downsample() {
+    int width = (mWidth + 1) / 2;
+    int height = (mHeight + 1) / 2;
+    int[] pixels = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int a = 0, r = 0, g = 0, b = 0, count = 0;
+        for (int dy = 0; dy < 2; dy++) {
+          for (int dx = 0; dx < 2; dx++) {
+            int sx = 2 * x + dx;
+            int sy = 2 * y + dy;
+            if (sx < mWidth && sy < mHeight) {
+              int pixel = getPixel(sx, sy);
+              a += (pixel >>> 24);
+              r += (pixel >> 16) & 0xFF;
+              g += (pixel >> 8) & 0xFF;
+              b += pixel & 0xFF;
+              count++;
+            }
+          }
+        }
+        pixels[y * width + x] = 
+            ((a / count) << 24) | ((r / count) << 16) | ((g / count) << 8) | (b / count);
+      }
+    }
+    
+    Image level = new Image(pixels, width, height);
+    for (ImageFunc func : mProbeFuncs) {
+      level.addProbeFunc(func);
+    }
+    level.setCaching(true);
+    level.setDirect(mDirect, mShared);
+    level.setMetrics(mMetrics);
+    level.setDistanceMetric(mDistance);
+    return level;
+  }
+  
+  @Override
+  protected void invalidateFeatures() {
+    super.invalidateFeatures();
+    // the levels are built from the current pixels and probe functions
+    mLevels = NO_LEVELS;
+    clearTextures();
+  }
+  
+  /**
+   * Returns the co-occurrence texture features of the image for the given configuration, 
+   * calculating them the first time they are needed. Textures already calculated are returned 
+   * without locking.
+   * @param config
+   * @return
+   */
+  public GlcmTexture getTexture(GlcmConfig config) {
+    GlcmTexture texture = mTextures.get(config);
+    if (texture == null) return calcTexture(config);
+    return texture;
+  }
+  
+  @Override
+  protected void reportCacheLookups(Metrics metrics) {
+    super.reportCacheLookups(metrics);
+    // the textures are only read while the features are not cached
+    if (mCache && mFeatures != null) return;
+    Map<GlcmConfig, GlcmTexture> textures = mTextures;
+    Set<GlcmConfig> configs = new HashSet<GlcmConfig>();
+    for (ImageFunc func : mProbeFuncs) {
+      if (func instanceof GlcmFunc && configs.add(((GlcmFunc) func).getConfig())) {
+        if (textures.containsKey(((GlcmFunc) func).getConfig())) {
+          metrics.onCacheHit(TEXTURE_CACHE);
+        }
+        else {
+          metrics.onCacheMiss(TEXTURE_CACHE);
+        }
+      }
+    }
+  }
+  
+  // Calculates the texture for the given configuration unless another thread already has
+  private synchronized GlcmTexture calcTexture(GlcmConfig config) {
+    GlcmTexture texture = mTextures.get(config);
+    if (texture != null) return texture;
+    texture = GlcmTexture.calc(this, config);
+    if (mMetrics != null) mMetrics.onAllocation(TEXTURE_CACHE, texture.getByteSize());
+    Map<GlcmConfig, GlcmTexture> textures = new HashMap<GlcmConfig, GlcmTexture>(mTextures);
+    textures.put(config, texture);
+    mTextures = textures;
+    return texture;
+  }
+  
+  @Override
+  public synchronized void freeze() {
+    super.freeze();
+    // every texture value is now in the feature store
+    clearTextures();
+  }
+  
+  protected void clearTextures() {
+    mTextures = Collections.emptyMap();
+  }
+  
+  /**
+   * Sets whether the pixels and cached features are stored off the Java heap. The pixels are 
+   * moved to or from a direct buffer.
+   */
+  @Override
+  public void setDirect(boolean direct, boolean shared) {
+    checkOpen();
+    super.setDirect(direct, shared);
+    if (direct && mPixels == null) {
+      IntBuffer pixels = allocatePixels(mSize);
+      for (int i = 0; i < mSize; i++) {
+        pixels.put(i, mObjects[i]);
+      }
+      mPixels = pixels;
+      mObjects = new Integer[0];
+    }
+    else if (!direct && mPixels != null) {
+      Integer[] objects = new Integer[mSize];
+      for (int i = 0; i < mSize; i++) {
+        objects[i] = mPixels.get(i);
+      }
+      mObjects = objects;
+      mPixels = null;
+    }
+  }
+  
+  /**
+   * Frees the off heap memory held by the image and its levels. A direct image has no pixels left, 
+   * so it throws an {@link IllegalStateException} when used until it is set again.
+   */
+  @Override
+  public synchronized void close() {
+    super.close();
+    for (Image level : mLevels) {
+      level.close();
+    }
+    mLevels = NO_LEVELS;
+    clearTextures();
+    if (mPixels != null) {
+      mPixels = null;
+      mClosed = true;
+    }
+  }
+  
+  // Throws if the pixels of the image were freed
+  protected void checkOpen() {
+    if (mClosed) {
+      throw new IllegalStateException("Image is closed");
+    }
+  }
+  
+  @Override
+  public int getObjectCount() {
+    checkOpen();
+    return (mPixels != null) ? mSize : super.getObjectCount();
+  }
+  
+  @Override
+  public Integer getObject(int index) {
+    checkOpen();
+    return (mPixels != null) ? mPixels.get(index) : super.getObject(index);
+  }
+  
+  @Override
+  public Integer[] getObjects() {
+    checkOpen();
+    if (mPixels == null) return super.getObjects();
+    Integer[] objects = new Integer[mSize];
+    for (int i = 0; i < mSize; i++) {
+      objects[i] = mPixels.get(i);
+    }
+    return objects;
+  }
+  
+  @Override
+  public void addObject(int index, Integer obj) {
+    checkOpen();
+    if (mPixels == null) {
+      super.addObject(index, obj);
+      return;
+    }
+    invalidateFeatures();
+    mPixels.put(index, obj);
+  }
+  
+  @Override
+  public Integer removeObject(int index) {
+    checkOpen();
+    if (mPixels != null) {
+      throw new UnsupportedOperationException("Pixels of a direct image cannot be removed");
+    }
+    return super.removeObject(index);
+  }
+  
+  @Override
+  public void clearObjects() {
+    checkOpen();
+    if (mPixels != null) {
+      throw new UnsupportedOperationException("Pixels of a direct image cannot be removed");
+    }
+    super.clearObjects();
+  }
+  
+  @Override
+  public void setObjects(Integer[] objs) {
+    checkOpen();
+    if (mPixels == null) {
+      super.setObjects(objs);
+      return;
+    }
+    if (objs.length != mSize) {
+      throw new IllegalArgumentException("Image has " + mSize + " pixels, not " + objs.length);
+    }
+    invalidateFeatures();
+    for (int i = 0; i < mSize; i++) {
+      mPixels.put(i, objs[i]);
+    }
+  }
+  
+  /**
+   * An image is only equal to itself. The pixels move between the heap and a direct buffer as the 
+   * image is set or made direct, so they cannot identify it.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    return obj == this;
+  }
+  
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(this);
+  }
+  
+  @Override
+  protected FeatureStore createLazyFeatureStore() {
+    return new TiledFeatureStore(this, mProbeFuncs.size(), TILE_SIZE);
+  }
+  
+  @Override
+  public String getSnapshotKey() {
+    return mWidth + "x" + mHeight + ":" + super.getSnapshotKey();
+  }
+
+  /**
+   * When every probe function is an 8 bit channel of the pixel the description is determined by 
+   * the channels, so the key is the channel values packed a byte each.
+   */
   @Override
-  public Description getDescription(int index) {
-    double[] desc = new double[mProbeFuncs.size()];
-    for (int i = 0; i < desc.length; i++) {
-      desc[i] = mProbeFuncs.get(i).apply(index, this);
+  protected long[] getDescriptionKeys(List<Integer> indices) {
+    int[] shifts = getKeyShifts();
+    if (shifts == null) return null;
+    
+    long[] keys = new long[indices.size()];
+    int i = 0;
+    for (Integer index : indices) {
+      int pixel = getPixel(index);
+      long key = 0;
+      for (int shift : shifts) {
+        int value = (shift < 0) ? PerceptualGrayScaleFunc.grayscale(pixel) : (pixel >>> shift) & 0xFF;
+        key = (key << 8) | value;
+      }
+      keys[i++] = key;
+    }
+    return keys;
+  }
+  
+  // Returns the shift of the channel of each probe function, -1 for grayscale, or null if a 
+  // probe function is not a channel
+  private int[] getKeyShifts() {
+    int count = mProbeFuncs.size();
+    if (count == 0 || count > 7) return null;
+    
+    int[] shifts = new int[count];
+    for (int j = 0; j < count; j++) {
+      Class<?> type = mProbeFuncs.get(j).getClass();
+      if (type == RedFunc.class) shifts[j] = 16;
+      else if (type == GreenFunc.class) shifts[j] = 8;
+      else if (type == BlueFunc.class) shifts[j] = 0;
+      else if (type == AlphaFunc.class) shifts[j] = 24;
+      else if (type == PerceptualGrayScaleFunc.class) shifts[j] = -1;
+      else return null;
     }
-    return new Description(desc);
+    return shifts;
+  }
+
+  @Override
+  protected double calcFeature(int index, int func) {
+    return mProbeFuncs.get(func).apply(index, this);
   }
 
 }
@@ -14,5 +14,33 @@ public abstract class ImageFunc extends ProbeFunc<Integer, Image> {
   public ImageFunc(double min, double max) {
     super(min, max);
   }
+  
+  /**
+   * Returns the area of pixels whose value may change when the pixels within the given area 
+   * change. Functions of a single pixel return the area itself, functions of a window around each 
+   * pixel grow it by the window.
+   * @param image
+   * @param area {left, top, right, bottom} with right and bottom exclusive
+   * @return the affected area within the image
+   */
+  public int[] getAffectedArea(Image image, int[] area) {
+    return area;
+  }
+  
+  /**
+   * Grows an area by the given amounts, clipped to the image.
+   * @param image
+   * @param area {left, top, right, bottom}
+   * @param before how far to grow left and up
+   * @param after how far to grow right and down
+   * @return
+   */
+  protected static int[] grow(Image image, int[] area, int before, int after) {
+    return new int[] {
+        Math.max(area[0] - before, 0),
+        Math.max(area[1] - before, 0),
+        Math.min(area[2] + after, image.getWidth()),
+        Math.min(area[3] + after, image.getHeight())};
+  }
 
 }
@@ -0,0 +1,314 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uwinnipeg.proximity.Description;
+import ca.uwinnipeg.proximity.PerceptualSystem.PerceptualSystemSubscriber;
+
+/**
+ * Answers queries on an {@link Image} coarse to fine. A query is first answered on a downsampled 
+ * level of the image and the approximation is handed to the subscriber, then the query is answered 
+ * at full resolution.
+ * By default the full resolution pass considers every pixel, so the final result is the same as 
+ * querying the image directly and the pyramid only adds the early approximation. An inexact 
+ * pyramid only considers the pixels of coarse cells in the approximation and their neighbours, 
+ * which is faster but may miss objects whose block average differs from their own description.
+ * @author Garrett Smith
+ *
+ */
+public class ImagePyramid {
+  
+  /**
+   * A subscriber that is also given the coarse approximation of a result.
+   * @param <R> the result type of the query
+   */
+  public interface ProgressiveSubscriber<R> extends PerceptualSystemSubscriber {
+    /**
+     * Called with the coarse approximation before the full resolution pass starts.
+     * @param result the approximate result in full resolution indices
+     */
+    public void onApproximation(R result);
+  }
+  
+  // How much of the progress is the coarse pass
+  private static final float COARSE_PROGRESS = 0.3f;
+  
+  protected final Image mImage;
+  
+  // The pyramid level the approximation is calculated at
+  protected int mLevel = 2;
+  
+  // The epsilon used at the coarse level, block averages are less varied than pixels
+  protected double mCoarseEpsilon = 0.1;
+  
+  // Whether the full resolution pass considers every pixel
+  protected boolean mExact = true;
+  
+  public ImagePyramid(Image image) {
+    mImage = image;
+  }
+  
+  public Image getImage() {
+    return mImage;
+  }
+  
+  public int getLevel() {
+    return mLevel;
+  }
+  
+  /**
+   * Sets the pyramid level used for the approximation, each level halves the width and height.
+   * @param level
+   */
+  public void setLevel(int level) {
+    mLevel = level;
+  }
+  
+  public double getCoarseEpsilon() {
+    return mCoarseEpsilon;
+  }
+  
+  /**
+   * Sets the epsilon used when comparing the block averages of the coarse level. This is added to 
+   * the epsilon of the query.
+   * @param epsilon
+   */
+  public void setCoarseEpsilon(double epsilon) {
+    mCoarseEpsilon = epsilon;
+  }
+  
+  public boolean isExact() {
+    return mExact;
+  }
+  
+  /**
+   * Sets whether the full resolution pass considers every pixel or only those near the ones the 
+   * approximation found, by default every pixel.
+   * @param exact
+   */
+  public void setExact(boolean exact) {
+    mExact = exact;
+  }
+  
+  /**
+   * Returns the tolerance-based neighbourhood of x within the region, coarse to fine.
+   * @param x
+   * @param region
+   * @param epsilon
+   * @param sub
+   * @return the full resolution neighbourhood or null if cancelled
+   */
+  public List<Integer> hybridNeighbourhood(
+      int x, 
+      List<Integer> region, 
+      double epsilon,
+      ProgressiveSubscriber<List<Integer>> sub) {
+    
+    // resolved once so the level is not looked up for every pixel
+    Image coarse = mImage.getLevel(mLevel);
+    List<Integer> coarseResult = coarse.hybridNeighbourhood(
+        toCoarse(coarse, x), toCoarse(coarse, region), epsilon + mCoarseEpsilon, coarsePart(sub));
+    if (sub.isCancelled()) return null;
+    
+    BitSet cells = toCells(coarse, coarseResult);
+    sub.onApproximation(restrict(coarse, region, cells));
+    
+    List<Integer> candidates = mExact ? region : restrict(coarse, region, dilate(coarse, cells));
+    return mImage.hybridNeighbourhood(x, candidates, epsilon, finePart(sub));
+  }
+  
+  /**
+   * Returns the tolerance-based intersection of two regions, coarse to fine.
+   * @param A
+   * @param B
+   * @param epsilon
+   * @param sub
+   * @return the full resolution intersection or null if cancelled
+   */
+  public List<Integer> hybridIntersection(
+      List<Integer> A, 
+      List<Integer> B, 
+      double epsilon,
+      ProgressiveSubscriber<List<Integer>> sub) {
+    
+    Image coarse = mImage.getLevel(mLevel);
+    List<Integer> coarseResult = coarse.hybridIntersection(
+        toCoarse(coarse, A), toCoarse(coarse, B), epsilon + mCoarseEpsilon, coarsePart(sub));
+    if (coarseResult == null) return null;
+    
+    BitSet cells = toCells(coarse, coarseResult);
+    List<Integer> approx = restrict(coarse, A, cells);
+    approx.addAll(restrict(coarse, B, cells));
+    sub.onApproximation(approx);
+    
+    if (mExact) {
+      return mImage.hybridIntersection(A, B, epsilon, finePart(sub));
+    }
+    else {
+      BitSet dilated = dilate(coarse, cells);
+      return mImage.hybridIntersection(
+          restrict(coarse, A, dilated), restrict(coarse, B, dilated), epsilon, finePart(sub));
+    }
+  }
+  
+  /**
+   * Returns all equivalence classes for descriptions within the given region, coarse to fine.
+   * The approximation is made of the classes of the coarse level.
+   * @param region
+   * @param sub
+   * @return the full resolution classes or null if cancelled
+   */
+  public List<List<Integer>> equivalenceClasses(
+      List<Integer> region, 
+      ProgressiveSubscriber<List<List<Integer>>> sub) {
+    
+    Image coarse = mImage.getLevel(mLevel);
+    List<List<Integer>> coarseResult = 
+        coarse.equivalenceClasses(toCoarse(coarse, region), coarsePart(sub));
+    if (coarseResult == null) return null;
+    
+    List<List<Integer>> approx = new ArrayList<List<Integer>>(coarseResult.size());
+    BitSet cells = new BitSet(coarse.getSize());
+    for (List<Integer> c : coarseResult) {
+      BitSet classCells = toCells(coarse, c);
+      cells.or(classCells);
+      approx.add(toFine(coarse, classCells));
+    }
+    sub.onApproximation(approx);
+    
+    if (mExact) {
+      return mImage.equivalenceClasses(region, finePart(sub));
+    }
+    else {
+      return equivalenceClasses(coarse, region, dilate(coarse, cells), finePart(sub));
+    }
+  }
+  
+  // The equivalence classes of the region restricted to the pixels of the given coarse cells
+  private List<List<Integer>> equivalenceClasses(
+      Image coarse,
+      List<Integer> region, 
+      BitSet cells, 
+      PerceptualSystemSubscriber sub) {
+    
+    if (sub.isCancelled()) return null;
+    
+    Map<Description, List<Integer>> classes = new HashMap<Description, List<Integer>>();
+    for (Integer i : region) {
+      Description desc = mImage.getDescription(i);
+      if (!classes.containsKey(desc)) {
+        classes.put(desc, new ArrayList<Integer>());
+      }
+    }
+    
+    List<Integer> candidates = toFine(coarse, cells);
+    int size = candidates.size();
+    for (int i = 0; i < size; i++) {
+      if (sub.isCancelled()) return null;
+      
+      int index = candidates.get(i);
+      List<Integer> equivClass = classes.get(mImage.getDescription(index));
+      if (equivClass != null) {
+        equivClass.add(index);
+      }
+      
+      sub.onProgressSet(i / (float) size);
+    }
+    return new ArrayList<List<Integer>>(classes.values());
+  }
+  
+  private PerceptualSystemSubscriber coarsePart(PerceptualSystemSubscriber sub) {
+    return new PartialSubscriber(sub, 0, COARSE_PROGRESS);
+  }
+  
+  private PerceptualSystemSubscriber finePart(PerceptualSystemSubscriber sub) {
+    return new PartialSubscriber(sub, COARSE_PROGRESS, 1 - COARSE_PROGRESS);
+  }
+  
+  // Returns the index of the coarse cell containing the given pixel
+  private int toCoarse(Image coarse, int index) {
+    int x = mImage.getX(index) >> mLevel;
+    int y = mImage.getY(index) >> mLevel;
+    return coarse.getIndex(x, y);
+  }
+  
+  // Returns the distinct coarse cells containing the given pixels
+  private List<Integer> toCoarse(Image coarse, List<Integer> region) {
+    BitSet cells = new BitSet(coarse.getSize());
+    for (Integer i : region) {
+      cells.set(toCoarse(coarse, i));
+    }
+    List<Integer> rtn = new ArrayList<Integer>(cells.cardinality());
+    for (int i = cells.nextSetBit(0); i >= 0; i = cells.nextSetBit(i + 1)) {
+      rtn.add(i);
+    }
+    return rtn;
+  }
+  
+  private BitSet toCells(Image coarse, List<Integer> coarseIndices) {
+    BitSet cells = new BitSet(coarse.getSize());
+    if (coarseIndices != null) {
+      for (Integer i : coarseIndices) {
+        cells.set(i);
+      }
+    }
+    return cells;
+  }
+  
+  // Returns every pixel within the given coarse cells
+  private List<Integer> toFine(Image coarse, BitSet cells) {
+    List<Integer> rtn = new ArrayList<Integer>();
+    int width = mImage.getWidth();
+    int height = mImage.getHeight();
+    int coarseWidth = coarse.getWidth();
+    int scale = 1 << mLevel;
+    for (int c = cells.nextSetBit(0); c >= 0; c = cells.nextSetBit(c + 1)) {
+      int left = (c % coarseWidth) * scale;
+      int top = (c / coarseWidth) * scale;
+      int right = Math.min(left + scale, width);
+      int bottom = Math.min(top + scale, height);
+      for (int y = top; y < bottom; y++) {
+        for (int x = left; x < right; x++) {
+          rtn.add(mImage.getIndex(x, y));
+        }
+      }
+    }
+    return rtn;
+  }
+  
+  // Returns the pixels of the region within the given coarse cells
+  private List<Integer> restrict(Image coarse, List<Integer> region, BitSet cells) {
+    List<Integer> rtn = new ArrayList<Integer>();
+    for (Integer i : region) {
+      if (cells.get(toCoarse(coarse, i))) {
+        rtn.add(i);
+      }
+    }
+    return rtn;
+  }
+  
+  // Grows the given coarse cells by one cell in every direction
+  private BitSet dilate(Image coarse, BitSet cells) {
+    int width = coarse.getWidth();
+    int height = coarse.getHeight();
+    BitSet rtn = new BitSet(coarse.getSize());
+    for (int c = cells.nextSetBit(0); c >= 0; c = cells.nextSetBit(c + 1)) {
+      int cx = c % width;
+      int cy = c / width;
+      for (int y = Math.max(cy - 1, 0); y <= Math.min(cy + 1, height - 1); y++) {
+        for (int x = Math.max(cx - 1, 0); x <= Math.min(cx + 1, width - 1); x++) {
+          rtn.set(y * width + x);
+        }
+      }
+    }
+    return rtn;
+  }
+
+}
@@ -0,0 +1,283 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uwinnipeg.proximity.DescriptionIndex;
+import ca.uwinnipeg.proximity.DistanceMetric;
+import ca.uwinnipeg.proximity.EuclideanMetric;
+import ca.uwinnipeg.proximity.PerceptualSystem.PerceptualSystemSubscriber;
+import ca.uwinnipeg.proximity.ToleranceSpace;
+
+/**
+ * A perceptual system spanning several images, such as the frames of a video.
+ * Every image shares the same list of probe functions and caches its own features so regions of 
+ * different images can be compared descriptively.
+ * @author Garrett Smith
+ *
+ */
+public class ImageSet {
+  
+  // The images within the set
+  protected List<Image> mImages = new ArrayList<Image>();
+  
+  // The probe functions shared by every image
+  protected List<ImageFunc> mProbeFuncs = new ArrayList<ImageFunc>();
+  
+  // The distance metric shared by every image
+  protected DistanceMetric mDistance = new EuclideanMetric();
+  
+  public ImageSet() {}
+  
+  /**
+   * Adds an image to the set replacing its probe functions with those of the set.
+   * @param image
+   */
+  public void addImage(Image image) {
+    for (ImageFunc func : image.getProbeFuncs()) {
+      image.removeProbeFunc(func);
+    }
+    for (ImageFunc func : mProbeFuncs) {
+      image.addProbeFunc(func);
+    }
+    image.setCaching(true);
+    image.setDistanceMetric(mDistance);
+    mImages.add(image);
+  }
+  
+  /**
+   * Returns the distance metric shared by every image.
+   * @return
+   */
+  public DistanceMetric getDistanceMetric() {
+    return mDistance;
+  }
+  
+  /**
+   * Sets the distance metric of every image.
+   * @param metric
+   */
+  public void setDistanceMetric(DistanceMetric metric) {
+    mDistance = metric;
+    for (Image image : mImages) {
+      image.setDistanceMetric(metric);
+    }
+  }
+  
+  /**
+   * Removes the image at the given position from the set.
+   * @param image
+   * @return the removed image
+   */
+  public Image removeImage(int image) {
+    return mImages.remove(image);
+  }
+  
+  /**
+   * Returns the image at the given position.
+   * @param image
+   * @return
+   */
+  public Image getImage(int image) {
+    return mImages.get(image);
+  }
+  
+  /**
+   * Returns the number of images in the set.
+   * @return
+   */
+  public int size() {
+    return mImages.size();
+  }
+  
+  /**
+   * Returns a List containing the probe functions shared by every image.
+   * @return
+   */
+  public List<ImageFunc> getProbeFuncs() {
+    return new ArrayList<ImageFunc>(mProbeFuncs);
+  }
+  
+  /**
+   * Adds a probe function to every image.
+   * @param func
+   */
+  public void addProbeFunc(ImageFunc func) {
+    mProbeFuncs.add(func);
+    for (Image image : mImages) {
+      image.addProbeFunc(func);
+    }
+  }
+  
+  /**
+   * Removes a probe function from every image.
+   * @param func
+   * @return true if the probe function was removed
+   */
+  public boolean removeProbeFunc(ImageFunc func) {
+    for (Image image : mImages) {
+      image.removeProbeFunc(func);
+    }
+    return mProbeFuncs.remove(func);
+  }
+  
+  /**
+   * Returns an index of the descriptions of a region of one image.
+   * The index can be probed by the regions of every image in the set.
+   * @param image the position of the image
+   * @param region the region of the image
+   * @return
+   */
+  public DescriptionIndex index(int image, List<Integer> region) {
+    return mImages.get(image).index(region);
+  }
+  
+  /**
+   * Returns the objects of a region of the given image that share a description with the 
+   * reference region.
+   * @param ref
+   * @param image the position of the image
+   * @param region the region of the image
+   * @param sub
+   * @return
+   */
+  public List<Integer> intersection(
+      DescriptionIndex ref, 
+      int image, 
+      List<Integer> region, 
+      PerceptualSystemSubscriber sub) {
+    return mImages.get(image).intersection(ref, region, sub);
+  }
+  
+  /**
+   * Returns the objects of a region of the given image that have a description within epsilon of 
+   * the reference region.
+   * @param ref
+   * @param image the position of the image
+   * @param region the region of the image
+   * @param epsilon
+   * @param sub
+   * @return
+   */
+  public List<Integer> hybridIntersection(
+      DescriptionIndex ref, 
+      int image, 
+      List<Integer> region, 
+      double epsilon,
+      PerceptualSystemSubscriber sub) {
+    return mImages.get(image).hybridIntersection(ref, region, epsilon, sub);
+  }
+  
+  /**
+   * Returns the objects of a region of the given image that do not share a description with the 
+   * reference region.
+   * @param image the position of the image
+   * @param region the region of the image
+   * @param ref
+   * @param sub
+   * @return
+   */
+  public List<Integer> difference(
+      int image, 
+      List<Integer> region, 
+      DescriptionIndex ref,
+      PerceptualSystemSubscriber sub) {
+    return mImages.get(image).difference(region, ref, sub);
+  }
+  
+  /**
+   * Returns the objects of a region of the given image that do not have a description within 
+   * epsilon of the reference region.
+   * @param image the position of the image
+   * @param region the region of the image
+   * @param ref
+   * @param epsilon
+   * @param sub
+   * @return
+   */
+  public List<Integer> hybridDifference(
+      int image, 
+      List<Integer> region, 
+      DescriptionIndex ref,
+      double epsilon,
+      PerceptualSystemSubscriber sub) {
+    return mImages.get(image).hybridDifference(region, ref, epsilon, sub);
+  }
+  
+  /**
+   * Probes every image with the reference region, returning the objects of each image that have a 
+   * description within epsilon of the reference region.
+   * @param ref
+   * @param epsilon
+   * @param sub
+   * @return a List of the matching objects of each image in order
+   */
+  public List<List<Integer>> hybridIntersection(
+      DescriptionIndex ref, 
+      double epsilon, 
+      PerceptualSystemSubscriber sub) {
+    return probeAll(ref, epsilon, true, sub);
+  }
+  
+  /**
+   * Probes every image with the reference region, returning the objects of each image that do not
+   * have a description within epsilon of the reference region.
+   * @param ref
+   * @param epsilon
+   * @param sub
+   * @return a List of the remaining objects of each image in order
+   */
+  public List<List<Integer>> hybridDifference(
+      DescriptionIndex ref, 
+      double epsilon, 
+      PerceptualSystemSubscriber sub) {
+    return probeAll(ref, epsilon, false, sub);
+  }
+  
+  /**
+   * Calculates the tolerance nearness measure between the reference region and a region of the 
+   * given image.
+   * @param ref
+   * @param image the position of the image
+   * @param region the region of the image
+   * @param epsilon
+   * @param sub
+   * @return the tolerance nearness measure or NaN if cancelled
+   */
+  public double nearnessMeasure(
+      DescriptionIndex ref, 
+      int image, 
+      List<Integer> region, 
+      double epsilon,
+      PerceptualSystemSubscriber sub) {
+    DescriptionIndex other = mImages.get(image).index(region);
+    return ToleranceSpace.nearnessMeasure(ref, other, epsilon, mDistance, sub);
+  }
+  
+  private List<List<Integer>> probeAll(
+      DescriptionIndex ref, 
+      double epsilon, 
+      boolean intersect,
+      PerceptualSystemSubscriber sub) {
+    int size = mImages.size();
+    List<List<Integer>> rtn = new ArrayList<List<Integer>>(size);
+    for (int i = 0; i < size; i++) {
+      Image image = mImages.get(i);
+      PerceptualSystemSubscriber part = new PartialSubscriber(sub, i / (float) size, 1f / size);
+      List<Integer> result;
+      if (intersect) {
+        result = image.hybridIntersection(ref, image.objectsIndicesList(), epsilon, part);
+      }
+      else {
+        result = image.hybridDifference(image.objectsIndicesList(), ref, epsilon, part);
+      }
+      if (result == null) return null;
+      rtn.add(result);
+    }
+    return rtn;
+  }
+
+}
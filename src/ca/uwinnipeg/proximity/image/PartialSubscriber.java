@@ -0,0 +1,39 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+import ca.uwinnipeg.proximity.PerceptualSystem.PerceptualSystemSubscriber;
+
+/**
+ * Reports the progress of one step as a portion of the progress of a larger calculation.
+ * @author Garrett Smith
+ *
+ */
+class PartialSubscriber implements PerceptualSystemSubscriber {
+  
+  private final PerceptualSystemSubscriber mParent;
+  private final float mStart, mScale;
+  
+  /**
+   * Creates a subscriber mapping progress 0 to 1 onto start to start + scale of the parent.
+   * @param parent
+   * @param start
+   * @param scale
+   */
+  public PartialSubscriber(PerceptualSystemSubscriber parent, float start, float scale) {
+    mParent = parent;
+    mStart = start;
+    mScale = scale;
+  }
+
+  @Override
+  public void onProgressSet(float progress) {
+    mParent.onProgressSet(mStart + progress * mScale);
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return mParent.isCancelled();
+  }
+}
@@ -18,7 +18,7 @@ public class PerceptualGrayScaleFunc extends ImageFunc {
    */
   @Override
   protected double map(int index, Image system) {
-    int pixel = system.getObject(index);
+    int pixel = system.getPixel(index);
     return grayscale(pixel);
   }
   
@@ -5,7 +5,7 @@ public class RedFunc extends ColorFunc {
 
   @Override
   protected double map(int index, Image system) {
-    return (system.getObject(index) >> 16) & 0xFF;
+    return (system.getPixel(index) >> 16) & 0xFF;
   }
   
   @Override
@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per thread scratch arrays and working objects reused between images, so that recalculating the 
+ * textures of frames of the same size allocates nothing once warmed up. Only temporary state is 
+ * pooled: the textures and feature stores an image keeps are allocated once per image.
+ * A buffer is only valid until the next request for a buffer of the same size on the same thread 
+ * and its contents are not cleared, so callers must overwrite what they read.
+ * @author Garrett Smith
+ *
+ */
+public class ScratchBuffers {
+  
+  // The most arrays of distinct sizes, or objects, kept per thread before the pool is emptied
+  private static final int MAX_ENTRIES = 8;
+  
+  private static final ThreadLocal<ScratchBuffers> BUFFERS = new ThreadLocal<ScratchBuffers>() {
+    @Override
+    protected ScratchBuffers initialValue() {
+      return new ScratchBuffers();
+    }
+  };
+  
+  // Int arrays keyed by length
+  private final Map<Integer, int[]> mInts = new HashMap<Integer, int[]>();
+  
+  // Working objects keyed by what they were built for
+  private final Map<Object, Object> mObjects = new HashMap<Object, Object>();
+  
+  private ScratchBuffers() {}
+  
+  /**
+   * Returns the scratch buffers of the current thread.
+   * @return
+   */
+  public static ScratchBuffers get() {
+    return BUFFERS.get();
+  }
+  
+  /**
+   * Returns an int array of exactly the given length.
+   * @param length
+   * @return
+   */
+  public int[] getInts(int length) {
+    int[] buffer = mInts.get(length);
+    if (buffer == null) {
+      if (mInts.size() >= MAX_ENTRIES) mInts.clear();
+      buffer = new int[length];
+      mInts.put(length, buffer);
+    }
+    return buffer;
+  }
+  
+  /**
+   * Returns the working object kept for the given key, or null if there is none.
+   * @param key
+   * @return
+   */
+  public Object getObject(Object key) {
+    return mObjects.get(key);
+  }
+  
+  /**
+   * Keeps a working object for the given key to be reused by later calls on the same thread.
+   * @param key
+   * @param value
+   */
+  public void putObject(Object key, Object value) {
+    if (!mObjects.containsKey(key) && mObjects.size() >= MAX_ENTRIES) mObjects.clear();
+    mObjects.put(key, value);
+  }
+  
+  /**
+   * Releases every buffer and object held for the current thread.
+   */
+  public void clear() {
+    mInts.clear();
+    mObjects.clear();
+  }
+
+}
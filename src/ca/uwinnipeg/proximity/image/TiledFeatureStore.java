@@ -0,0 +1,63 @@
+/**
+ * 
+ */
+package ca.uwinnipeg.proximity.image;
+
+import ca.uwinnipeg.proximity.LazyFeatureStore;
+
+/**
+ * A {@link LazyFeatureStore} whose chunks are square tiles of an {@link Image}, so a query on a 
+ * small area of a large image only featurises the tiles under it.
+ * @author Garrett Smith
+ *
+ */
+public class TiledFeatureStore extends LazyFeatureStore {
+  
+  protected final int mTileSize;
+  protected final int mWidth, mHeight;
+  
+  // The number of tiles across the image
+  protected final int mTilesX;
+  
+  /**
+   * Creates a lazy feature store of the given image.
+   * @param image
+   * @param featureCount the number of probe functions
+   * @param tileSize the width and height of a tile
+   */
+  public TiledFeatureStore(Image image, int featureCount, int tileSize) {
+    super(image, image.getSize(), featureCount, tileSize * tileSize, 
+        tiles(image.getWidth(), tileSize) * tiles(image.getHeight(), tileSize));
+    mTileSize = tileSize;
+    mWidth = image.getWidth();
+    mHeight = image.getHeight();
+    mTilesX = tiles(mWidth, tileSize);
+  }
+  
+  private static int tiles(int length, int tileSize) {
+    return (length + tileSize - 1) / tileSize;
+  }
+  
+  @Override
+  protected int getChunk(int index) {
+    int x = index % mWidth;
+    int y = index / mWidth;
+    return (y / mTileSize) * mTilesX + x / mTileSize;
+  }
+  
+  @Override
+  protected int getOffset(int index) {
+    int x = index % mWidth;
+    int y = index / mWidth;
+    return (y % mTileSize) * mTileSize + x % mTileSize;
+  }
+  
+  @Override
+  protected int getIndex(int chunk, int offset) {
+    int x = (chunk % mTilesX) * mTileSize + offset % mTileSize;
+    int y = (chunk / mTilesX) * mTileSize + offset / mTileSize;
+    if (x >= mWidth || y >= mHeight) return -1;
+    return y * mWidth + x;
+  }
+
+}
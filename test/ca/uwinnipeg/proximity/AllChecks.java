@@ -0,0 +1,59 @@
+package ca.uwinnipeg.proximity;
+
+import java.lang.reflect.Method;
+
+/**
+ * Runs every equivalence check, comparing the optimised paths against straightforward 
+ * implementations. From the project directory:
+ * <pre>
+ * javac -d out $(find src test -name '*.java')
+ * java -cp out ca.uwinnipeg.proximity.AllChecks
+ * </pre>
+ * Exits with status 1 if any check fails.
+ * @author Garrett Smith
+ *
+ */
+public class AllChecks {
+  
+  // The classes with a static run() method
+  private static final String[] CHECKS = {
+    "ca.uwinnipeg.proximity.ToleranceCheck",
+    "ca.uwinnipeg.proximity.RegionCheck",
+    "ca.uwinnipeg.proximity.AsyncCheck",
+    "ca.uwinnipeg.proximity.VisitorCheck",
+    "ca.uwinnipeg.proximity.MetricsCheck",
+    "ca.uwinnipeg.proximity.SnapshotCheck",
+    "ca.uwinnipeg.proximity.DifferenceCheck",
+    "ca.uwinnipeg.proximity.ApproximationCheck",
+    "ca.uwinnipeg.proximity.MetricCheck",
+    "ca.uwinnipeg.proximity.image.ImageSetCheck",
+    "ca.uwinnipeg.proximity.image.BatchFeaturizerCheck",
+    "ca.uwinnipeg.proximity.image.GlcmTextureCheck",
+    "ca.uwinnipeg.proximity.image.ScratchBuffersCheck",
+    "ca.uwinnipeg.proximity.image.LazyFeatureStoreCheck",
+    "ca.uwinnipeg.proximity.image.ImagePyramidCheck",
+    "ca.uwinnipeg.proximity.image.ImageUpdateCheck",
+    "ca.uwinnipeg.proximity.image.DescriptionKeysCheck",
+    "ca.uwinnipeg.proximity.image.DirectImageCheck",
+  };
+  
+  public static void main(String[] args) throws Exception {
+    int failures = 0;
+    for (String name : CHECKS) {
+      Method run = Class.forName(name).getMethod("run");
+      long start = System.nanoTime();
+      try {
+        run.invoke(null);
+        System.out.println("ok   " + name + " (" + (System.nanoTime() - start) / 1000000 + " ms)");
+      }
+      catch (java.lang.reflect.InvocationTargetException e) {
+        failures++;
+        System.out.println("FAIL " + name);
+        e.getCause().printStackTrace(System.out);
+      }
+    }
+    System.out.println(failures == 0 ? "all checks passed" : failures + " checks failed");
+    if (failures > 0) System.exit(1);
+  }
+
+}
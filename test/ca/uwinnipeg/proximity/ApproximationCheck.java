@@ -0,0 +1,134 @@
+package ca.uwinnipeg.proximity;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkClose;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.uwinnipeg.proximity.image.AlphaFunc;
+import ca.uwinnipeg.proximity.image.BlueFunc;
+import ca.uwinnipeg.proximity.image.GreenFunc;
+import ca.uwinnipeg.proximity.image.Image;
+import ca.uwinnipeg.proximity.image.PerceptualGrayScaleFunc;
+import ca.uwinnipeg.proximity.image.RedFunc;
+import ca.uwinnipeg.proximity.image.TestImages;
+
+/**
+ * Checks the approximate intersection against the exact one: an index with a single bucket gives
+ * the exact result, any other only returns near objects, and the measured recall and precision
+ * match the results. Also checks that invalid index settings are rejected.
+ * @author Garrett Smith
+ *
+ */
+public class ApproximationCheck {
+
+  private static final double TOLERANCE = 1e-12;
+
+  public static void run() {
+    checkInvalid();
+    Image image = TestImages.image(28, 20, 12, 31);
+    image.addProbeFunc(new RedFunc());
+    image.addProbeFunc(new GreenFunc());
+    image.addProbeFunc(new BlueFunc());
+    image.addProbeFunc(new AlphaFunc());
+    image.addProbeFunc(new PerceptualGrayScaleFunc());
+    List<Integer> A = Checks.range(0, 260);
+    List<Integer> B = Checks.range(200, 560);
+    // buckets so wide every description shares one
+    ProjectionIndex.Settings single = new ProjectionIndex.Settings(1, 1, 1e12);
+    ProjectionIndex.Settings[] settings = {
+        new ProjectionIndex.Settings(),
+        new ProjectionIndex.Settings(2, 6, 1),
+        new ProjectionIndex.Settings(16, 2, 8),
+    };
+
+    for (double epsilon : new double[] {0, 0.05, 0.15, 0.4}) {
+      String name = "epsilon " + epsilon;
+      List<Integer> exact = image.hybridIntersection(A, B, epsilon, SUBSCRIBER);
+      checkSameIndices(exact,
+          image.approximateHybridIntersection(A, B, epsilon, single, SUBSCRIBER),
+          name + " single bucket");
+      checkClose(1, image.measureIntersectionRecall(A, B, epsilon, single, SUBSCRIBER),
+          TOLERANCE, name + " single bucket recall");
+
+      Set<Integer> near = near(image, A, B, epsilon);
+      for (ProjectionIndex.Settings s : settings) {
+        String sName = name + " " + s.tables + " tables " + s.projections + " projections";
+        List<Integer> approx = image.approximateHybridIntersection(A, B, epsilon, s, SUBSCRIBER);
+        check(near.containsAll(approx), sName + " found objects that are not near");
+        checkClose(fractionWithin(exact, approx),
+            image.measureIntersectionRecall(A, B, epsilon, s, SUBSCRIBER), TOLERANCE,
+            sName + " recall");
+        checkClose(fractionWithin(approx, exact),
+            image.measureIntersectionPrecision(A, B, epsilon, s, SUBSCRIBER), TOLERANCE,
+            sName + " precision");
+
+        // the system matches approximately once given settings, and exactly again without them
+        image.setApproximation(s);
+        checkSameIndices(approx, image.hybridIntersection(A, B, epsilon, SUBSCRIBER),
+            sName + " approximate hybrid intersection");
+        image.setApproximation(null);
+        checkSameIndices(exact, image.hybridIntersection(A, B, epsilon, SUBSCRIBER),
+            sName + " exact hybrid intersection");
+      }
+    }
+  }
+
+  // Every object of either region within epsilon of an object of the other, or equal to one at 0
+  private static Set<Integer> near(Image image, List<Integer> A, List<Integer> B,
+      double epsilon) {
+    DistanceMetric metric = image.getDistanceMetric();
+    Set<Integer> rtn = new HashSet<Integer>();
+    for (int a : A) {
+      Description descA = image.getDescription(a);
+      for (int b : B) {
+        Description descB = image.getDescription(b);
+        if (epsilon == 0 ? descA.equals(descB) : metric.distance(descA, descB) < epsilon) {
+          rtn.add(a);
+          rtn.add(b);
+        }
+      }
+    }
+    return rtn;
+  }
+
+  private static double fractionWithin(List<Integer> indices, List<Integer> other) {
+    if (indices.isEmpty()) return 1;
+    Set<Integer> found = new HashSet<Integer>(other);
+    int hits = 0;
+    for (int i : indices) {
+      if (found.contains(i)) hits++;
+    }
+    return hits / (double) indices.size();
+  }
+
+  private static void checkInvalid() {
+    Description[] descs = {new Description(new double[] {0.5})};
+    ProjectionIndex.Settings[] invalid = {
+        new ProjectionIndex.Settings(0, 4, 4),
+        new ProjectionIndex.Settings(8, 0, 4),
+        new ProjectionIndex.Settings(8, 4, 0),
+        new ProjectionIndex.Settings(8, 4, -1),
+        new ProjectionIndex.Settings(8, 4, Double.NaN),
+        new ProjectionIndex.Settings(8, 4, Double.POSITIVE_INFINITY),
+    };
+    for (ProjectionIndex.Settings s : invalid) {
+      try {
+        new ProjectionIndex(descs, 0.1, s);
+        throw new AssertionError("accepted " + s.tables + " tables " + s.projections
+            + " projections width " + s.width);
+      }
+      catch (IllegalArgumentException e) {}
+    }
+    try {
+      new ProjectionIndex(descs, 0, new ProjectionIndex.Settings());
+      throw new AssertionError("accepted epsilon 0");
+    }
+    catch (IllegalArgumentException e) {}
+  }
+
+}
@@ -0,0 +1,119 @@
+package ca.uwinnipeg.proximity;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkSameClasses;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import ca.uwinnipeg.proximity.PerceptualSystem.PerceptualSystemSubscriber;
+import ca.uwinnipeg.proximity.QueryTask.Query;
+import ca.uwinnipeg.proximity.QueryTask.QueryListener;
+import ca.uwinnipeg.proximity.image.GreenFunc;
+import ca.uwinnipeg.proximity.image.Image;
+import ca.uwinnipeg.proximity.image.RedFunc;
+import ca.uwinnipeg.proximity.image.TestImages;
+
+/**
+ * Checks queries run through the asynchronous API against running them directly, and that a
+ * cancelled task stops its query and reports that it is done.
+ * @author Garrett Smith
+ *
+ */
+public class AsyncCheck {
+
+  public static void run() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      checkResults(executor);
+      checkCancel(executor);
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void checkResults(ExecutorService executor) throws Exception {
+    Image image = TestImages.image(31, 23, 5, 21);
+    image.addProbeFunc(new RedFunc());
+    image.addProbeFunc(new GreenFunc());
+    AsyncPerceptualSystem async = new AsyncPerceptualSystem(image, executor);
+    // done is reported after the result is set, so it may come after get returns
+    final CountDownLatch done = new CountDownLatch(6);
+    QueryListener listener = new QueryListener() {
+      @Override
+      public void onProgressSet(float progress) {}
+
+      @Override
+      public void onDone(QueryTask<?> task) {
+        done.countDown();
+      }
+    };
+
+    List<Integer> all = image.objectsIndicesList();
+    List<Integer> A = Checks.range(0, 200);
+    List<Integer> B = Checks.range(150, 500);
+    // submit every query before waiting on any so they run concurrently
+    QueryTask<List<Integer>> neighbourhood = async.hybridNeighbourhood(7, all, 0.2, listener);
+    QueryTask<List<Integer>> intersection = async.hybridIntersection(A, B, 0.1, listener);
+    QueryTask<List<Integer>> difference = async.hybridDifference(A, B, 0.1, listener);
+    QueryTask<List<Integer>> compliment = async.compliment(A, listener);
+    QueryTask<List<List<Integer>>> classes = async.equivalenceClasses(A, listener);
+    QueryTask<List<List<Integer>>> tolerance = async.toleranceClasses(A, 0.3, listener);
+
+    checkSameIndices(image.hybridNeighbourhood(7, all, 0.2, SUBSCRIBER), neighbourhood.get(),
+        "async neighbourhood");
+    checkSameIndices(image.hybridIntersection(A, B, 0.1, SUBSCRIBER), intersection.get(),
+        "async intersection");
+    checkSameIndices(image.hybridDifference(A, B, 0.1, SUBSCRIBER), difference.get(),
+        "async difference");
+    checkSameIndices(image.compliment(A, SUBSCRIBER), compliment.get(), "async compliment");
+    checkSameClasses(image.equivalenceClasses(A, SUBSCRIBER), classes.get(),
+        "async equivalence classes");
+    checkSameClasses(image.toleranceClasses(A, 0.3, SUBSCRIBER), tolerance.get(),
+        "async tolerance classes");
+    check(done.await(10, TimeUnit.SECONDS), "every task reported done");
+  }
+
+  private static void checkCancel(ExecutorService executor) throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch stopped = new CountDownLatch(1);
+    final CountDownLatch reported = new CountDownLatch(1);
+    QueryTask<Integer> task = new QueryTask<Integer>(new Query<Integer>() {
+      @Override
+      public Integer run(PerceptualSystemSubscriber sub) {
+        started.countDown();
+        while (!sub.isCancelled()) {
+          Thread.yield();
+        }
+        stopped.countDown();
+        return null;
+      }
+    }, new QueryListener() {
+      @Override
+      public void onProgressSet(float progress) {}
+
+      @Override
+      public void onDone(QueryTask<?> task) {
+        reported.countDown();
+      }
+    });
+    executor.execute(task);
+    check(started.await(10, TimeUnit.SECONDS), "query started");
+    task.cancel(false);
+    check(stopped.await(10, TimeUnit.SECONDS), "query saw the cancellation");
+    check(reported.await(10, TimeUnit.SECONDS), "cancelled task reported done");
+    try {
+      task.get();
+      throw new AssertionError("cancelled task returned a result");
+    }
+    catch (CancellationException e) {}
+  }
+
+}
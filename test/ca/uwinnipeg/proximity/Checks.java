@@ -0,0 +1,101 @@
+package ca.uwinnipeg.proximity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ca.uwinnipeg.proximity.PerceptualSystem.PerceptualSystemSubscriber;
+
+/**
+ * Assertions shared by the equivalence checks. Each check class has a static run() that throws an 
+ * {@link AssertionError} on the first failure, see {@link AllChecks}.
+ * @author Garrett Smith
+ *
+ */
+public class Checks {
+  
+  /**
+   * A subscriber that never cancels.
+   */
+  public static final PerceptualSystemSubscriber SUBSCRIBER = new PerceptualSystemSubscriber() {
+    @Override
+    public void onProgressSet(float progress) {}
+    
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+  };
+  
+  public static void check(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError(message);
+    }
+  }
+  
+  public static void checkEquals(Object expected, Object actual, String message) {
+    if (expected == null ? actual != null : !expected.equals(actual)) {
+      throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+    }
+  }
+  
+  public static void checkClose(double expected, double actual, double tolerance, String message) {
+    if (!(Math.abs(expected - actual) <= tolerance)) {
+      throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+    }
+  }
+  
+  /**
+   * Checks the lists hold the same indices, ignoring order.
+   * @param expected
+   * @param actual
+   * @param message
+   */
+  public static void checkSameIndices(List<Integer> expected, List<Integer> actual, 
+      String message) {
+    checkEquals(sorted(expected), sorted(actual), message);
+  }
+  
+  /**
+   * Checks the lists hold the same classes, ignoring the order of classes and of their members.
+   * @param expected
+   * @param actual
+   * @param message
+   */
+  public static void checkSameClasses(List<List<Integer>> expected, List<List<Integer>> actual, 
+      String message) {
+    checkEquals(sortedClasses(expected), sortedClasses(actual), message);
+  }
+  
+  public static List<Integer> sorted(List<Integer> indices) {
+    if (indices == null) return null;
+    List<Integer> rtn = new ArrayList<Integer>(indices);
+    Collections.sort(rtn);
+    return rtn;
+  }
+  
+  public static List<String> sortedClasses(List<List<Integer>> classes) {
+    if (classes == null) return null;
+    List<String> rtn = new ArrayList<String>();
+    for (List<Integer> c : classes) {
+      rtn.add(sorted(c).toString());
+    }
+    Collections.sort(rtn);
+    return rtn;
+  }
+  
+  /**
+   * Returns the indices from start to end, end exclusive.
+   * @param start
+   * @param end
+   * @return
+   */
+  public static List<Integer> range(int start, int end) {
+    List<Integer> rtn = new ArrayList<Integer>(end - start);
+    for (int i = start; i < end; i++) {
+      rtn.add(i);
+    }
+    return rtn;
+  }
+
+}
@@ -0,0 +1,91 @@
+package ca.uwinnipeg.proximity;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ca.uwinnipeg.proximity.image.BlueFunc;
+import ca.uwinnipeg.proximity.image.GreenFunc;
+import ca.uwinnipeg.proximity.image.Image;
+import ca.uwinnipeg.proximity.image.RedFunc;
+import ca.uwinnipeg.proximity.image.TestImages;
+
+/**
+ * Checks the hybrid difference and compliment of lists and regions against comparing every pair
+ * of objects, for descriptions on the edges of the feature space and epsilons wider than it.
+ * @author Garrett Smith
+ *
+ */
+public class DifferenceCheck {
+
+  private static final int WIDTH = 26;
+  private static final int HEIGHT = 18;
+  private static final int SIZE = WIDTH * HEIGHT;
+
+  public static void run() {
+    DistanceMetric[] metrics = {
+        new EuclideanMetric(),
+        new ManhattanMetric(new double[] {2, 0.5, 1}),
+        new ChebyshevMetric(new double[] {0.5, 1, Double.POSITIVE_INFINITY}),
+    };
+    Random random = new Random(12);
+    // few values give many objects per description, all of them give mostly distinct ones
+    for (int values : new int[] {3, 6, 256}) {
+      Image image = TestImages.image(WIDTH, HEIGHT, values, values);
+      image.addProbeFunc(new RedFunc());
+      image.addProbeFunc(new GreenFunc());
+      image.addProbeFunc(new BlueFunc());
+      for (boolean caching : new boolean[] {false, true}) {
+        image.setCaching(caching);
+        for (DistanceMetric metric : metrics) {
+          image.setDistanceMetric(metric);
+          for (double epsilon : new double[] {0, 0.05, 0.3, 2}) {
+            String name = values + " values " + (caching ? "cached " : "") + metric
+                + " epsilon " + epsilon;
+            List<Integer> A = randomIndices(random, random.nextInt(SIZE));
+            List<Integer> B = randomIndices(random, random.nextInt(SIZE / 4));
+            checkSameIndices(difference(image, A, B, epsilon),
+                image.hybridDifference(A, B, epsilon, SUBSCRIBER), name + " hybrid difference");
+            checkEquals(difference(image, image.objectsIndicesList(), B, epsilon),
+                image.hybridCompliment(B, epsilon, SUBSCRIBER), name + " hybrid compliment");
+            Region regionA = new Region(SIZE, A);
+            checkEquals(difference(image, regionA.toList(), B, epsilon),
+                image.hybridDifference(regionA, new Region(SIZE, B), epsilon, SUBSCRIBER)
+                    .toList(), name + " region hybrid difference");
+          }
+        }
+      }
+    }
+  }
+
+  // Every object of A that is not within epsilon of an object of B, or equal to one at 0
+  private static List<Integer> difference(Image image, List<Integer> A, List<Integer> B,
+      double epsilon) {
+    DistanceMetric metric = image.getDistanceMetric();
+    List<Integer> rtn = new ArrayList<Integer>();
+    for (int a : A) {
+      Description desc = image.getDescription(a);
+      boolean near = false;
+      for (int j = 0; !near && j < B.size(); j++) {
+        Description other = image.getDescription(B.get(j));
+        near = (epsilon == 0) ? desc.equals(other) : metric.distance(desc, other) < epsilon;
+      }
+      if (!near) rtn.add(a);
+    }
+    return rtn;
+  }
+
+  // Indices in random order, some of them repeated
+  private static List<Integer> randomIndices(Random random, int count) {
+    List<Integer> indices = new ArrayList<Integer>();
+    for (int i = 0; i < count; i++) {
+      indices.add(random.nextInt(SIZE));
+    }
+    return indices;
+  }
+
+}
@@ -0,0 +1,93 @@
+package ca.uwinnipeg.proximity;
+
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the distance metrics reject invalid parameters, that their early exit test agrees with
+ * the full distance, and that the description grid finds exactly the descriptions a linear scan
+ * finds.
+ * @author Garrett Smith
+ *
+ */
+public class MetricCheck {
+
+  private static final int FEATURES = 4;
+
+  public static void run() {
+    checkInvalid();
+
+    DistanceMetric[] metrics = {
+        new EuclideanMetric(),
+        new EuclideanMetric(new double[] {2, 0, 0.5}),
+        new ManhattanMetric(new double[] {1, 3, 0, 0.25}),
+        new ChebyshevMetric(),
+        new ChebyshevMetric(new double[] {0.5, 2, Double.POSITIVE_INFINITY}),
+    };
+    Random random = new Random(8);
+    Description[] descs = new Description[400];
+    for (int i = 0; i < descs.length; i++) {
+      descs[i] = description(random);
+    }
+    for (DistanceMetric metric : metrics) {
+      for (double epsilon : new double[] {0.05, 0.2, 0.6}) {
+        checkNear(metric, descs, epsilon, random);
+      }
+    }
+  }
+
+  private static void checkInvalid() {
+    double[][] tolerances = {{0}, {1, -1}, {Double.NaN}};
+    for (double[] t : tolerances) {
+      try {
+        new ChebyshevMetric(t);
+        throw new AssertionError("accepted tolerances " + Arrays.toString(t));
+      }
+      catch (IllegalArgumentException e) {}
+    }
+    double[][] weights = {{-1}, {1, Double.NaN}, {Double.POSITIVE_INFINITY}};
+    for (double[] w : weights) {
+      try {
+        new EuclideanMetric(w);
+        throw new AssertionError("L2 accepted weights " + Arrays.toString(w));
+      }
+      catch (IllegalArgumentException e) {}
+      try {
+        new ManhattanMetric(w);
+        throw new AssertionError("L1 accepted weights " + Arrays.toString(w));
+      }
+      catch (IllegalArgumentException e) {}
+    }
+  }
+
+  private static void checkNear(DistanceMetric metric, Description[] descs, double epsilon,
+      Random random) {
+    String name = metric + " epsilon " + epsilon;
+    DescriptionGrid grid = new DescriptionGrid(descs, epsilon, metric);
+    for (int q = 0; q < 50; q++) {
+      Description query = (q % 2 == 0) ? descs[random.nextInt(descs.length)] : description(random);
+      boolean[] marks = new boolean[descs.length];
+      grid.markNear(query, marks);
+      boolean any = false;
+      for (int i = 0; i < descs.length; i++) {
+        boolean near = metric.distance(query, descs[i]) < epsilon;
+        checkEquals(near, metric.isNear(query, descs[i], epsilon), name + " isNear " + i);
+        checkEquals(near, marks[i], name + " grid " + i);
+        any |= near;
+      }
+      check(grid.containsNear(query) == any, name + " containsNear");
+    }
+  }
+
+  private static Description description(Random random) {
+    double[] values = new double[FEATURES];
+    for (int i = 0; i < FEATURES; i++) {
+      values[i] = random.nextDouble();
+    }
+    return new Description(values);
+  }
+
+}
@@ -0,0 +1,88 @@
+package ca.uwinnipeg.proximity;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkClose;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameClasses;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.util.List;
+
+import ca.uwinnipeg.proximity.image.EntropyFunc;
+import ca.uwinnipeg.proximity.image.GreenFunc;
+import ca.uwinnipeg.proximity.image.HomogeneityFunc;
+import ca.uwinnipeg.proximity.image.Image;
+import ca.uwinnipeg.proximity.image.RedFunc;
+import ca.uwinnipeg.proximity.image.TestImages;
+
+/**
+ * Checks that measuring a system does not change its results, that an operation running within
+ * another is not reported, and that caches are looked up once per operation.
+ * @author Garrett Smith
+ *
+ */
+public class MetricsCheck {
+
+  public static void run() {
+    Image plain = TestImages.image(25, 19, 4, 9);
+    plain.addProbeFunc(new RedFunc());
+    plain.addProbeFunc(new GreenFunc());
+    Image measured = TestImages.image(25, 19, 4, 9);
+    measured.addProbeFunc(new RedFunc());
+    measured.addProbeFunc(new GreenFunc());
+    SimpleMetrics metrics = new SimpleMetrics();
+    measured.setMetrics(metrics);
+
+    List<Integer> A = Checks.range(0, 180);
+    List<Integer> B = Checks.range(120, 400);
+    checkSameIndices(plain.hybridIntersection(A, B, 0.2, SUBSCRIBER),
+        measured.hybridIntersection(A, B, 0.2, SUBSCRIBER), "measured hybrid intersection");
+    checkSameIndices(plain.hybridDifference(A, B, 0.2, SUBSCRIBER),
+        measured.hybridDifference(A, B, 0.2, SUBSCRIBER), "measured hybrid difference");
+    checkSameIndices(plain.compliment(A, SUBSCRIBER), measured.compliment(A, SUBSCRIBER),
+        "measured compliment");
+    checkSameClasses(plain.toleranceClasses(A, 0.3, SUBSCRIBER),
+        measured.toleranceClasses(A, 0.3, SUBSCRIBER), "measured tolerance classes");
+    checkClose(plain.nearnessMeasure(A, B, 0.3, SUBSCRIBER),
+        measured.nearnessMeasure(A, B, 0.3, SUBSCRIBER), 0, "measured nearness measure");
+
+    checkEquals(1L, metrics.getOperation("hybridIntersection").count, "intersections reported");
+    checkEquals(1L, metrics.getOperation("toleranceClasses").count, "tolerance classes reported");
+    checkEquals(1L, metrics.getOperation("nearnessMeasure").count, "nearness measures reported");
+
+    // the compliment is a difference, and the nearness measure groups by tolerance classes
+    metrics.reset();
+    measured.compliment(A, SUBSCRIBER);
+    measured.nearnessMeasure(A, B, 0.3, SUBSCRIBER);
+    checkEquals(1L, metrics.getOperation("difference").count, "outer difference reported");
+    checkEquals(1L, metrics.getOperation("nearnessMeasure").count, "outer measure reported");
+    check(metrics.getOperation("toleranceClasses") == null, "inner tolerance classes reported");
+
+    // each operation looks the features up once, only the first misses
+    Image cached = TestImages.image(25, 19, 4, 9);
+    cached.addProbeFunc(new RedFunc());
+    cached.setCaching(true);
+    SimpleMetrics cacheMetrics = new SimpleMetrics();
+    cached.setMetrics(cacheMetrics);
+    checkClose(0, cacheMetrics.getHitRate(PerceptualSystem.FEATURE_CACHE), 0, "unused cache");
+    cached.hybridIntersection(A, B, 0.2, SUBSCRIBER);
+    checkClose(0, cacheMetrics.getHitRate(PerceptualSystem.FEATURE_CACHE), 0, "first operation");
+    for (int i = 0; i < 3; i++) {
+      cached.compliment(A, SUBSCRIBER);
+    }
+    checkClose(0.75, cacheMetrics.getHitRate(PerceptualSystem.FEATURE_CACHE), 0,
+        "hit rate after repeated operations");
+
+    // textures are looked up once per operation and configuration, not once per pixel
+    Image textured = TestImages.image(25, 19, 4, 9);
+    textured.addProbeFunc(new HomogeneityFunc());
+    textured.addProbeFunc(new EntropyFunc());
+    SimpleMetrics textureMetrics = new SimpleMetrics();
+    textured.setMetrics(textureMetrics);
+    textured.hybridIntersection(A, B, 0.2, SUBSCRIBER);
+    textured.hybridIntersection(A, B, 0.2, SUBSCRIBER);
+    checkClose(0.5, textureMetrics.getHitRate(Image.TEXTURE_CACHE), 0, "texture hit rate");
+  }
+
+}
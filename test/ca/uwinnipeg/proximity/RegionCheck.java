@@ -0,0 +1,113 @@
+package ca.uwinnipeg.proximity;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+import static ca.uwinnipeg.proximity.Checks.sorted;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import ca.uwinnipeg.proximity.image.BlueFunc;
+import ca.uwinnipeg.proximity.image.Image;
+import ca.uwinnipeg.proximity.image.RedFunc;
+
+/**
+ * Checks the region algebra against sorted sets, the region operations of a system against the
+ * list operations, and that indices outside the universe are rejected.
+ * @author Garrett Smith
+ *
+ */
+public class RegionCheck {
+
+  private static final int WIDTH = 27;
+  private static final int HEIGHT = 19;
+  private static final int SIZE = WIDTH * HEIGHT;
+
+  public static void run() {
+    Random random = new Random(6);
+    for (int trial = 0; trial < 20; trial++) {
+      List<Integer> a = randomIndices(random, random.nextInt(SIZE));
+      List<Integer> b = randomIndices(random, random.nextInt(SIZE));
+      checkAlgebra(a, b);
+      checkSystem(random, a, b);
+    }
+    checkInvalid();
+  }
+
+  private static void checkAlgebra(List<Integer> a, List<Integer> b) {
+    Region A = new Region(SIZE, a);
+    Region B = new Region(SIZE, b);
+    TreeSet<Integer> setA = new TreeSet<Integer>(a);
+    TreeSet<Integer> setB = new TreeSet<Integer>(b);
+
+    TreeSet<Integer> union = new TreeSet<Integer>(setA);
+    union.addAll(setB);
+    TreeSet<Integer> both = new TreeSet<Integer>(setA);
+    both.retainAll(setB);
+    TreeSet<Integer> onlyA = new TreeSet<Integer>(setA);
+    onlyA.removeAll(setB);
+    TreeSet<Integer> notA = new TreeSet<Integer>(Checks.range(0, SIZE));
+    notA.removeAll(setA);
+
+    checkEquals(setA.size(), A.size(), "size");
+    checkEquals(new ArrayList<Integer>(union), A.union(B).toList(), "union");
+    checkEquals(new ArrayList<Integer>(both), A.intersection(B).toList(), "intersection");
+    checkEquals(new ArrayList<Integer>(onlyA), A.difference(B).toList(), "difference");
+    checkEquals(new ArrayList<Integer>(notA), A.compliment().toList(), "compliment");
+    checkEquals(A, new Region(SIZE, A.toArray()), "array round trip");
+  }
+
+  private static void checkSystem(Random random, List<Integer> a, List<Integer> b) {
+    int[] pixels = new int[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      pixels[i] = 0xFF000000 | (random.nextInt(5) * 0x30 << 16) | random.nextInt(5) * 0x30;
+    }
+    Image image = new Image(pixels, WIDTH, HEIGHT);
+    image.addProbeFunc(new RedFunc());
+    image.addProbeFunc(new BlueFunc());
+    Region A = new Region(SIZE, a);
+    Region B = new Region(SIZE, b);
+
+    checkSameIndices(image.intersection(a, b, SUBSCRIBER),
+        image.intersection(A, B, SUBSCRIBER).toList(), "system intersection");
+    checkSameIndices(image.difference(a, b, SUBSCRIBER),
+        image.difference(A, B, SUBSCRIBER).toList(), "system difference");
+    List<Integer> compliment = image.compliment(a, SUBSCRIBER);
+    checkEquals(sorted(compliment), compliment, "compliment in ascending order");
+    checkEquals(compliment, image.compliment(A, SUBSCRIBER).toList(), "system compliment");
+  }
+
+  private static void checkInvalid() {
+    int[] outside = {-1, SIZE};
+    for (int index : outside) {
+      try {
+        new Region(SIZE).add(index);
+        throw new AssertionError("added " + index);
+      }
+      catch (IndexOutOfBoundsException e) {}
+    }
+    try {
+      new Region(SIZE).union(new Region(SIZE + 1));
+      throw new AssertionError("united regions of different universes");
+    }
+    catch (IllegalArgumentException e) {}
+    Image image = new Image(new int[SIZE], WIDTH, HEIGHT);
+    try {
+      image.difference(new Region(SIZE), new Region(SIZE - 1), SUBSCRIBER);
+      throw new AssertionError("system accepted a region of a different universe");
+    }
+    catch (IllegalArgumentException e) {}
+  }
+
+  // Distinct indices in random order, as a region cannot hold an index twice
+  private static List<Integer> randomIndices(Random random, int count) {
+    List<Integer> indices = Checks.range(0, SIZE);
+    Collections.shuffle(indices, random);
+    return new ArrayList<Integer>(indices.subList(0, count));
+  }
+
+}
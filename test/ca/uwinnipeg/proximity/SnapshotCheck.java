@@ -0,0 +1,109 @@
+package ca.uwinnipeg.proximity;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import ca.uwinnipeg.proximity.image.BlueFunc;
+import ca.uwinnipeg.proximity.image.Image;
+import ca.uwinnipeg.proximity.image.RedFunc;
+import ca.uwinnipeg.proximity.image.TestImages;
+
+/**
+ * Checks features loaded from a snapshot against calculating them, and that snapshots of other
+ * objects or probe functions are ignored and damaged ones rejected.
+ * @author Garrett Smith
+ *
+ */
+public class SnapshotCheck {
+
+  private static final int WIDTH = 23;
+  private static final int HEIGHT = 17;
+
+  public static void run() throws IOException {
+    File file = File.createTempFile("features", ".pxfs");
+    try {
+      image(5).saveFeatures(file);
+
+      Image loaded = image(5);
+      check(loaded.loadFeatures(file), "snapshot loaded");
+      check(loaded.isCaching(), "loading enables caching");
+      Image fresh = image(5);
+      fresh.setCaching(true);
+      FeatureStore expected = fresh.getFeatureStore();
+      FeatureStore actual = loaded.getFeatureStore();
+      checkEquals(expected.size(), actual.size(), "snapshot size");
+      checkEquals(expected.getFeatureCount(), actual.getFeatureCount(), "snapshot features");
+      for (int i = 0; i < expected.size(); i++) {
+        for (int j = 0; j < expected.getFeatureCount(); j++) {
+          checkEquals(expected.getValue(i, j), actual.getValue(i, j),
+              "snapshot value " + i + " " + j);
+        }
+      }
+      List<Integer> A = Checks.range(0, 150);
+      List<Integer> B = Checks.range(100, 391);
+      checkSameIndices(fresh.hybridIntersection(A, B, 0.2, SUBSCRIBER),
+          loaded.hybridIntersection(A, B, 0.2, SUBSCRIBER), "snapshot hybrid intersection");
+
+      // other pixels or probe functions have another key
+      check(!image(6).loadFeatures(file), "snapshot of other pixels loaded");
+      Image more = image(5);
+      more.addProbeFunc(new BlueFunc());
+      check(!more.loadFeatures(file), "snapshot of other probe functions loaded");
+    }
+    finally {
+      file.delete();
+    }
+    check(!image(5).loadFeatures(file), "missing snapshot loaded");
+    checkDamaged();
+  }
+
+  // A separate file, as the loaded features stay mapped to the first
+  private static void checkDamaged() throws IOException {
+    File file = File.createTempFile("damaged", ".pxfs");
+    try {
+      image(5).saveFeatures(file);
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength(raf.length() - 8);
+      }
+      finally {
+        raf.close();
+      }
+      checkRejected(file, "truncated snapshot");
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+      }
+      finally {
+        out.close();
+      }
+      checkRejected(file, "file that is not a snapshot");
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  private static Image image(int seed) {
+    Image image = TestImages.image(WIDTH, HEIGHT, 6, seed);
+    image.addProbeFunc(new RedFunc());
+    return image;
+  }
+
+  private static void checkRejected(File file, String message) {
+    try {
+      image(5).loadFeatures(file);
+      throw new AssertionError(message + " loaded");
+    }
+    catch (IOException e) {}
+  }
+
+}
@@ -0,0 +1,145 @@
+package ca.uwinnipeg.proximity;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.checkClose;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameClasses;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import ca.uwinnipeg.proximity.image.GreenFunc;
+import ca.uwinnipeg.proximity.image.Image;
+import ca.uwinnipeg.proximity.image.RedFunc;
+
+/**
+ * Checks maximal tolerance classes against enumerating every set of descriptions, and the
+ * tolerance nearness measure against its definition over those classes.
+ * @author Garrett Smith
+ *
+ */
+public class ToleranceCheck {
+
+  private static final double TOLERANCE = 1e-12;
+
+  public static void run() {
+    Random random = new Random(2);
+    DistanceMetric[] metrics = {
+        new EuclideanMetric(), new ManhattanMetric(), new ChebyshevMetric()};
+    for (DistanceMetric metric : metrics) {
+      for (double epsilon : new double[] {0, 0.1, 0.3, 0.6}) {
+        for (int size : new int[] {1, 5, 12}) {
+          Description[] descs = new Description[size];
+          for (int i = 0; i < size; i++) {
+            descs[i] = new Description(new double[] {random.nextDouble(), random.nextDouble()});
+          }
+          checkEquals(cliques(descs, epsilon, metric),
+              new HashSet<BitSet>(new ToleranceSpace(descs, epsilon, metric)
+                  .toleranceClasses(SUBSCRIBER)),
+              metric + " epsilon " + epsilon + " size " + size);
+        }
+      }
+    }
+    checkSystem();
+  }
+
+  // Tolerance classes and the nearness measure of regions of an image
+  private static void checkSystem() {
+    int width = 20, height = 15;
+    int[] pixels = new int[width * height];
+    Random random = new Random(4);
+    for (int i = 0; i < pixels.length; i++) {
+      // few distinct descriptions so every set of them can be enumerated
+      pixels[i] = 0xFF000000 | (random.nextInt(4) * 0x50 << 16) | (random.nextInt(3) * 0x70 << 8);
+    }
+    Image image = new Image(pixels, width, height);
+    image.addProbeFunc(new RedFunc());
+    image.addProbeFunc(new GreenFunc());
+    List<Integer> A = Checks.range(0, 130);
+    List<Integer> B = Checks.range(100, 300);
+
+    for (double epsilon : new double[] {0, 0.25, 0.5, 1}) {
+      String name = "image epsilon " + epsilon;
+      // the distinct descriptions of the union and the objects with each
+      List<Description> descs = new ArrayList<Description>();
+      List<List<Integer>> objects = new ArrayList<List<Integer>>();
+      for (int i = 0; i < 300; i++) {
+        Description desc = image.getDescription(i);
+        int d = descs.indexOf(desc);
+        if (d < 0) {
+          d = descs.size();
+          descs.add(desc);
+          objects.add(new ArrayList<Integer>());
+        }
+        objects.get(d).add(i);
+      }
+      Set<BitSet> classes = cliques(
+          descs.toArray(new Description[descs.size()]), epsilon, image.getDistanceMetric());
+
+      List<List<Integer>> expected = new ArrayList<List<Integer>>();
+      double weighted = 0, total = 0;
+      for (BitSet c : classes) {
+        List<Integer> members = new ArrayList<Integer>();
+        for (int d = c.nextSetBit(0); d >= 0; d = c.nextSetBit(d + 1)) {
+          members.addAll(objects.get(d));
+        }
+        expected.add(members);
+        int inA = 0, inB = 0;
+        for (int i : members) {
+          if (i < 130) inA++;
+          if (i >= 100) inB++;
+        }
+        total += members.size();
+        if (inA > 0 && inB > 0) {
+          weighted += members.size() * (double) Math.min(inA, inB) / Math.max(inA, inB);
+        }
+      }
+      checkSameClasses(expected, image.toleranceClasses(Checks.range(0, 300), epsilon, SUBSCRIBER),
+          name + " tolerance classes");
+      checkClose(weighted / total, image.nearnessMeasure(A, B, epsilon, SUBSCRIBER), TOLERANCE,
+          name + " nearness measure");
+      checkClose(1, image.nearnessMeasure(A, A, epsilon, SUBSCRIBER), TOLERANCE,
+          name + " nearness of a region to itself");
+    }
+  }
+
+  // Every maximal set of descriptions that are all within epsilon of each other
+  private static Set<BitSet> cliques(Description[] descs, double epsilon, DistanceMetric metric) {
+    int n = descs.length;
+    List<BitSet> tolerant = new ArrayList<BitSet>();
+    for (int mask = 1; mask < (1 << n); mask++) {
+      BitSet set = new BitSet(n);
+      for (int i = 0; i < n; i++) {
+        if ((mask & (1 << i)) != 0) set.set(i);
+      }
+      boolean ok = true;
+      for (int i = set.nextSetBit(0); ok && i >= 0; i = set.nextSetBit(i + 1)) {
+        for (int j = set.nextSetBit(i + 1); ok && j >= 0; j = set.nextSetBit(j + 1)) {
+          ok = metric.distance(descs[i], descs[j]) < epsilon;
+        }
+      }
+      if (ok) tolerant.add(set);
+    }
+    Set<BitSet> maximal = new HashSet<BitSet>();
+    for (BitSet set : tolerant) {
+      boolean isMaximal = true;
+      for (BitSet other : tolerant) {
+        if (other.cardinality() > set.cardinality()) {
+          BitSet tmp = (BitSet) set.clone();
+          tmp.andNot(other);
+          if (tmp.isEmpty()) {
+            isMaximal = false;
+            break;
+          }
+        }
+      }
+      if (isMaximal) maximal.add(set);
+    }
+    return maximal;
+  }
+
+}
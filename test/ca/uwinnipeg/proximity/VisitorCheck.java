@@ -0,0 +1,89 @@
+package ca.uwinnipeg.proximity;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameClasses;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uwinnipeg.proximity.PerceptualSystem.ClassVisitor;
+import ca.uwinnipeg.proximity.PerceptualSystem.ObjectVisitor;
+import ca.uwinnipeg.proximity.image.BlueFunc;
+import ca.uwinnipeg.proximity.image.Image;
+import ca.uwinnipeg.proximity.image.RedFunc;
+import ca.uwinnipeg.proximity.image.TestImages;
+
+/**
+ * Checks the streaming neighbourhoods and equivalence classes against the methods returning
+ * lists, with and without cached features, and that a visitor can stop a method early.
+ * @author Garrett Smith
+ *
+ */
+public class VisitorCheck {
+
+  public static void run() {
+    for (boolean caching : new boolean[] {false, true}) {
+      Image image = TestImages.image(29, 21, 4, 17);
+      image.addProbeFunc(new RedFunc());
+      image.addProbeFunc(new BlueFunc());
+      image.setCaching(caching);
+      String name = caching ? "cached" : "uncached";
+      List<Integer> all = image.objectsIndicesList();
+
+      for (double epsilon : new double[] {0, 0.1, 0.4}) {
+        for (int x : new int[] {0, 250, all.size() - 1}) {
+          Collector collector = new Collector(Integer.MAX_VALUE);
+          check(image.hybridNeighbourhood(x, all, epsilon, collector, SUBSCRIBER),
+              name + " visited every object");
+          // streamed objects come in the order of the region, as the list does
+          checkEquals(image.hybridNeighbourhood(x, all, epsilon, SUBSCRIBER), collector.mIndices,
+              name + " neighbourhood of " + x + " epsilon " + epsilon);
+        }
+      }
+      Collector equal = new Collector(Integer.MAX_VALUE);
+      image.neighbourhood(3, all, equal, SUBSCRIBER);
+      checkEquals(image.neighbourhood(3, all, SUBSCRIBER), equal.mIndices,
+          name + " description-based neighbourhood");
+
+      // stopping early visits exactly as many objects as asked
+      Collector stopping = new Collector(5);
+      check(!image.hybridNeighbourhood(0, all, 0.4, stopping, SUBSCRIBER), name + " stopped");
+      checkEquals(5, stopping.mIndices.size(), name + " objects visited before stopping");
+
+      List<Integer> region = Checks.range(40, 160);
+      final List<List<Integer>> classes = new ArrayList<List<Integer>>();
+      check(image.equivalenceClasses(region, new ClassVisitor() {
+        @Override
+        public boolean visit(int equivClass, int index) {
+          while (classes.size() <= equivClass) {
+            classes.add(new ArrayList<Integer>());
+          }
+          classes.get(equivClass).add(index);
+          return true;
+        }
+      }, SUBSCRIBER), name + " visited every class");
+      checkSameClasses(image.equivalenceClasses(region, SUBSCRIBER), classes,
+          name + " equivalence classes");
+    }
+  }
+
+  // Collects the objects visited, stopping after the given number
+  private static class Collector implements ObjectVisitor {
+
+    private final List<Integer> mIndices = new ArrayList<Integer>();
+    private final int mLimit;
+
+    public Collector(int limit) {
+      mLimit = limit;
+    }
+
+    @Override
+    public boolean visit(int index) {
+      mIndices.add(index);
+      return mIndices.size() < mLimit;
+    }
+  }
+
+}
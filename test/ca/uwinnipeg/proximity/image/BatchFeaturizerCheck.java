@@ -0,0 +1,123 @@
+package ca.uwinnipeg.proximity.image;
+
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ca.uwinnipeg.proximity.FeatureStore;
+import ca.uwinnipeg.proximity.image.BatchFeaturizer.Result;
+
+/**
+ * Checks the features of images featurised in a batch against featurising each image on its
+ * own, and that a full featurizer holds back further images until a result is taken.
+ * @author Garrett Smith
+ *
+ */
+public class BatchFeaturizerCheck {
+
+  private static final int WIDTH = 24;
+  private static final int HEIGHT = 17;
+  private static final int IMAGES = 12;
+
+  public static void run() throws Exception {
+    checkFeatures();
+    checkBackpressure();
+  }
+
+  private static void checkFeatures() throws Exception {
+    List<ImageFunc> funcs = new ArrayList<ImageFunc>();
+    funcs.add(new RedFunc());
+    funcs.add(new PerceptualGrayScaleFunc());
+    funcs.add(new HomogeneityFunc());
+    funcs.add(new EntropyFunc());
+    final BatchFeaturizer batch = new BatchFeaturizer(funcs, 3, 2);
+
+    final Map<Integer, int[]> pixels = new HashMap<Integer, int[]>();
+    for (int i = 0; i < IMAGES; i++) {
+      pixels.put(i, TestImages.pixels(WIDTH, HEIGHT, 8, i));
+    }
+    // submit from another thread as the featurizer holds fewer images than are submitted
+    final Throwable[] failure = new Throwable[1];
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < IMAGES; i++) {
+            batch.submit(i, pixels.get(i), WIDTH, HEIGHT);
+          }
+          batch.submit("broken", null, WIDTH, HEIGHT);
+        }
+        catch (Throwable t) {
+          failure[0] = t;
+        }
+      }
+    };
+    producer.start();
+
+    for (int r = 0; r <= IMAGES; r++) {
+      Result result = batch.take();
+      if ("broken".equals(result.tag)) {
+        check(result.error != null, "broken image reported an error");
+        check(result.getFeatures() == null, "broken image has features");
+        continue;
+      }
+      check(result.error == null, "image " + result.tag + " failed: " + result.error);
+      Image image = new Image(pixels.get(result.tag), WIDTH, HEIGHT);
+      for (ImageFunc func : funcs) {
+        image.addProbeFunc(func);
+      }
+      image.setCaching(true);
+      FeatureStore expected = image.getFeatureStore();
+      FeatureStore actual = result.getFeatures();
+      for (int i = 0; i < expected.size(); i++) {
+        for (int j = 0; j < expected.getFeatureCount(); j++) {
+          checkEquals(expected.getValue(i, j), actual.getValue(i, j),
+              "image " + result.tag + " value " + i + " " + j);
+        }
+      }
+    }
+    producer.join();
+    check(failure[0] == null, "submitting failed: " + failure[0]);
+    checkEquals((long) IMAGES, batch.getImageCount(), "images counted");
+    check(batch.getPixelsPerSecond() > 0, "throughput measured");
+    check(batch.poll() == null, "more results than images");
+    batch.shutdown();
+    check(batch.awaitTermination(10, TimeUnit.SECONDS), "featurizer stopped");
+  }
+
+  private static void checkBackpressure() throws Exception {
+    List<ImageFunc> funcs = new ArrayList<ImageFunc>();
+    funcs.add(new GreenFunc());
+    final BatchFeaturizer batch = new BatchFeaturizer(funcs, 1, 1);
+    final int[] pixels = TestImages.pixels(WIDTH, HEIGHT, 4, 3);
+    batch.submit(0, pixels, WIDTH, HEIGHT);
+    batch.submit(1, pixels, WIDTH, HEIGHT);
+
+    final CountDownLatch submitted = new CountDownLatch(1);
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          batch.submit(2, pixels, WIDTH, HEIGHT);
+          submitted.countDown();
+        }
+        catch (InterruptedException e) {}
+      }
+    };
+    producer.start();
+    check(!submitted.await(200, TimeUnit.MILLISECONDS), "submitted to a full featurizer");
+    batch.take();
+    check(submitted.await(10, TimeUnit.SECONDS), "taking a result did not make room");
+    batch.take();
+    batch.take();
+    batch.shutdown();
+    check(batch.awaitTermination(10, TimeUnit.SECONDS), "featurizer stopped");
+  }
+
+}
@@ -0,0 +1,84 @@
+package ca.uwinnipeg.proximity.image;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameClasses;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ca.uwinnipeg.proximity.DescriptionKeys;
+
+/**
+ * Checks grouping by description keys against grouping by hashed descriptions, and the radix sort
+ * of the keys against a comparison sort.
+ * @author Garrett Smith
+ *
+ */
+public class DescriptionKeysCheck {
+
+  public static void run() {
+    checkSort();
+    checkKeyedAgainstHashed();
+  }
+
+  private static void checkSort() {
+    Random random = new Random(3);
+    // both digit sizes and keys of several widths
+    int[] sizes = {0, 1, 17, 5000, 70000};
+    long[] bounds = {1, 256, 1L << 24, 1L << 40, Long.MAX_VALUE};
+    for (int n : sizes) {
+      for (long bound : bounds) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+          keys[i] = (random.nextLong() & Long.MAX_VALUE) % bound;
+        }
+        int[] order = DescriptionKeys.sort(keys);
+        for (int k = 1; k < n; k++) {
+          long prev = keys[order[k - 1]];
+          long key = keys[order[k]];
+          check(prev < key || (prev == key && order[k - 1] < order[k]),
+              "sort of " + n + " keys below " + bound + " at " + k);
+        }
+      }
+    }
+  }
+
+  private static void checkKeyedAgainstHashed() {
+    int[] pixels = TestImages.pixels(45, 31, 3, 9);
+    Image keyed = new Image(pixels, 45, 31);
+    keyed.addProbeFunc(new RedFunc());
+    keyed.addProbeFunc(new BlueFunc());
+    keyed.addProbeFunc(new PerceptualGrayScaleFunc());
+
+    // a subclass of a channel has no keys
+    Image hashed = new Image(pixels, 45, 31);
+    hashed.addProbeFunc(new RedFunc() {});
+    hashed.addProbeFunc(new BlueFunc());
+    hashed.addProbeFunc(new PerceptualGrayScaleFunc());
+
+    List<Integer> A = indices(keyed, 0, 0, 30, 20);
+    List<Integer> B = indices(keyed, 15, 10, 45, 31);
+    check(hashed.getDescriptionKeys(A) == null, "keys of a subclass of a channel");
+    check(new Image(pixels, 45, 31).getDescriptionKeys(A) == null, "keys without probe functions");
+    checkEquals(A.size(), keyed.getDescriptionKeys(A).length, "keys of channels");
+    checkSameClasses(hashed.equivalenceClasses(A, SUBSCRIBER),
+        keyed.equivalenceClasses(A, SUBSCRIBER), "keyed equivalence classes");
+    checkSameIndices(hashed.intersection(A, B, SUBSCRIBER),
+        keyed.intersection(A, B, SUBSCRIBER), "keyed intersection");
+    checkSameIndices(hashed.difference(A, B, SUBSCRIBER),
+        keyed.difference(A, B, SUBSCRIBER), "keyed difference");
+  }
+
+  private static List<Integer> indices(Image image, int left, int top, int right, int bottom) {
+    List<Integer> rtn = new ArrayList<Integer>();
+    for (int i : image.getIndices(left, top, right, bottom)) {
+      rtn.add(i);
+    }
+    return rtn;
+  }
+
+}
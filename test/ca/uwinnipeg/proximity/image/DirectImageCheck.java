@@ -0,0 +1,152 @@
+package ca.uwinnipeg.proximity.image;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameClasses;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks images with pixels and features off the heap against the same images on the heap, and
+ * the contract of a direct image once closed.
+ * @author Garrett Smith
+ *
+ */
+public class DirectImageCheck {
+
+  private static final int WIDTH = 33;
+  private static final int HEIGHT = 27;
+
+  public static void run() {
+    for (boolean shared : new boolean[] {false, true}) {
+      checkAgainstHeap(shared);
+    }
+    checkEquality();
+    checkSubImage();
+    checkClosed();
+  }
+
+  private static void checkAgainstHeap(boolean shared) {
+    Image heap = image();
+    Image direct = image();
+    direct.setDirect(true, shared);
+    String name = shared ? "shared" : "confined";
+
+    checkEquals(heap.getObjectCount(), direct.getObjectCount(), name + " object count");
+    check(Arrays.equals(heap.getPixels(), direct.getPixels()), name + " pixels");
+    for (int i = 0; i < heap.getSize(); i++) {
+      checkEquals(heap.getDescription(i), direct.getDescription(i), name + " description " + i);
+    }
+    List<Integer> all = heap.objectsIndicesList();
+    List<Integer> block = Arrays.asList(0, 1, 2, WIDTH, WIDTH + 1, 5 * WIDTH + 9);
+    checkSameIndices(heap.hybridNeighbourhood(40, all, 0.15, SUBSCRIBER),
+        direct.hybridNeighbourhood(40, all, 0.15, SUBSCRIBER), name + " neighbourhood");
+    checkSameIndices(heap.hybridIntersection(block, all, 0.15, SUBSCRIBER),
+        direct.hybridIntersection(block, all, 0.15, SUBSCRIBER), name + " intersection");
+    checkSameClasses(heap.equivalenceClasses(all, SUBSCRIBER),
+        direct.equivalenceClasses(all, SUBSCRIBER), name + " equivalence classes");
+
+    // updates and moving back to the heap keep the pixels and features
+    int[] next = heap.getPixels();
+    next[3] = 0xFFFFFFFF;
+    next[WIDTH * 10 + 4] = 0xFF000000;
+    heap.update(next, null);
+    direct.update(next, null);
+    for (int i = 0; i < heap.getSize(); i++) {
+      checkEquals(heap.getDescription(i), direct.getDescription(i), name + " updated " + i);
+    }
+    direct.setDirect(false);
+    check(Arrays.equals(next, direct.getPixels()), name + " pixels moved back to the heap");
+    direct.close();
+  }
+
+  private static void checkEquality() {
+    Image a = image();
+    Image b = image();
+    a.setDirect(true);
+    b.setDirect(true);
+    check(a.equals(a), "a direct image equals itself");
+    checkEquals(a.hashCode(), a.hashCode(), "hash code");
+    check(!a.equals(b) && !b.equals(a), "direct images with their own pixels are different");
+    check(!a.equals(image()) && !image().equals(a), "direct and heap images differ");
+
+    // moving the pixels keeps the image in hashed collections
+    Set<Image> images = new HashSet<Image>();
+    images.add(a);
+    int hash = a.hashCode();
+    for (boolean direct : new boolean[] {false, true, false}) {
+      a.setDirect(direct);
+      checkEquals(hash, a.hashCode(), "hash code after moving to direct " + direct);
+      check(images.contains(a), "image found after moving to direct " + direct);
+    }
+    a.close();
+    b.close();
+  }
+
+  // The pixels of a rectangle match reading each pixel, for images on and off the heap
+  private static void checkSubImage() {
+    for (boolean direct : new boolean[] {false, true}) {
+      Image image = image();
+      image.setDirect(direct);
+      int left = 5, top = 3, right = 17, bottom = 11;
+      int[] pixels = image.getPixels(left, top, right, bottom);
+      checkEquals((right - left) * (bottom - top), pixels.length, "rectangle size");
+      int i = 0;
+      for (int y = top; y < bottom; y++) {
+        for (int x = left; x < right; x++) {
+          checkEquals(image.getPixel(y * WIDTH + x), pixels[i++], "rectangle " + x + " " + y);
+        }
+      }
+      image.close();
+    }
+  }
+
+  private static void checkClosed() {
+    final Image image = image();
+    image.setDirect(true);
+    image.getFeatureStore();
+    try {
+      image.removeObject(0);
+      throw new AssertionError("removed a pixel of a direct image");
+    }
+    catch (UnsupportedOperationException e) {}
+
+    image.close();
+    Runnable[] uses = {
+        new Runnable() { public void run() { image.getWidth(); } },
+        new Runnable() { public void run() { image.getSize(); } },
+        new Runnable() { public void run() { image.getObjectCount(); } },
+        new Runnable() { public void run() { image.getPixel(0); } },
+        new Runnable() { public void run() { image.getPixels(); } },
+        new Runnable() { public void run() { image.getDescription(0); } },
+    };
+    for (int u = 0; u < uses.length; u++) {
+      try {
+        uses[u].run();
+        throw new AssertionError("use " + u + " of a closed image did not throw");
+      }
+      catch (IllegalStateException e) {}
+    }
+
+    // setting new pixels opens the image again
+    int[] pixels = TestImages.pixels(WIDTH, HEIGHT, 4, 12);
+    image.set(pixels, WIDTH, HEIGHT);
+    check(image.isDirect(), "still direct");
+    check(Arrays.equals(pixels, image.getPixels()), "pixels after setting again");
+  }
+
+  private static Image image() {
+    Image image = TestImages.image(WIDTH, HEIGHT, 4, 12);
+    image.addProbeFunc(new RedFunc());
+    image.addProbeFunc(new GreenFunc());
+    image.addProbeFunc(new HomogeneityFunc());
+    image.setCaching(true);
+    return image;
+  }
+
+}
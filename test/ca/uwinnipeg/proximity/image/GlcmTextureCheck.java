@@ -0,0 +1,173 @@
+package ca.uwinnipeg.proximity.image;
+
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkClose;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+
+/**
+ * Checks the sliding GLCM texture against co-occurrence matrices counted directly, and in place
+ * updates against a fresh calculation.
+ * @author Garrett Smith
+ *
+ */
+public class GlcmTextureCheck {
+
+  private static final double TOLERANCE = 1e-9;
+
+  public static void run() {
+    checkQuantiseEveryLevelCount();
+    checkAgainstDirectCounts();
+    checkUpdate();
+  }
+
+  // Every accepted level count maps black to 0 and white to the last level, using every level
+  private static void checkQuantiseEveryLevelCount() {
+    int[] white = {0xFFFFFFFF, 0xFFFFFFFF, 0xFF000000, 0xFFFFFFFF};
+    int[][] vectors = {{1, 0}, {0, 1}};
+    for (int levels = 2; levels <= 256; levels++) {
+      for (boolean overlapping : new boolean[] {false, true}) {
+        GlcmConfig config = new GlcmConfig(levels, 2, new int[] {1}, vectors, overlapping);
+        checkEquals(0, config.quantise(0), "black with " + levels + " levels");
+        checkEquals(levels - 1, config.quantise(0xFF), "white with " + levels + " levels");
+        boolean[] used = new boolean[levels];
+        for (int gray = 0; gray <= 0xFF; gray++) {
+          used[config.quantise(gray)] = true;
+        }
+        for (int l = 0; l < levels; l++) {
+          check(used[l], "level " + l + " of " + levels + " is never used");
+        }
+
+        // calculating the texture of a white image must not throw
+        GlcmTexture.calc(new Image(white, 2, 2), config);
+      }
+    }
+    // a single level leaves nothing to normalise the features by
+    for (int levels : new int[] {0, 1, 257}) {
+      try {
+        new GlcmConfig(levels, 2, new int[] {1}, vectors, false);
+        throw new AssertionError("accepted " + levels + " levels");
+      }
+      catch (IllegalArgumentException e) {}
+    }
+  }
+
+  private static void checkAgainstDirectCounts() {
+    int[][] vectors = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}};
+    GlcmConfig[] configs = {
+        new GlcmConfig(8, 5, new int[] {1, 2}, vectors, false),
+        new GlcmConfig(8, 5, new int[] {1, 2}, vectors, true),
+        new GlcmConfig(17, 4, new int[] {1}, vectors, true),
+        new GlcmConfig(3, 3, new int[] {1, 3}, vectors, false),
+    };
+    for (GlcmConfig config : configs) {
+      // 12x13 leaves partial tiles along both edges
+      Image image = TestImages.image(12, 13, 6, 11);
+      GlcmTexture texture = image.getTexture(config);
+      for (int i = 0; i < image.getSize(); i++) {
+        double[] expected = direct(image, config, i);
+        for (int f = 0; f < GlcmTexture.FEATURE_COUNT; f++) {
+          checkClose(expected[f], texture.getValue(f, i), TOLERANCE,
+              config + " feature " + f + " pixel " + i);
+        }
+      }
+    }
+  }
+
+  // Updating in place matches calculating the changed frame from scratch
+  private static void checkUpdate() {
+    int[][] vectors = {{1, 0}, {0, 1}};
+    for (boolean overlapping : new boolean[] {false, true}) {
+      GlcmConfig config = new GlcmConfig(16, 4, new int[] {1, 2}, vectors, overlapping);
+      Image image = TestImages.image(20, 17, 4, 3);
+      image.getTexture(config);
+      int[] next = image.getPixels();
+      next[0] = 0xFFFFFFFF;
+      next[5 * 20 + 7] = 0xFF000000;
+      next[16 * 20 + 19] = 0xFF808080;
+      image.update(next, null);
+
+      GlcmTexture updated = image.getTexture(config);
+      GlcmTexture fresh = GlcmTexture.calc(new Image(next, 20, 17), config);
+      for (int i = 0; i < image.getSize(); i++) {
+        for (int f = 0; f < GlcmTexture.FEATURE_COUNT; f++) {
+          checkEquals(fresh.getValue(f, i), updated.getValue(f, i),
+              "updated feature " + f + " pixel " + i + " overlapping " + overlapping);
+        }
+      }
+    }
+  }
+
+  // Counts the co-occurrence matrix of the window of the pixel and calculates its features
+  private static double[] direct(Image image, GlcmConfig config, int index) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int size = config.getWindowSize();
+    int x = image.getX(index);
+    int y = image.getY(index);
+    int left, top;
+    if (config.isOverlapping()) {
+      left = x - size / 2;
+      top = y - size / 2;
+    }
+    else {
+      left = x / size * size;
+      top = y / size * size;
+      // pixels outside complete tiles have no features
+      if (left + size > width || top + size > height) {
+        return new double[GlcmTexture.FEATURE_COUNT];
+      }
+    }
+    int right = Math.min(left + size, width);
+    int bottom = Math.min(top + size, height);
+    left = Math.max(left, 0);
+    top = Math.max(top, 0);
+
+    int levels = config.getLevels();
+    long[][] counts = new long[levels][levels];
+    long n = 0;
+    for (int ry = top; ry < bottom; ry++) {
+      for (int rx = left; rx < right; rx++) {
+        for (int[] d : config.getDisplacements()) {
+          int nx = rx + d[0];
+          int ny = ry + d[1];
+          if (nx >= left && nx < right && ny >= top && ny < bottom) {
+            counts[level(image, config, rx, ry)][level(image, config, nx, ny)]++;
+            n++;
+          }
+        }
+      }
+    }
+
+    double[] features = new double[GlcmTexture.FEATURE_COUNT];
+    if (n == 0) return features;
+    double meanI = 0, meanJ = 0;
+    for (int i = 0; i < levels; i++) {
+      for (int j = 0; j < levels; j++) {
+        double p = counts[i][j] / (double) n;
+        features[GlcmTexture.HOMOGENEITY] += p / (1 + Math.abs(i - j));
+        features[GlcmTexture.CONTRAST] += p * (i - j) * (i - j);
+        features[GlcmTexture.ENERGY] += p * p;
+        if (p > 0) features[GlcmTexture.ENTROPY] -= p * Math.log(p);
+        meanI += p * i;
+        meanJ += p * j;
+      }
+    }
+    double varI = 0, varJ = 0, cov = 0;
+    for (int i = 0; i < levels; i++) {
+      for (int j = 0; j < levels; j++) {
+        double p = counts[i][j] / (double) n;
+        varI += p * (i - meanI) * (i - meanI);
+        varJ += p * (j - meanJ) * (j - meanJ);
+        cov += p * (i - meanI) * (j - meanJ);
+      }
+    }
+    features[GlcmTexture.CORRELATION] =
+        (varI <= 1e-12 || varJ <= 1e-12) ? 1 : cov / Math.sqrt(varI * varJ);
+    return features;
+  }
+
+  private static int level(Image image, GlcmConfig config, int x, int y) {
+    return config.quantise(PerceptualGrayScaleFunc.grayscale(image.getPixel(x, y)));
+  }
+
+}
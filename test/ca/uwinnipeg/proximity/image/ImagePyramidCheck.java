@@ -0,0 +1,148 @@
+package ca.uwinnipeg.proximity.image;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameClasses;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Checks default pyramid queries against querying the image directly and that their approximation
+ * comes first, inexact queries against the exact ones, and that levels are shared between threads.
+ * @author Garrett Smith
+ *
+ */
+public class ImagePyramidCheck {
+
+  private static final double EPSILON = 0.2;
+
+  public static void run() throws InterruptedException {
+    checkExact();
+    checkApproximate();
+    checkLevels();
+  }
+
+  // A default pyramid gives the same results as the image, after its approximation
+  private static void checkExact() {
+    Image image = image();
+    ImagePyramid pyramid = new ImagePyramid(image);
+    check(pyramid.isExact(), "pyramid exact by default");
+    List<Integer> all = image.objectsIndicesList();
+    List<Integer> A = indices(image, 0, 0, 20, 18);
+    List<Integer> B = indices(image, 12, 9, 37, 29);
+
+    for (int x : new int[] {0, 123, image.getSize() - 1}) {
+      Subscriber<List<Integer>> sub = new Subscriber<List<Integer>>();
+      checkSameIndices(
+          image.hybridNeighbourhood(x, all, EPSILON, SUBSCRIBER),
+          pyramid.hybridNeighbourhood(x, all, EPSILON, sub),
+          "exact neighbourhood of " + x);
+      check(sub.mApproximation != null, "neighbourhood approximation of " + x);
+    }
+    for (double epsilon : new double[] {0.05, EPSILON, 0.5}) {
+      Subscriber<List<Integer>> sub = new Subscriber<List<Integer>>();
+      checkSameIndices(
+          image.hybridIntersection(A, B, epsilon, SUBSCRIBER),
+          pyramid.hybridIntersection(A, B, epsilon, sub),
+          "exact intersection epsilon " + epsilon);
+      check(sub.mApproximation != null, "intersection approximation epsilon " + epsilon);
+    }
+    Subscriber<List<List<Integer>>> sub = new Subscriber<List<List<Integer>>>();
+    checkSameClasses(
+        image.equivalenceClasses(A, SUBSCRIBER),
+        pyramid.equivalenceClasses(A, sub),
+        "exact equivalence classes");
+    check(sub.mApproximation != null, "equivalence classes approximation");
+  }
+
+  // The approximate pass only drops objects, it never adds any
+  private static void checkApproximate() {
+    Image image = image();
+    ImagePyramid pyramid = new ImagePyramid(image);
+    pyramid.setExact(false);
+    List<Integer> all = image.objectsIndicesList();
+    List<Integer> A = indices(image, 0, 0, 20, 18);
+    List<Integer> B = indices(image, 12, 9, 37, 29);
+
+    List<Integer> exact = image.hybridNeighbourhood(123, all, EPSILON, SUBSCRIBER);
+    List<Integer> approx =
+        pyramid.hybridNeighbourhood(123, all, EPSILON, new Subscriber<List<Integer>>());
+    check(new HashSet<Integer>(exact).containsAll(approx), "approximate neighbourhood");
+
+    exact = image.hybridIntersection(A, B, EPSILON, SUBSCRIBER);
+    approx = pyramid.hybridIntersection(A, B, EPSILON, new Subscriber<List<Integer>>());
+    check(new HashSet<Integer>(exact).containsAll(approx), "approximate intersection");
+  }
+
+  // Concurrent lookups of a level all see the same image
+  private static void checkLevels() throws InterruptedException {
+    final Image image = image();
+    final Image[] seen = new Image[8];
+    Thread[] threads = new Thread[seen.length];
+    for (int t = 0; t < threads.length; t++) {
+      final int slot = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          seen[slot] = image.getLevel(1 + slot % 3);
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (int t = 0; t < seen.length; t++) {
+      int level = 1 + t % 3;
+      check(seen[t] == image.getLevel(level), "level " + level + " built twice");
+      checkEquals((image.getWidth() + (1 << level) - 1) >> level, seen[t].getWidth(),
+          "width of level " + level);
+    }
+    check(image.getLevel(0) == image, "level 0 is the image");
+  }
+
+  private static Image image() {
+    Image image = TestImages.image(41, 33, 4, 7);
+    image.addProbeFunc(new RedFunc());
+    image.addProbeFunc(new GreenFunc());
+    image.addProbeFunc(new BlueFunc());
+    return image;
+  }
+
+  private static List<Integer> indices(Image image, int left, int top, int right, int bottom) {
+    List<Integer> rtn = new ArrayList<Integer>();
+    for (int i : image.getIndices(left, top, right, bottom)) {
+      rtn.add(i);
+    }
+    return rtn;
+  }
+
+  // Keeps the approximation, which must come before any progress of the full resolution pass
+  private static class Subscriber<R> implements ImagePyramid.ProgressiveSubscriber<R> {
+
+    private R mApproximation = null;
+    private float mProgress = 0;
+
+    @Override
+    public void onProgressSet(float progress) {
+      mProgress = Math.max(mProgress, progress);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public void onApproximation(R result) {
+      check(mApproximation == null, "approximation given twice");
+      check(mProgress <= 0.3f, "approximation given after the full resolution pass started");
+      mApproximation = result;
+    }
+  }
+
+}
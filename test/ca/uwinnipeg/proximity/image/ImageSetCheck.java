@@ -0,0 +1,101 @@
+package ca.uwinnipeg.proximity.image;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.uwinnipeg.proximity.Description;
+import ca.uwinnipeg.proximity.DescriptionIndex;
+import ca.uwinnipeg.proximity.DistanceMetric;
+import ca.uwinnipeg.proximity.ManhattanMetric;
+
+/**
+ * Checks probing the images of a set with an indexed region against comparing every pair of
+ * descriptions, including after the indexed image is updated in place.
+ * @author Garrett Smith
+ *
+ */
+public class ImageSetCheck {
+
+  private static final int WIDTH = 30;
+  private static final int HEIGHT = 22;
+
+  public static void run() {
+    ImageSet set = new ImageSet();
+    set.addProbeFunc(new RedFunc());
+    set.addProbeFunc(new GreenFunc());
+    for (int seed = 0; seed < 3; seed++) {
+      set.addImage(TestImages.image(WIDTH, HEIGHT, 6, seed));
+    }
+    List<Integer> region = new ArrayList<Integer>();
+    for (int i : set.getImage(0).getIndices(2, 3, 12, 9)) {
+      region.add(i);
+    }
+
+    for (DistanceMetric metric : new DistanceMetric[] {null, new ManhattanMetric()}) {
+      if (metric != null) set.setDistanceMetric(metric);
+      for (double epsilon : new double[] {0.05, 0.2}) {
+        checkProbes(set, region, epsilon);
+      }
+    }
+
+    // the index follows the image it was built from as it is updated
+    Image image = set.getImage(0);
+    DescriptionIndex index = set.index(0, region);
+    int[] next = TestImages.pixels(WIDTH, HEIGHT, 6, 40);
+    image.update(next, index);
+    DescriptionIndex fresh = set.index(0, region);
+    checkEquals(fresh.getDescriptions(), index.getDescriptions(), "updated index descriptions");
+    for (Description desc : fresh.getDescriptions()) {
+      checkSameIndices(fresh.getIndices(desc), index.getIndices(desc), "updated index " + desc);
+      checkEquals(fresh.getCount(desc), index.getCount(desc), "updated count " + desc);
+    }
+    checkProbes(set, region, 0.1);
+  }
+
+  private static void checkProbes(ImageSet set, List<Integer> region, double epsilon) {
+    DistanceMetric metric = set.getDistanceMetric();
+    DescriptionIndex ref = set.index(0, region);
+    Set<Description> refDescs = new HashSet<Description>();
+    for (int i : region) {
+      refDescs.add(set.getImage(0).getDescription(i));
+    }
+
+    List<List<Integer>> near = set.hybridIntersection(ref, epsilon, SUBSCRIBER);
+    List<List<Integer>> far = set.hybridDifference(ref, epsilon, SUBSCRIBER);
+    for (int m = 0; m < set.size(); m++) {
+      Image image = set.getImage(m);
+      List<Integer> all = image.objectsIndicesList();
+      List<Integer> expectedNear = new ArrayList<Integer>();
+      List<Integer> expectedFar = new ArrayList<Integer>();
+      List<Integer> expectedEqual = new ArrayList<Integer>();
+      for (int i : all) {
+        Description desc = image.getDescription(i);
+        boolean isNear = false;
+        for (Description r : refDescs) {
+          isNear |= metric.distance(desc, r) < epsilon;
+        }
+        (isNear ? expectedNear : expectedFar).add(i);
+        if (refDescs.contains(desc)) expectedEqual.add(i);
+      }
+      String name = "image " + m + " " + metric + " epsilon " + epsilon;
+      checkSameIndices(expectedNear, near.get(m), name + " probe all intersection");
+      checkSameIndices(expectedFar, far.get(m), name + " probe all difference");
+      checkSameIndices(expectedNear, set.hybridIntersection(ref, m, all, epsilon, SUBSCRIBER),
+          name + " hybrid intersection");
+      checkSameIndices(expectedFar, set.hybridDifference(m, all, ref, epsilon, SUBSCRIBER),
+          name + " hybrid difference");
+      checkSameIndices(expectedEqual, set.intersection(ref, m, all, SUBSCRIBER),
+          name + " intersection");
+      check(expectedEqual.size() + set.difference(m, all, ref, SUBSCRIBER).size() == all.size(),
+          name + " difference");
+    }
+  }
+
+}
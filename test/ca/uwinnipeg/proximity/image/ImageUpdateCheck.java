@@ -0,0 +1,96 @@
+package ca.uwinnipeg.proximity.image;
+
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import ca.uwinnipeg.proximity.Description;
+import ca.uwinnipeg.proximity.PerceptualSystem.DescriptionListener;
+import ca.uwinnipeg.proximity.Region;
+
+/**
+ * Checks updating an image in place against featurising the next frame from scratch, for frames
+ * with scattered, clustered and mostly changed pixels.
+ * @author Garrett Smith
+ *
+ */
+public class ImageUpdateCheck {
+
+  private static final int WIDTH = 37;
+  private static final int HEIGHT = 29;
+
+  public static void run() {
+    Random random = new Random(5);
+    // fraction of pixels changed, whether changes are clustered
+    float[] fractions = {0.002f, 0.05f, 0.2f, 0.7f, 1};
+    for (float fraction : fractions) {
+      for (boolean clustered : new boolean[] {false, true}) {
+        checkUpdate(random, fraction, clustered);
+      }
+    }
+  }
+
+  private static void checkUpdate(Random random, float fraction, boolean clustered) {
+    String name = fraction + (clustered ? " clustered" : " scattered");
+    Image image = image(TestImages.pixels(WIDTH, HEIGHT, 4, 1));
+    // featurise and build the texture of the first frame
+    for (int i = 0; i < image.getSize(); i++) {
+      image.getDescription(i);
+    }
+
+    int[] next = image.getPixels();
+    int[] other = TestImages.pixels(WIDTH, HEIGHT, 4, 2);
+    Set<Integer> changedPixels = new HashSet<Integer>();
+    int count = (int) (fraction * next.length);
+    int p = 0;
+    for (int n = 0; n < count; n++) {
+      if (clustered && n > 0 && random.nextInt(4) > 0) {
+        // next to the pixel changed before
+        int x = Math.min(Math.max(image.getX(p) + random.nextInt(3) - 1, 0), WIDTH - 1);
+        p = image.getIndex(x, Math.min(image.getY(p) + random.nextInt(2), HEIGHT - 1));
+      }
+      else {
+        p = random.nextInt(next.length);
+      }
+      if (next[p] != other[p]) {
+        next[p] = other[p];
+        changedPixels.add(p);
+      }
+    }
+
+    Image fresh = image(next);
+    final Set<Integer> reported = new HashSet<Integer>();
+    Description[] before = new Description[image.getSize()];
+    for (int i = 0; i < before.length; i++) {
+      before[i] = image.getDescription(i);
+    }
+    Region recalculated = image.update(next, new DescriptionListener() {
+      @Override
+      public void onDescriptionChanged(int index, Description oldDesc, Description newDesc) {
+        reported.add(index);
+      }
+    });
+
+    for (int c : changedPixels) {
+      check(recalculated.contains(c), name + ": changed pixel " + c + " not recalculated");
+    }
+    for (int i = 0; i < image.getSize(); i++) {
+      checkEquals(next[i], image.getPixel(i), name + ": pixel " + i);
+      Description desc = fresh.getDescription(i);
+      checkEquals(desc, image.getDescription(i), name + ": description " + i);
+      checkEquals(!desc.equals(before[i]), reported.contains(i), name + ": reported " + i);
+    }
+  }
+
+  private static Image image(int[] pixels) {
+    Image image = new Image(pixels, WIDTH, HEIGHT);
+    image.addProbeFunc(new RedFunc());
+    image.addProbeFunc(new HomogeneityFunc(
+        new GlcmConfig(8, 5, new int[] {1}, new int[][] {{1, 0}, {0, 1}}, true)));
+    return image;
+  }
+
+}
@@ -0,0 +1,122 @@
+package ca.uwinnipeg.proximity.image;
+
+import static ca.uwinnipeg.proximity.Checks.SUBSCRIBER;
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+import static ca.uwinnipeg.proximity.Checks.checkSameClasses;
+import static ca.uwinnipeg.proximity.Checks.checkSameIndices;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uwinnipeg.proximity.FeatureStore;
+import ca.uwinnipeg.proximity.LazyFeatureStore;
+
+/**
+ * Checks lazy feature stores against calculating every feature up front, that a query on a small
+ * area only featurises the tiles under it, and that concurrent readers see the same features.
+ * @author Garrett Smith
+ *
+ */
+public class LazyFeatureStoreCheck {
+
+  // Partial tiles along the right and bottom edges
+  private static final int WIDTH = Image.TILE_SIZE * 2 + 22;
+  private static final int HEIGHT = Image.TILE_SIZE + 26;
+
+  // Strides sharing no factor with the size, so each thread reads every object
+  private static final int[] STRIDES = {1, 7, 11, 13};
+
+  public static void run() throws Exception {
+    Image eager = image();
+    eager.setCaching(true);
+    FeatureStore expected = eager.getFeatureStore();
+
+    Image lazy = image();
+    lazy.setCaching(true);
+    lazy.setLazy(true);
+    TiledFeatureStore tiled = (TiledFeatureStore) lazy.getFeatureStore();
+    checkEquals(6, tiled.getChunkCount(), "tiles");
+    checkEquals(0, tiled.getComputedChunkCount(), "tiles featurised before use");
+
+    // a block within the first tile
+    List<Integer> block = new ArrayList<Integer>();
+    for (int i : eager.getIndices(3, 5, 40, 30)) {
+      block.add(i);
+    }
+    checkSameIndices(eager.hybridNeighbourhood(block.get(7), block, 0.2, SUBSCRIBER),
+        lazy.hybridNeighbourhood(block.get(7), block, 0.2, SUBSCRIBER), "lazy neighbourhood");
+    checkEquals(1, tiled.getComputedChunkCount(), "tiles featurised by a query on one tile");
+    check(tiled.isComputed(0), "first tile featurised");
+    check(!tiled.isComputed(eager.getSize() - 1), "last tile featurised");
+
+    checkSameValues(expected, tiled, "tiled");
+    checkEquals(tiled.getChunkCount(), tiled.getComputedChunkCount(), "tiles featurised");
+    checkSameClasses(eager.equivalenceClasses(eager.objectsIndicesList(), SUBSCRIBER),
+        lazy.equivalenceClasses(lazy.objectsIndicesList(), SUBSCRIBER), "lazy equivalence classes");
+
+    // chunks that do not divide the objects evenly
+    LazyFeatureStore linear = new LazyFeatureStore(lazy, lazy.getSize(), 3, 1000);
+    checkEquals((lazy.getSize() + 999) / 1000, linear.getChunkCount(), "chunks");
+    checkSameValues(expected, linear, "linear");
+
+    checkConcurrent(expected);
+  }
+
+  // Several threads reading a new store in different orders see the same features
+  private static void checkConcurrent(FeatureStore expected) throws Exception {
+    final Image image = image();
+    final FeatureStore store = new TiledFeatureStore(image, 3, 16);
+    final double[][][] seen = new double[STRIDES.length][][];
+    Thread[] threads = new Thread[seen.length];
+    for (int t = 0; t < threads.length; t++) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          int size = store.size();
+          double[][] values = new double[size][store.getFeatureCount()];
+          for (int n = 0; n < size; n++) {
+            // each thread starts at a different object and steps by a different stride
+            int i = (int) ((thread * 977L + n * (long) STRIDES[thread]) % size);
+            for (int f = 0; f < values[i].length; f++) {
+              values[i][f] = store.getValue(i, f);
+            }
+          }
+          seen[thread] = values;
+        }
+      };
+      threads[t].start();
+    }
+    for (int t = 0; t < threads.length; t++) {
+      threads[t].join();
+      check(seen[t] != null, "thread " + t + " failed");
+      for (int i = 0; i < expected.size(); i++) {
+        for (int f = 0; f < expected.getFeatureCount(); f++) {
+          checkEquals(expected.getValue(i, f), seen[t][i][f],
+              "thread " + t + " value " + i + " " + f);
+        }
+      }
+    }
+  }
+
+  private static void checkSameValues(FeatureStore expected, FeatureStore actual, String name) {
+    checkEquals(expected.size(), actual.size(), name + " size");
+    checkEquals(expected.getFeatureCount(), actual.getFeatureCount(), name + " features");
+    for (int i = 0; i < expected.size(); i++) {
+      for (int f = 0; f < expected.getFeatureCount(); f++) {
+        checkEquals(expected.getValue(i, f), actual.getValue(i, f),
+            name + " value " + i + " " + f);
+      }
+    }
+  }
+
+  private static Image image() {
+    Image image = TestImages.image(WIDTH, HEIGHT, 7, 15);
+    image.addProbeFunc(new RedFunc());
+    image.addProbeFunc(new GreenFunc());
+    image.addProbeFunc(new HomogeneityFunc());
+    return image;
+  }
+
+}
@@ -0,0 +1,122 @@
+package ca.uwinnipeg.proximity.image;
+
+import static ca.uwinnipeg.proximity.Checks.check;
+import static ca.uwinnipeg.proximity.Checks.checkClose;
+import static ca.uwinnipeg.proximity.Checks.checkEquals;
+
+import java.util.Arrays;
+
+import ca.uwinnipeg.proximity.Description;
+import ca.uwinnipeg.proximity.EuclideanMetric;
+import ca.uwinnipeg.proximity.FeatureStore;
+
+/**
+ * Checks that results calculated with reused buffers match those calculated without them, even
+ * when the buffers still hold another image, and that each thread has its own buffers.
+ * @author Garrett Smith
+ *
+ */
+public class ScratchBuffersCheck {
+
+  private static final double TOLERANCE = 1e-12;
+  private static final int WIDTH = 22;
+  private static final int HEIGHT = 19;
+
+  public static void run() throws Exception {
+    checkReuse();
+    checkTextureUpdate();
+    checkPixels();
+    checkFeatureStore();
+  }
+
+  private static void checkReuse() throws Exception {
+    final ScratchBuffers buffers = ScratchBuffers.get();
+    int[] ints = buffers.getInts(100);
+    check(ints == buffers.getInts(100), "buffer of the same size reused");
+    checkEquals(50, buffers.getInts(50).length, "buffer length");
+    check(ints == buffers.getInts(100), "buffer kept after another size");
+    final int[][] other = new int[1][];
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        other[0] = ScratchBuffers.get().getInts(100);
+      }
+    };
+    thread.start();
+    thread.join();
+    check(other[0] != ints, "buffer shared between threads");
+    Object key = new Object();
+    buffers.putObject(key, ints);
+    check(buffers.getObject(key) == ints, "object kept");
+  }
+
+  // Updating a texture with levels of another image left in the buffer matches a fresh texture
+  private static void checkTextureUpdate() {
+    int[][] vectors = {{1, 0}, {0, 1}, {1, 1}};
+    for (boolean overlapping : new boolean[] {false, true}) {
+      GlcmConfig config = new GlcmConfig(16, 5, new int[] {1, 2}, vectors, overlapping);
+      Image image = TestImages.image(WIDTH, HEIGHT, 6, 4);
+      image.getTexture(config);
+      Object window = ScratchBuffers.get().getObject(config);
+      check(window != null, config + " window kept");
+      for (int frame = 0; frame < 3; frame++) {
+        Arrays.fill(ScratchBuffers.get().getInts(image.getSize()), config.getLevels() - 1);
+        int[] next = image.getPixels();
+        next[frame * 37] = 0xFFFFFFFF;
+        next[WIDTH * (HEIGHT - 1) + frame] = 0xFF000000;
+        next[WIDTH * 9 + 11] ^= 0x00FFFFFF;
+        image.update(next, null);
+        GlcmTexture expected = GlcmTexture.calc(new Image(next, WIDTH, HEIGHT), config);
+        GlcmTexture actual = image.getTexture(config);
+        for (int i = 0; i < image.getSize(); i++) {
+          for (int f = 0; f < GlcmTexture.FEATURE_COUNT; f++) {
+            checkClose(expected.getValue(f, i), actual.getValue(f, i), TOLERANCE,
+                config + " frame " + frame + " feature " + f + " pixel " + i);
+          }
+        }
+      }
+      check(window == ScratchBuffers.get().getObject(config), config + " window reused");
+    }
+  }
+
+  // Copying into a used buffer longer than the image gives the same pixels as a new array
+  private static void checkPixels() {
+    for (boolean direct : new boolean[] {false, true}) {
+      Image image = TestImages.image(WIDTH, HEIGHT, 8, 6);
+      image.setDirect(direct);
+      int[] expected = image.getPixels();
+      int[] dest = new int[image.getSize() + 5];
+      Arrays.fill(dest, 0x12345678);
+      check(dest == image.getPixels(dest), "pixels copied into the given array");
+      check(Arrays.equals(expected, Arrays.copyOf(dest, expected.length)),
+          (direct ? "direct" : "heap") + " pixels copied");
+      checkEquals(0x12345678, dest[expected.length], "pixels copied past the image");
+      image.close();
+    }
+  }
+
+  // Comparing against the feature store matches comparing descriptions
+  private static void checkFeatureStore() {
+    Image image = TestImages.image(WIDTH, HEIGHT, 4, 8);
+    image.addProbeFunc(new RedFunc());
+    image.addProbeFunc(new GreenFunc());
+    image.addProbeFunc(new BlueFunc());
+    image.setCaching(true);
+    FeatureStore store = image.getFeatureStore();
+    EuclideanMetric metric = new EuclideanMetric();
+    Description[] queries = {
+        image.getDescription(0),
+        image.getDescription(image.getSize() - 1),
+        new Description(new double[] {0.5, 0.25, 1}),
+    };
+    for (Description query : queries) {
+      for (int i = 0; i < image.getSize(); i++) {
+        Description desc = image.getDescription(i);
+        checkEquals(metric.isNear(desc, query, 0.3), metric.isNear(store, i, query, 0.3),
+            "near " + i + " " + query);
+        checkEquals(desc.equals(query), store.matches(i, query), "matches " + i + " " + query);
+      }
+    }
+  }
+
+}
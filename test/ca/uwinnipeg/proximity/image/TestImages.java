@@ -0,0 +1,46 @@
+package ca.uwinnipeg.proximity.image;
+
+import java.util.Random;
+
+/**
+ * Repeatable images for the checks.
+ * @author Garrett Smith
+ *
+ */
+public class TestImages {
+  
+  /**
+   * Returns opaque pixels whose channels each take one of the given number of values, so that 
+   * many pixels share a description.
+   * @param width
+   * @param height
+   * @param values the number of values of each channel, at most 256
+   * @param seed
+   * @return
+   */
+  public static int[] pixels(int width, int height, int values, long seed) {
+    Random random = new Random(seed);
+    int step = 0xFF / Math.max(values - 1, 1);
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      int r = random.nextInt(values) * step;
+      int g = random.nextInt(values) * step;
+      int b = random.nextInt(values) * step;
+      pixels[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+    return pixels;
+  }
+  
+  /**
+   * Returns an image of {@link #pixels(int, int, int, long)}.
+   * @param width
+   * @param height
+   * @param values
+   * @param seed
+   * @return
+   */
+  public static Image image(int width, int height, int values, long seed) {
+    return new Image(pixels(width, height, values, seed), width, height);
+  }
+
+}